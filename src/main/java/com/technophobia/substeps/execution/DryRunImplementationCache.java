@@ -23,6 +23,11 @@ import java.lang.reflect.Method;
 
 public class DryRunImplementationCache extends ImplementationCache {
 
+    @Override
+    public ImplementationCache emptyCopy() {
+        return new DryRunImplementationCache();
+    }
+
     @Override
     public void executeMethod(final Class<?> targetClass, final Method targetMethod, final Object[] methodArgs)
             throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
@@ -20,6 +20,7 @@ package com.technophobia.substeps.execution;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -51,8 +52,18 @@ public class ImplementationCache implements MethodExecutor {
 
     protected final Map<Class<?>, Object> instanceMap;
 
+    // step methods are invoked many times over, everything needed to invoke
+    // one is looked up the first time it's used
+    private final Map<Method, Invoker> invokers;
+
+    // the setup and tear down methods of each scope, bound to the instances
+    // they're run against, until another instance is added
+    private final Map<List<Method>, Invoker[]> dispatchPlans;
+
     public ImplementationCache() {
         instanceMap = Maps.newHashMap();
+        invokers = Maps.newHashMap();
+        dispatchPlans = Maps.newHashMap();
     }
 
     public void addImplementationClasses(final Class<?>... implementationClasses) {
@@ -61,6 +72,9 @@ public class ImplementationCache implements MethodExecutor {
             for (final Class<?> implementationClass : implementationClasses) {
                 if (!instanceMap.containsKey(implementationClass)) {
                     instanceMap.put(implementationClass, instantiate(implementationClass));
+
+                    // the new instance may be one some methods should run on
+                    dispatchPlans.clear();
                 }
             }
         }
@@ -77,6 +91,14 @@ public class ImplementationCache implements MethodExecutor {
         }
     }
 
+    /**
+     * @return a new, empty cache of the same kind, so that another thread can
+     *         have instances of its own
+     */
+    public ImplementationCache emptyCopy() {
+        return new ImplementationCache();
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -86,6 +108,22 @@ public class ImplementationCache implements MethodExecutor {
      */
     public void executeMethods(final List<Method> methods) throws Exception {
 
+        Invoker[] plan = dispatchPlans.get(methods);
+
+        if (plan == null) {
+            plan = dispatchPlanFor(methods);
+            dispatchPlans.put(new ArrayList<Method>(methods), plan);
+        }
+
+        for (final Invoker invoker : plan) {
+            invoker.invoke(null);
+        }
+    }
+
+    private Invoker[] dispatchPlanFor(final List<Method> methods) {
+
+        final List<Invoker> plan = new ArrayList<Invoker>();
+
         for (final Method method : methods) {
 
             // TODO - curious about the findSuitableInstancesOf ? won't
@@ -93,10 +131,10 @@ public class ImplementationCache implements MethodExecutor {
 
             for (final Object object : findSuitableInstancesOf(method.getDeclaringClass())) {
 
-                method.invoke(object);
-
+                plan.add(new Invoker(object.getClass(), object, method));
             }
         }
+        return plan.toArray(new Invoker[plan.size()]);
     }
 
     private Collection<Object> findSuitableInstancesOf(final Class<?> methodClass) {
@@ -121,13 +159,16 @@ public class ImplementationCache implements MethodExecutor {
     public void executeMethod(final Class<?> targetClass, final Method targetMethod, final Object[] methodArgs)
             throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
 
-        addImplementationClasses(targetClass);
+        Invoker invoker = invokers.get(targetMethod);
 
-        if (methodArgs != null) {
-            targetMethod.invoke(instanceMap.get(targetClass), methodArgs);
-        } else {
-            targetMethod.invoke(instanceMap.get(targetClass));
+        if (invoker == null || invoker.targetClass != targetClass) {
+
+            addImplementationClasses(targetClass);
+            invoker = new Invoker(targetClass, instanceMap.get(targetClass), targetMethod);
+            invokers.put(targetMethod, invoker);
         }
+
+        invoker.invoke(methodArgs);
     }
 
     @SuppressWarnings("unchecked")
@@ -137,4 +178,46 @@ public class ImplementationCache implements MethodExecutor {
         return (T) instanceMap.get(implementationClass);
     }
 
+    /**
+     * A step method bound to the instance it's invoked on. The method is a
+     * copy of the one passed in with the language access checks turned off,
+     * those checks would otherwise be repeated on every call.
+     */
+    private static final class Invoker {
+
+        private final Class<?> targetClass;
+        private final Object instance;
+        private final Method method;
+
+
+        Invoker(final Class<?> targetClass, final Object instance, final Method targetMethod) {
+            this.targetClass = targetClass;
+            this.instance = instance;
+            this.method = accessibleCopyOf(targetMethod);
+        }
+
+
+        void invoke(final Object[] methodArgs) throws IllegalAccessException, InvocationTargetException {
+
+            // a null array is taken as no arguments
+            method.invoke(instance, methodArgs);
+        }
+
+
+        private static Method accessibleCopyOf(final Method targetMethod) {
+
+            try {
+                final Method copy = targetMethod.getDeclaringClass().getDeclaredMethod(targetMethod.getName(),
+                        targetMethod.getParameterTypes());
+                copy.setAccessible(true);
+                return copy;
+            } catch (final NoSuchMethodException e) {
+                return targetMethod;
+            } catch (final SecurityException e) {
+                // not permitted, invoke the method with the checks
+                return targetMethod;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.execution.node;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
+
+/**
+ * A scenario whose steps aren't held in the tree. The tree only holds this
+ * skeleton, which is enough to count, filter and report on the scenario; the
+ * background and steps are built just before the scenario runs and can be
+ * garbage collected once it has run, so only one scenario's subtree needs to
+ * be in memory at a time. As a consequence the node has no steps of its own.
+ * 
+ * @author imoore
+ * 
+ */
+public class DeferredScenarioNode extends BasicScenarioNode {
+
+    private static final long serialVersionUID = 3489572613260986652L;
+
+    // rebuilt from the feature, not part of the serialized tree
+    private final transient Callable<BasicScenarioNode> builder;
+
+
+    public DeferredScenarioNode(final String scenarioName, final Callable<BasicScenarioNode> builder,
+            final Set<String> tags, final int depth) {
+        super(scenarioName, null, Collections.<StepNode> emptyList(), tags, depth);
+        this.builder = builder;
+    }
+
+
+    /**
+     * @return a newly built scenario holding the background and steps to run
+     *         in place of this node's, the scenario may have failed to parse
+     */
+    public BasicScenarioNode expand() {
+
+        if (this.builder == null) {
+            throw new SubstepsConfigurationException("the steps of " + getDescription()
+                    + " can't be built, the node has been deserialized");
+        }
+        try {
+            return this.builder.call();
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new SubstepsConfigurationException(e);
+        }
+    }
+}
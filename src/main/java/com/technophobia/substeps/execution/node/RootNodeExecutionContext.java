@@ -18,6 +18,7 @@
  */
 package com.technophobia.substeps.execution.node;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -29,12 +30,13 @@ import com.technophobia.substeps.runner.SubstepExecutionFailure;
 import com.technophobia.substeps.runner.TagManager;
 import com.technophobia.substeps.runner.setupteardown.SetupAndTearDown;
 
-//This isn't thread safe - if we were to run features concurrently we'd need to rectify this. 
+// When features are run concurrently each one gets a context of its own from
+// newWorkerContext, its failures are added back to this one once it has run.
 public class RootNodeExecutionContext {
 
     private static final Logger log = LoggerFactory.getLogger(RootNodeExecutionContext.class);
 
-    private boolean testsRun = false;
+    private volatile boolean testsRun = false;
     private final INotificationDistributor notificationDistributor;
     private final List<SubstepExecutionFailure> failures;
     private final SetupAndTearDown setupAndTeardown;
@@ -52,6 +54,39 @@ public class RootNodeExecutionContext {
         this.methodExecutor = methodExecutor;
     }
 
+    /**
+     * @param workerNotificationDistributor
+     *            the distributor the worker should notify
+     * @param workerSetupAndTeardown
+     *            the worker's own setup and tear down
+     * @param workerMethodExecutor
+     *            the worker's own step implementation instances
+     * @return a context for running part of the tree on another thread,
+     *         failures are recorded in a list of its own
+     */
+    public RootNodeExecutionContext newWorkerContext(final INotificationDistributor workerNotificationDistributor,
+            final SetupAndTearDown workerSetupAndTeardown, final MethodExecutor workerMethodExecutor) {
+
+        return new RootNodeExecutionContext(workerNotificationDistributor, new ArrayList<SubstepExecutionFailure>(),
+                workerSetupAndTeardown, this.nonFatalTagmanager, workerMethodExecutor);
+    }
+
+    /**
+     * Adds the failures of a worker context, which have already been logged
+     * and had their criticality set, to this one.
+     * 
+     * @param workerContext
+     *            a context from {@link #newWorkerContext}
+     */
+    public void addWorkerResults(final RootNodeExecutionContext workerContext) {
+
+        failures.addAll(workerContext.getFailures());
+
+        if (workerContext.haveTestsBeenRun()) {
+            testsRun = true;
+        }
+    }
+
     public INotificationDistributor getNotificationDistributor() {
         return notificationDistributor;
     }
@@ -0,0 +1,57 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.execution.node;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * An outline whose rows aren't held in the tree. Each row's subtree is built
+ * as the rows are iterated over, just before it's run, and can be garbage
+ * collected once it has run; an outline with a very large number of examples
+ * never has more than one row's subtree in memory. As a consequence the node
+ * has no children.
+ * 
+ * @author imoore
+ * 
+ */
+public class StreamedOutlineScenarioNode extends OutlineScenarioNode {
+
+    private static final long serialVersionUID = -4165223384137366457L;
+
+    // rebuilt from the feature, not part of the serialized tree
+    private final transient Iterable<OutlineScenarioRowNode> rows;
+
+
+    public StreamedOutlineScenarioNode(final String scenarioName, final Iterable<OutlineScenarioRowNode> rows,
+            final Set<String> tags, final int depth) {
+        super(scenarioName, Collections.<OutlineScenarioRowNode> emptyList(), tags, depth);
+        this.rows = rows;
+    }
+
+
+    /**
+     * @return a new iteration over the rows, each row node is built by the
+     *         call to next() and may throw if it can't be
+     */
+    public Iterator<OutlineScenarioRowNode> rowIterator() {
+        return this.rows.iterator();
+    }
+}
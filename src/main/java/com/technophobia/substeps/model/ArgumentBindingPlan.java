@@ -0,0 +1,145 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.technophobia.substeps.model.SubSteps.StepParameter;
+import com.technophobia.substeps.model.parameter.Converter;
+import com.technophobia.substeps.model.parameter.ConverterFactory;
+
+/**
+ * How the arguments of a step implementation method are bound from a step
+ * line: the compiled pattern, and the type and converter of each parameter,
+ * all worked out once per {@link StepImplementation} rather than for every
+ * step that uses it.
+ * 
+ * @author ian
+ * 
+ */
+public final class ArgumentBindingPlan {
+
+    private final Pattern pattern;
+    private final Class<?>[] parameterTypes;
+    private final Converter<?>[] converters;
+
+    // converters that couldn't be resolved, only an error if a step actually
+    // supplies that argument
+    private final IllegalArgumentException[] converterErrors;
+
+
+    public ArgumentBindingPlan(final String patternString, final Method method) {
+
+        this.pattern = Pattern.compile(patternString);
+        this.parameterTypes = method.getParameterTypes();
+        this.converters = new Converter<?>[this.parameterTypes.length];
+        this.converterErrors = new IllegalArgumentException[this.parameterTypes.length];
+
+        final Class<? extends Converter<?>>[] converterTypes = getParameterConverters(method);
+
+        for (int i = 0; i < this.parameterTypes.length; i++) {
+            try {
+                this.converters[i] = ConverterFactory.getConverter(this.parameterTypes[i], converterTypes[i]);
+            } catch (final IllegalArgumentException e) {
+                this.converterErrors[i] = e;
+            }
+        }
+    }
+
+
+    private static Class<? extends Converter<?>>[] getParameterConverters(final Method method) {
+
+        final Annotation[][] annotations = method.getParameterAnnotations();
+        final int size = annotations.length;
+
+        @SuppressWarnings("unchecked")
+        final Class<? extends Converter<?>>[] result = new Class[size];
+
+        for (int i = 0; i < size; i++) {
+            for (final Annotation annotation : annotations[i]) {
+                if (annotation instanceof StepParameter) {
+                    result[i] = ((StepParameter) annotation).converter();
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    public int getParameterCount() {
+        return this.parameterTypes.length;
+    }
+
+
+    public Pattern getPattern() {
+        return this.pattern;
+    }
+
+
+    /**
+     * The equivalent of {@link Util#getArgs(String, String, Class[], Class[])}
+     * for this step implementation.
+     * 
+     * @param line
+     *            the step line, with any placeholders substituted
+     * @return the converted values of the groups matched, or null if there
+     *         weren't any
+     */
+    public List<Object> bind(final String line) {
+
+        List<Object> argsList = null;
+
+        final Matcher matcher = this.pattern.matcher(line);
+
+        if (matcher.find()) {
+
+            final int groupCount = matcher.groupCount();
+
+            for (int i = 1; i <= groupCount; i++) {
+                final String arg = matcher.group(i);
+
+                if (arg != null) {
+                    if (argsList == null) {
+                        argsList = new ArrayList<Object>();
+                    }
+                    argsList.add(convert(i - 1, arg));
+                }
+            }
+        }
+        return argsList;
+    }
+
+
+    private Object convert(final int argIdx, final String arg) {
+
+        if (argIdx >= this.converters.length) {
+            throw new IllegalArgumentException("More arguments in the step than parameters on the method: "
+                    + this.pattern.pattern());
+        } else if (this.converterErrors[argIdx] != null) {
+            throw this.converterErrors[argIdx];
+        }
+        return this.converters[argIdx].convert(arg);
+    }
+}
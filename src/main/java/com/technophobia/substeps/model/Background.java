@@ -19,11 +19,14 @@
 package com.technophobia.substeps.model;
 
 import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public class Background {
+public class Background implements Serializable {
+
+    private static final long serialVersionUID = 6987862831916868175L;
 
     private final int lineNumber;
     private final String description;
@@ -38,6 +41,14 @@ public class Background {
         this.steps = stepsFrom(lineNumber, rawText, sourceFile);
     }
 
+    public Background(final int lineNumber, final String rawText, final List<Step> steps) {
+        super();
+        this.lineNumber = lineNumber;
+        this.rawText = rawText;
+        this.description = descriptionFor(rawText);
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
     private List<Step> stepsFrom(final int backgroundLineNumber, final String backgroundText, final File sourceFile) {
         final List<Step> backgroundSteps = new ArrayList<Step>();
         final String[] bLines = backgroundText.split("\n");
@@ -0,0 +1,223 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.io.Closeables;
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
+
+/**
+ * Examples for an outline held in an external comma or tab separated file,
+ * referenced from the feature as <code>Examples: data/rows.csv</code>. The
+ * first line holds the column names, blank lines and lines starting with '#'
+ * are ignored. CSV values may be double quoted, with "" for a literal quote.
+ * 
+ * The file is read a row at a time as it's iterated over, so it's never held
+ * in memory as a whole.
+ * 
+ * @author imoore
+ * 
+ */
+public class ExampleFile implements Iterable<ExampleParameter>, Serializable {
+
+    private static final long serialVersionUID = 4404622935553286741L;
+
+    private final File file;
+    private final char delimiter;
+
+
+    public ExampleFile(final File file, final char delimiter) {
+        this.file = file;
+        this.delimiter = delimiter;
+    }
+
+
+    /**
+     * @param file
+     * @return an ExampleFile for a .csv or .tsv file, or null if the file
+     *         isn't one of those
+     */
+    public static ExampleFile forFile(final File file) {
+        final String name = file.getName().toLowerCase();
+        if (name.endsWith(".csv")) {
+            return new ExampleFile(file, ',');
+        } else if (name.endsWith(".tsv")) {
+            return new ExampleFile(file, '\t');
+        }
+        return null;
+    }
+
+
+    public File getFile() {
+        return this.file;
+    }
+
+
+    /**
+     * @return an iterator over the rows, which is also {@link Closeable} for
+     *         when it isn't read to the end
+     */
+    public Iterator<ExampleParameter> iterator() {
+        return new RowIterator();
+    }
+
+
+    List<String> split(final String line) {
+
+        final List<String> values = new ArrayList<String>();
+
+        if (this.delimiter != ',') {
+            int start = 0;
+            int end;
+            while ((end = line.indexOf(this.delimiter, start)) >= 0) {
+                values.add(line.substring(start, end));
+                start = end + 1;
+            }
+            values.add(line.substring(start));
+            return values;
+        }
+
+        final StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private final class RowIterator implements Iterator<ExampleParameter>, Closeable {
+
+        private BufferedReader reader;
+        private List<String> keys;
+        private int lineNumber = 0;
+        private ExampleParameter next;
+        private boolean done = false;
+
+
+        public boolean hasNext() {
+
+            if (this.next == null && !this.done) {
+                this.next = readRow();
+            }
+            return this.next != null;
+        }
+
+
+        public ExampleParameter next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final ExampleParameter row = this.next;
+            this.next = null;
+            return row;
+        }
+
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        public void close() {
+            this.done = true;
+            Closeables.closeQuietly(this.reader);
+        }
+
+
+        private ExampleParameter readRow() {
+
+            try {
+                if (this.reader == null) {
+                    this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(ExampleFile.this.file),
+                            "UTF-8"));
+                }
+
+                String line;
+                while ((line = this.reader.readLine()) != null) {
+                    this.lineNumber++;
+
+                    final String trimmed = line.trim();
+                    if (trimmed.length() == 0 || trimmed.startsWith("#")) {
+                        continue;
+                    }
+
+                    final List<String> values = split(line);
+
+                    if (this.keys == null) {
+                        this.keys = new ArrayList<String>();
+                        for (final String key : values) {
+                            this.keys.add(key.trim());
+                        }
+                        continue;
+                    }
+
+                    // as for inline tables, missing trailing columns are
+                    // allowed
+                    final Map<String, String> row = new HashMap<String, String>();
+                    for (int i = 0; i < values.size() && i < this.keys.size(); i++) {
+                        row.put(this.keys.get(i), values.get(i).trim());
+                    }
+                    return new ExampleParameter(this.lineNumber, row);
+                }
+
+                close();
+                return null;
+
+            } catch (final IOException e) {
+                close();
+                throw new SubstepsConfigurationException("Unable to read examples from " + ExampleFile.this.file
+                        + " at line " + this.lineNumber, e);
+            }
+        }
+    }
+}
@@ -18,10 +18,13 @@
  */
 package com.technophobia.substeps.model;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.Map;
 
-public class ExampleParameter {
+public class ExampleParameter implements Serializable {
+
+    private static final long serialVersionUID = 8035156797252622602L;
 
     private final int lineNumber;
     private final Map<String, String> parameters;
@@ -0,0 +1,120 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
+
+/**
+ * The rows of an inline Examples table. The values are held as parsed and
+ * each row's {@link ExampleParameter} is only created as it's iterated over.
+ * 
+ * @author imoore
+ * 
+ */
+public class ExampleTable implements Iterable<ExampleParameter>, Serializable {
+
+    private static final long serialVersionUID = -2283618270413524307L;
+
+    private final String[] keys;
+    private final List<String[]> rows = new ArrayList<String[]>();
+    private final List<Integer> lineNumbers = new ArrayList<Integer>();
+
+
+    /**
+     * @param split
+     *            the heading row, split on '|'
+     */
+    public ExampleTable(final String[] split) {
+        this.keys = new String[split.length];
+        for (int i = 0; i < split.length; i++) {
+            this.keys[i] = split[i].trim();
+        }
+    }
+
+
+    /**
+     * @param lineNumber
+     * @param split
+     *            a row of values, split on '|'
+     * @throws SubstepsConfigurationException
+     *             if the row has more values than there are headings
+     */
+    public void addRow(final int lineNumber, final String[] split) {
+        // fewer values are allowed, see toExampleParameter
+        if (split.length > this.keys.length) {
+            throw new SubstepsConfigurationException("The examples row at line " + lineNumber + " has "
+                    + (split.length - 1) + " values but there are only " + (this.keys.length - 1) + " columns");
+        }
+        this.rows.add(split);
+        this.lineNumbers.add(Integer.valueOf(lineNumber));
+    }
+
+
+    public int size() {
+        return this.rows.size();
+    }
+
+
+    public Iterator<ExampleParameter> iterator() {
+
+        return new Iterator<ExampleParameter>() {
+
+            private int idx = 0;
+
+
+            public boolean hasNext() {
+                return this.idx < ExampleTable.this.rows.size();
+            }
+
+
+            public ExampleParameter next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int current = this.idx++;
+                return toExampleParameter(ExampleTable.this.lineNumbers.get(current).intValue(),
+                        ExampleTable.this.rows.get(current));
+            }
+
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+
+    private ExampleParameter toExampleParameter(final int lineNumber, final String[] split) {
+        // Cucumber compatibility - with cuke you can get away with not defining
+        // all your columns of data, so we'll do the same
+        final Map<String, String> row = new HashMap<String, String>();
+        for (int i = 1; i < split.length; i++) {
+            row.put(this.keys[i], split[i].trim());
+        }
+        return new ExampleParameter(lineNumber, row);
+    }
+}
@@ -24,6 +24,8 @@ import java.util.List;
 
 public class FeatureFile extends RootFeature {
 
+    private static final long serialVersionUID = 915533473134040693L;
+
     private File sourceFile;
     private String name;
     private String description;
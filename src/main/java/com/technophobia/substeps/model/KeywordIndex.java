@@ -0,0 +1,170 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.technophobia.substeps.model.matcher.PrefixIndexMatcher;
+
+/**
+ * Patterns indexed by their body, ie the pattern without its leading keyword,
+ * for non strict lookups. A single probe with the body of a step line finds
+ * the patterns it would match under every other keyword, rather than
+ * swapping each keyword in turn into the line and searching again.
+ * 
+ * @author ian
+ * 
+ * @param <V>
+ */
+public class KeywordIndex<V> {
+
+    private static final String REGEX_META_CHARS = "[](){}.*+?^$|\\\\";
+
+    private final PatternMap<List<Entry<V>>> bodies = new PatternMap<List<Entry<V>>>();
+
+    // patterns that can't be split into a literal keyword and a body, matched
+    // by substituting their keyword into the line as before
+    private final List<Entry<V>> unindexed = new ArrayList<Entry<V>>();
+
+    private int count = 0;
+
+
+    /**
+     * @param keyword
+     * @param pattern
+     *            the full pattern, starting with the keyword
+     * @param value
+     */
+    public void add(final String keyword, final String pattern, final V value) {
+
+        final Entry<V> entry = new Entry<V>(count++, keyword, pattern, value);
+
+        if (isLiteral(keyword) && pattern.length() > keyword.length() && pattern.startsWith(keyword)
+                && !PrefixIndexMatcher.hasTopLevelAlternation(pattern)) {
+
+            final String body = pattern.substring(keyword.length());
+            try {
+                List<Entry<V>> entries = bodies.getValueForPattern(body);
+                if (entries == null) {
+                    entries = new ArrayList<Entry<V>>(1);
+                    bodies.put(body, entries);
+                }
+                entries.add(entry);
+                return;
+            } catch (final PatternSyntaxException e) {
+                // fall through
+            }
+        }
+        unindexed.add(entry);
+    }
+
+
+    private static boolean isLiteral(final String keyword) {
+        if (keyword == null || keyword.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (REGEX_META_CHARS.indexOf(keyword.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @param keyword
+     *            the keyword of the line
+     * @param line
+     * @return the values whose patterns match the line with its keyword
+     *         replaced by theirs, grouped by keyword, or null if the line's
+     *         keyword can't be used with this index
+     */
+    public Map<String, List<V>> matchesByKeyword(final String keyword, final String line) {
+
+        if (!isLiteral(keyword) || !line.startsWith(keyword)) {
+            return null;
+        }
+        final String body = line.substring(keyword.length());
+
+        final List<Entry<V>> matched = new ArrayList<Entry<V>>();
+        if (body.length() > 0) {
+            for (final List<Entry<V>> entries : bodies.get(body)) {
+                matched.addAll(entries);
+            }
+        }
+
+        for (final Entry<V> entry : unindexed) {
+            if (entry.keyword != null
+                    && entry.matches(line.replaceFirst(keyword, Matcher.quoteReplacement(entry.keyword)))) {
+                matched.add(entry);
+            }
+        }
+
+        Collections.sort(matched);
+
+        final Map<String, List<V>> byKeyword = new LinkedHashMap<String, List<V>>();
+        for (final Entry<V> entry : matched) {
+            List<V> values = byKeyword.get(entry.keyword);
+            if (values == null) {
+                values = new ArrayList<V>(1);
+                byKeyword.put(entry.keyword, values);
+            }
+            values.add(entry.value);
+        }
+        return byKeyword;
+    }
+
+    private static class Entry<V> implements Comparable<Entry<V>> {
+
+        private final int order;
+        private final String keyword;
+        private final String pattern;
+        private final V value;
+        private volatile Pattern compiled;
+
+
+        Entry(final int order, final String keyword, final String pattern, final V value) {
+            this.order = order;
+            this.keyword = keyword;
+            this.pattern = pattern;
+            this.value = value;
+        }
+
+
+        boolean matches(final String line) {
+            if (compiled == null) {
+                compiled = Pattern.compile(pattern);
+            }
+            return compiled.matcher(line).matches();
+        }
+
+
+        public int compareTo(final Entry<V> other) {
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+}
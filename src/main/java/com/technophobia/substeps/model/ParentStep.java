@@ -18,10 +18,12 @@
  */
 package com.technophobia.substeps.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * 
@@ -30,12 +32,17 @@ import java.util.Map;
  * @author ian
  * 
  */
-public class ParentStep {
+public class ParentStep implements Serializable {
+
+	private static final long serialVersionUID = 6742787359027594307L;
 
 	private final Step parent;
 	private List<Step> substeps;
 	private ExampleParameter paramValueMap;
 
+	// compiled on first use, not worth serializing
+	private transient volatile Pattern compiledPattern;
+
 	public static final ParentStepNameComparator PARENT_STEP_COMPARATOR = new ParentStepNameComparator();
 
 	public int getSourceLineNumber() {
@@ -60,6 +67,13 @@ public class ParentStep {
 		return this.parent;
 	}
 
+	private Pattern getCompiledPattern() {
+		if (this.compiledPattern == null) {
+			this.compiledPattern = Pattern.compile(this.parent.getPattern());
+		}
+		return this.compiledPattern;
+	}
+
 	/**
 	 * @return
 	 */
@@ -74,7 +88,7 @@ public class ParentStep {
 	public void initialiseParamValues(final Step step) {
 		final HashMap<String, String> map = new HashMap<String, String>();
 
-		final String[] paramValues = Util.getArgs(this.parent.getPattern(),
+		final String[] paramValues = Util.getArgs(getCompiledPattern(),
 				step.getLine());
 
 		if (paramValues != null) {
@@ -91,18 +105,38 @@ public class ParentStep {
 	 */
 	public void initialiseParamValues(final int lineNumber, final String line) {
 
-		final String[] paramValues = Util.getArgs(this.parent.getPattern(),
-				line);
+		final ExampleParameter paramValues = paramValuesFor(lineNumber, line);
 
 		if (paramValues != null) {
+			this.paramValueMap = paramValues;
+		}
+	}
+
+	/**
+	 * Unlike {@link #initialiseParamValues(int, String)} this leaves the
+	 * parent step untouched, so can be called from several threads.
+	 * 
+	 * @param lineNumber
+	 * @param line
+	 *            a step that matches this parent
+	 * @return the values of this step's parameters taken from line, or null
+	 *         if line doesn't match
+	 */
+	public ExampleParameter paramValuesFor(final int lineNumber, final String line) {
 
-			final Map<String, String> map = new HashMap<String, String>();
+		final String[] paramValues = Util.getArgs(getCompiledPattern(),
+				line);
 
-			for (int i = 0; i < paramValues.length; i++) {
-				map.put(this.parent.getParamNames().get(i), paramValues[i]);
-			}
-			this.paramValueMap = new ExampleParameter(lineNumber, map);
+		if (paramValues == null) {
+			return null;
+		}
+
+		final Map<String, String> map = new HashMap<String, String>();
+
+		for (int i = 0; i < paramValues.length; i++) {
+			map.put(this.parent.getParamNames().get(i), paramValues[i]);
 		}
+		return new ExampleParameter(lineNumber, map);
 	}
 
 	public ExampleParameter getParamValueMap() {
@@ -22,27 +22,43 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.google.common.base.Strings;
+import com.technophobia.substeps.model.matcher.PatternMatcher;
+import com.technophobia.substeps.model.matcher.PatternMatchers;
 
 /**
  * a map of regex patterns to other things.
  * 
+ * Matching is done by a {@link PatternMatcher}, by default one that indexes
+ * each pattern's literal prefix; see {@link PatternMatchers}.
+ * 
  * @author imoore
  * 
  */
 public class PatternMap<V> {
 
-    private final Map<Pattern, V> patternMap = new HashMap<Pattern, V>();
+    private final Map<Pattern, V> patternMap = new LinkedHashMap<Pattern, V>();
     private final Map<String, V> keys = new HashMap<String, V>();
+    private final PatternMatcher<V> matcher;
     private V nullValue = null;
 
 
+    public PatternMap() {
+        this(PatternMatchers.<V> newMatcher());
+    }
+
+
+    public PatternMap(final PatternMatcher<V> matcher) {
+        this.matcher = matcher;
+    }
+
+
     public V getNullVale() {
         return nullValue;
     }
@@ -71,6 +87,8 @@ public class PatternMap<V> {
             final Pattern p = Pattern.compile(pattern);
 
             patternMap.put(p, value);
+
+            matcher.add(p, value);
         } else {
             nullValue = value;
         }
@@ -96,18 +114,7 @@ public class PatternMap<V> {
         List<V> vals = null;
 
         if (!Strings.isNullOrEmpty(string)) {
-            final Set<Entry<Pattern, V>> entrySet = patternMap.entrySet();
-
-            for (final Entry<Pattern, V> e : entrySet) {
-
-                if (e.getKey().matcher(string).matches()) {
-
-                    if (vals == null) {
-                        vals = new ArrayList<V>();
-                    }
-                    vals.add(e.getValue());
-                }
-            }
+            vals = matcher.matchesFor(string);
         } else {
             if (nullValue != null) {
                 vals = new ArrayList<V>();
@@ -0,0 +1,109 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A line of text split into literal text and &lt;placeholder&gt; segments
+ * once, so that substituting parameter values into it is a single pass.
+ * 
+ * @author ian
+ * 
+ */
+public final class PlaceholderTemplate {
+
+    private final String text;
+
+    // literals[i] precedes keys[i], the last literal follows the last key
+    private final String[] literals;
+    private final String[] keys;
+
+
+    private PlaceholderTemplate(final String text, final String[] literals, final String[] keys) {
+        this.text = text;
+        this.literals = literals;
+        this.keys = keys;
+    }
+
+
+    public static PlaceholderTemplate compile(final String text) {
+
+        final List<String> literals = new ArrayList<String>();
+        final List<String> keys = new ArrayList<String>();
+
+        int pos = 0;
+        int open = text.indexOf('<');
+        while (open >= 0) {
+            final int close = text.indexOf('>', open + 1);
+            if (close < 0) {
+                break;
+            }
+            // the placeholder is the innermost <..> pair, eg in a <<b> it's b
+            open = text.lastIndexOf('<', close);
+
+            literals.add(text.substring(pos, open));
+            keys.add(text.substring(open + 1, close));
+
+            pos = close + 1;
+            open = text.indexOf('<', pos);
+        }
+        literals.add(text.substring(pos));
+
+        return new PlaceholderTemplate(text, literals.toArray(new String[literals.size()]),
+                keys.toArray(new String[keys.size()]));
+    }
+
+
+    public boolean hasPlaceholders() {
+        return this.keys.length > 0;
+    }
+
+
+    public String getText() {
+        return this.text;
+    }
+
+
+    /**
+     * @param parameters
+     *            the values of the placeholders; a placeholder with no value is
+     *            replaced with a single space
+     * @return the text with each placeholder replaced
+     */
+    public String substitute(final Map<String, String> parameters) {
+
+        if (this.keys.length == 0 || parameters == null) {
+            return this.text;
+        }
+
+        final StringBuilder buf = new StringBuilder(this.text.length() + 16 * this.keys.length);
+        for (int i = 0; i < this.keys.length; i++) {
+            buf.append(this.literals[i]);
+
+            final String val = parameters.get(this.keys[i]);
+            buf.append(val != null ? val : " ");
+        }
+        buf.append(this.literals[this.keys.length]);
+
+        return buf.toString();
+    }
+}
@@ -18,20 +18,21 @@
  */
 package com.technophobia.substeps.model;
 
+import java.io.Serializable;
 import java.util.Set;
 
-import com.google.common.collect.Sets;
-
 /**
  * 
  * 
  * @author imoore
  * 
  */
-public abstract class RootFeature {
+public abstract class RootFeature implements Serializable {
+
+    private static final long serialVersionUID = 1418732859287952241L;
 
     private String rawText;
-    private Set<String> tags = Sets.newHashSet();
+    private Set<String> tags = TagSet.EMPTY;
 
     /**
      * @return the tags
@@ -46,10 +47,11 @@ public abstract class RootFeature {
 
     /**
      * @param currentTags
+     *            held as the shared, immutable {@link TagSet} of these tags
      */
     public void setTags(final Set<String> currentTags) {
 
-        tags = currentTags;
+        tags = TagSet.of(currentTags);
 
     }
 
@@ -19,14 +19,14 @@
 package com.technophobia.substeps.model;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.junit.runner.Description;
 
 public class Scenario extends RootFeature {
 
+    private static final long serialVersionUID = 1680490732736907042L;
+
     @Override
     public String toString() {
         return "Scenario: " + this.description;
@@ -35,14 +35,15 @@ public class Scenario extends RootFeature {
     private String description;
     private Background background = null;
     private List<Step> steps;
-    private List<ExampleParameter> exampleParameters = null;
-    private String[] paramNames = null;
+    private ExampleTable exampleTable = null;
+    private ExampleFile exampleFile = null;
     private boolean outline;
 
     private int scenarioLineNumber;
     private int exampleKeysLineNumber;
 
-    private Description junitDescription;
+    // runtime only, not part of the parsed model
+    private transient Description junitDescription;
 
     private int sourceStartOffset = -1;
     private int sourceStartLineNumber = -1;
@@ -89,8 +90,38 @@ public class Scenario extends RootFeature {
         return this.steps;
     }
 
+    /**
+     * @return all of the example rows, materialised, or null if there are no
+     *         examples; prefer {@link #getExampleRows()} which doesn't hold
+     *         them all in memory at once
+     */
     public List<ExampleParameter> getExampleParameters() {
-        return this.exampleParameters;
+        final Iterable<ExampleParameter> rows = getExampleRows();
+        if (rows == null) {
+            return null;
+        }
+
+        final List<ExampleParameter> exampleParameters = new ArrayList<ExampleParameter>();
+        for (final ExampleParameter row : rows) {
+            exampleParameters.add(row);
+        }
+        return exampleParameters;
+    }
+
+    /**
+     * @return the example rows, from either an inline table or an external
+     *         file, or null if there are no examples
+     */
+    public Iterable<ExampleParameter> getExampleRows() {
+        return this.exampleFile != null ? this.exampleFile : this.exampleTable;
+    }
+
+    public boolean hasExternalExamples() {
+        return this.exampleFile != null;
+    }
+
+    public void setExampleFile(final ExampleFile exampleFile) {
+        this.exampleFile = exampleFile;
     }
 
     public void setOutline(final boolean outline) {
@@ -129,19 +160,12 @@ public class Scenario extends RootFeature {
      * @param split
      */
     public void addExampleKeys(final String[] split) {
-        this.paramNames = split;
-        this.exampleParameters = new ArrayList<ExampleParameter>();
+        this.exampleTable = new ExampleTable(split);
 
     }
 
     public void addExampleValues(final int lineNumber, final String[] split) {
-        // Cucumber compatibility - with cuke you can get away with not defining
-        // all your columns of data, so we'll do the same
-        final Map<String, String> row = new HashMap<String, String>();
-        for (int i = 1; i < split.length; i++) {
-            row.put(this.paramNames[i].trim(), split[i].trim());
-        }
-        this.exampleParameters.add(new ExampleParameter(lineNumber, row));
+        this.exampleTable.addRow(lineNumber, split);
     }
 
     /**
@@ -19,6 +19,7 @@
 package com.technophobia.substeps.model;
 
 import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,9 +30,11 @@ import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class Step {
+public class Step implements Serializable {
 
-    private final Logger log = LoggerFactory.getLogger(Step.class);
+    private static final long serialVersionUID = 5166499419593367711L;
+
+    private static final Logger log = LoggerFactory.getLogger(Step.class);
 
     // eg Given, When, Then
     private String keyword;
@@ -56,6 +59,11 @@ public class Step {
 
     private List<Map<String, String>> substitutedInlineTable = null;
 
+    // the line and inline table tokenized for placeholder substitution, built
+    // on first use
+    private transient volatile PlaceholderTemplate lineTemplate = null;
+    private transient volatile List<Map<String, PlaceholderTemplate>> inlineTableTemplates = null;
+
     private File source;
 
     private final int sourceLineNumber;
@@ -172,7 +180,7 @@ public class Step {
      */
     public String toDebugString() {
         if (this.keyword == null) {
-            this.log.debug("annot of step is null: " + this.getClass().getSimpleName());
+            log.debug("annot of step is null: " + this.getClass().getSimpleName());
         }
 
         return " [" + this.line + "]";
@@ -245,6 +253,38 @@ public class Step {
         return this.inlineTable;
     }
 
+    /**
+     * @return the line, tokenized for placeholder substitution
+     */
+    public PlaceholderTemplate getLineTemplate() {
+        if (this.lineTemplate == null) {
+            this.lineTemplate = PlaceholderTemplate.compile(this.line);
+        }
+        return this.lineTemplate;
+    }
+
+    /**
+     * @return the inlineTable, with each value tokenized for placeholder
+     *         substitution, or null if there isn't one
+     */
+    public List<Map<String, PlaceholderTemplate>> getInlineTableTemplates() {
+        if (this.inlineTableTemplates == null && this.inlineTable != null) {
+
+            final List<Map<String, PlaceholderTemplate>> templates = new ArrayList<Map<String, PlaceholderTemplate>>(
+                    this.inlineTable.size());
+
+            for (final Map<String, String> row : this.inlineTable) {
+                final Map<String, PlaceholderTemplate> templateRow = new HashMap<String, PlaceholderTemplate>();
+                for (final Map.Entry<String, String> e : row.entrySet()) {
+                    templateRow.put(e.getKey(), PlaceholderTemplate.compile(e.getValue()));
+                }
+                templates.add(templateRow);
+            }
+            this.inlineTableTemplates = templates;
+        }
+        return this.inlineTableTemplates;
+    }
+
     /**
      * @return the inlineTable
      */
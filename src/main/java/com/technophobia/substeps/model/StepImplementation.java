@@ -36,6 +36,9 @@ public class StepImplementation {
 
     private final String keyword;
 
+    // built on first use, as the pattern may not be valid
+    private volatile ArgumentBindingPlan bindingPlan;
+
 
     public StepImplementation(final Class<?> loadedClass, final String keyword,
             final String valueString, final Method m) {
@@ -93,6 +96,18 @@ public class StepImplementation {
     }
 
 
+    /**
+     * @return the plan for binding this method's arguments from a step line
+     */
+    public ArgumentBindingPlan getBindingPlan() {
+        // racing threads may each build one, which is harmless
+        if (bindingPlan == null) {
+            bindingPlan = new ArgumentBindingPlan(value, method);
+        }
+        return bindingPlan;
+    }
+
+
     public StepImplementation cloneWithKeyword(final String keyword) {
         return new StepImplementation(getImplementedIn(), keyword, getValue().replaceFirst(
                 getKeyword(), keyword), getMethod());
@@ -41,6 +41,20 @@ public class StepImplementationUsage {
         this.source = source;
         this.lineNumber = lineNumber;
     }
-    
+
+
+    public String getParameterLine() {
+        return this.parameterLine;
+    }
+
+
+    public File getSource() {
+        return this.source;
+    }
+
+
+    public int getLineNumber() {
+        return this.lineNumber;
+    }
 
 }
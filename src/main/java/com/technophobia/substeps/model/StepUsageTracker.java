@@ -0,0 +1,163 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records which step implementations steps resolve to. By default only a
+ * count is kept for each implementation, which is all that's needed to find
+ * the uncalled ones; a sample of call sites, or every call site, can be kept
+ * for diagnostics.
+ * 
+ * @author ian
+ * 
+ */
+public class StepUsageTracker {
+
+    public enum Mode {
+        /** a count per implementation */
+        COUNT,
+        /** a count plus the first few call sites */
+        SAMPLE,
+        /** every call site */
+        FULL;
+
+        /**
+         * @param name
+         *            case insensitive, may be null
+         * @return the mode, or COUNT if name is null
+         */
+        public static Mode forName(final String name) {
+            return name != null ? valueOf(name.trim().toUpperCase()) : COUNT;
+        }
+    }
+
+    public static final int DEFAULT_SAMPLE_SIZE = 10;
+
+    private final Map<StepImplementation, Usage> usages = new LinkedHashMap<StepImplementation, Usage>();
+
+    private volatile Mode mode = Mode.COUNT;
+    private volatile int sampleSize = DEFAULT_SAMPLE_SIZE;
+
+
+    public void setMode(final Mode mode) {
+        this.mode = mode;
+    }
+
+
+    public Mode getMode() {
+        return this.mode;
+    }
+
+
+    public void setSampleSize(final int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+
+    /**
+     * Starts tracking an implementation, forgetting any previous usage.
+     * 
+     * @param impl
+     */
+    public void register(final StepImplementation impl) {
+        this.usages.put(impl, new Usage());
+    }
+
+
+    public void record(final StepImplementation impl, final String parameterLine, final File source,
+            final int lineNumber) {
+
+        final Usage usage = this.usages.get(impl);
+        if (usage != null) {
+            usage.record(parameterLine, source, lineNumber);
+        }
+    }
+
+
+    /**
+     * @param impl
+     * @return the number of steps resolved to this implementation
+     */
+    public int getCount(final StepImplementation impl) {
+        final Usage usage = this.usages.get(impl);
+        return usage != null ? usage.getCount() : 0;
+    }
+
+
+    /**
+     * @param impl
+     * @return the call sites kept for this implementation, depending on the
+     *         mode
+     */
+    public List<StepImplementationUsage> getUsages(final StepImplementation impl) {
+        final Usage usage = this.usages.get(impl);
+        return usage != null ? usage.getSites() : Collections.<StepImplementationUsage> emptyList();
+    }
+
+
+    public List<StepImplementation> getUncalled() {
+
+        final List<StepImplementation> uncalled = new ArrayList<StepImplementation>();
+
+        for (final Map.Entry<StepImplementation, Usage> e : this.usages.entrySet()) {
+            if (e.getValue().getCount() == 0) {
+                uncalled.add(e.getKey());
+            }
+        }
+        return uncalled;
+    }
+
+    private final class Usage {
+
+        private int count = 0;
+        private List<StepImplementationUsage> sites = null;
+
+
+        synchronized void record(final String parameterLine, final File source, final int lineNumber) {
+            this.count++;
+
+            final Mode current = StepUsageTracker.this.mode;
+            if (current == Mode.FULL
+                    || (current == Mode.SAMPLE && (this.sites == null || this.sites.size() < sampleSize))) {
+                if (this.sites == null) {
+                    this.sites = new ArrayList<StepImplementationUsage>();
+                }
+                this.sites.add(new StepImplementationUsage(parameterLine, source, lineNumber));
+            }
+        }
+
+
+        synchronized int getCount() {
+            return this.count;
+        }
+
+
+        synchronized List<StepImplementationUsage> getSites() {
+            return this.sites != null ? new ArrayList<StepImplementationUsage>(this.sites) : Collections
+                    .<StepImplementationUsage> emptyList();
+        }
+    }
+}
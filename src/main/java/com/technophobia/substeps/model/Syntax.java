@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -50,10 +51,12 @@ public class Syntax {
 
     private static final Logger log = LoggerFactory.getLogger(Syntax.class);
 
+    public static final int DEFAULT_RESOLUTION_CACHE_SIZE = 10000;
+
     // These two will always be populated
     private final Map<String, PatternMap<StepImplementation>> stepImplementationMap = new HashMap<String, PatternMap<StepImplementation>>();
 
-    private final Map<StepImplementation, List<StepImplementationUsage>> stepImplementationsUsageMap = new HashMap<StepImplementation, List<StepImplementationUsage>>();
+    private final StepUsageTracker stepUsageTracker = new StepUsageTracker();
     
     // this is the map of substeps - Define: blah blah and might not be populated
     private PatternMap<ParentStep> subStepsMap = null;
@@ -64,6 +67,17 @@ public class Syntax {
 
     private final SyntaxErrorReporter syntaxErrorReporter;
 
+    // the resolved implementations of recently looked up step lines, usage is
+    // still recorded on every lookup
+    private final ResolutionCache resolutionCache = new ResolutionCache(DEFAULT_RESOLUTION_CACHE_SIZE);
+
+    // for non strict lookups, built when first needed
+    private KeywordIndex<StepImplementation> stepImplementationKeywordIndex = null;
+    private KeywordIndex<ParentStep> subStepsKeywordIndex = null;
+
+    // every implementation by its whole line pattern, for validation
+    private PatternMap<StepImplementation> stepImplementationPatternMap = null;
+
     public Syntax() {
         this(new DefaultSyntaxErrorReporter());
     }
@@ -112,6 +126,9 @@ public class Syntax {
      */
     public void setSubStepsMap(final PatternMap<ParentStep> loadSubSteps) {
         this.subStepsMap = loadSubSteps;
+        synchronized (this) {
+            this.subStepsKeywordIndex = null;
+        }
     }
 
     public PatternMap<ParentStep> getSubStepsMap() {
@@ -121,6 +138,52 @@ public class Syntax {
     /**
      * @return
      */
+    /**
+     * @return the substeps indexed for non strict lookups, see
+     *         {@link KeywordIndex}
+     */
+    public synchronized KeywordIndex<ParentStep> getSubStepsKeywordIndex() {
+        if (this.subStepsKeywordIndex == null && this.subStepsMap != null) {
+            final KeywordIndex<ParentStep> index = new KeywordIndex<ParentStep>();
+            for (final ParentStep parentStep : this.subStepsMap.values()) {
+                index.add(parentStep.getParent().getKeyword(), parentStep.getParent().getPattern(), parentStep);
+            }
+            this.subStepsKeywordIndex = index;
+        }
+        return this.subStepsKeywordIndex;
+    }
+
+    /**
+     * @return all of the step implementations keyed by their pattern,
+     *         regardless of keyword. Built once and shared, so it shouldn't be
+     *         modified.
+     */
+    public synchronized PatternMap<StepImplementation> getStepImplementationPatternMap() {
+        if (this.stepImplementationPatternMap == null) {
+            final PatternMap<StepImplementation> patternMap = new PatternMap<StepImplementation>();
+            for (final StepImplementation impl : getStepImplementations()) {
+                if (!patternMap.containsPattern(impl.getValue())) {
+                    patternMap.put(impl.getValue(), impl);
+                }
+            }
+            this.stepImplementationPatternMap = patternMap;
+        }
+        return this.stepImplementationPatternMap;
+    }
+
+    private synchronized KeywordIndex<StepImplementation> getStepImplementationKeywordIndex() {
+        if (this.stepImplementationKeywordIndex == null) {
+            final KeywordIndex<StepImplementation> index = new KeywordIndex<StepImplementation>();
+            for (final PatternMap<StepImplementation> patternMap : this.stepImplementationMap.values()) {
+                for (final StepImplementation impl : patternMap.values()) {
+                    index.add(impl.getKeyword(), impl.getValue(), impl);
+                }
+            }
+            this.stepImplementationKeywordIndex = index;
+        }
+        return this.stepImplementationKeywordIndex;
+    }
+
     public List<ParentStep> getSortedRootSubSteps() {
         final Collection<ParentStep> rootSubSteps = this.subStepsMap.values();
 
@@ -137,7 +200,13 @@ public class Syntax {
      */
     public void addStepImplementation(final StepImplementation impl) {
 
-        stepImplementationsUsageMap.put(impl, new ArrayList<StepImplementationUsage>());
+        resolutionCache.clear();
+        synchronized (this) {
+            stepImplementationKeywordIndex = null;
+            stepImplementationPatternMap = null;
+        }
+
+        stepUsageTracker.register(impl);
         
         PatternMap<StepImplementation> patternMap = this.stepImplementationMap.get(impl.getKeyword());
 
@@ -182,6 +251,7 @@ public class Syntax {
     public void setStrict(final boolean strict, final String[] nonStrictKeywordPrecedence) {
         this.strict = strict;
         this.nonStrictKeywordPrecedence = nonStrictKeywordPrecedence;
+        resolutionCache.clear();
 
         if (!strict && (this.nonStrictKeywordPrecedence == null || this.nonStrictKeywordPrecedence.length == 0)) {
             throw new IllegalArgumentException(
@@ -193,6 +263,15 @@ public class Syntax {
         this.failOnDuplicateStepImplementations = failOnDuplicateStepImplementations;
     }
 
+    /**
+     * @param size
+     *            the number of step line resolutions to keep, 0 to turn the
+     *            cache off
+     */
+    public void setResolutionCacheSize(final int size) {
+        resolutionCache.setMaxSize(size);
+    }
+
     /**
      * @param parameterLine
      * @return
@@ -214,6 +293,30 @@ public class Syntax {
      */
     private List<StepImplementation> getStepImplementationsInternal(final String keyword, final String parameterLine,
             final boolean okNotTofindAnything, final File source, final int lineNumber) {
+
+        final String cacheKey = (okNotTofindAnything ? "?" : "!") + keyword + '\n' + parameterLine;
+
+        List<StepImplementation> list = resolutionCache.get(cacheKey);
+        if (list == ResolutionCache.NOT_FOUND) {
+            list = null;
+        } else if (list == null) {
+            list = resolveStepImplementations(keyword, parameterLine, okNotTofindAnything, source, lineNumber);
+            resolutionCache.put(cacheKey, list);
+        }
+
+        if (list != null) {
+            for (final StepImplementation s : list){
+                stepUsageTracker.record(s, parameterLine, source, lineNumber);
+            }
+            // callers get their own copy of the cached list
+            list = new ArrayList<StepImplementation>(list);
+        }
+        
+        return list;
+    }
+
+    private List<StepImplementation> resolveStepImplementations(final String keyword, final String parameterLine,
+            final boolean okNotTofindAnything, final File source, final int lineNumber) {
         List<StepImplementation> list = getStrictStepimplementation(keyword, parameterLine, okNotTofindAnything,
                 source, lineNumber);
 
@@ -222,11 +325,25 @@ public class Syntax {
             // look for an alternative, iterate through the
             // nonStrictKeywordPrecedence until we get what we want
 
+            // what the line matches under every other keyword, in one go
+            final Map<String, List<StepImplementation>> byKeyword = getStepImplementationKeywordIndex()
+                    .matchesByKeyword(keyword, parameterLine);
+
             for (final String altKeyword : this.nonStrictKeywordPrecedence) {
                 // don't use the same keyword again
                 if (altKeyword.compareToIgnoreCase(keyword) != 0) {
-                    final List<StepImplementation> altStepImplementations = getStrictStepimplementation(altKeyword,
-                            parameterLine.replaceFirst(keyword, altKeyword), okNotTofindAnything, source, lineNumber);
+                    final List<StepImplementation> altStepImplementations;
+                    if (byKeyword != null) {
+                        if (!okNotTofindAnything && getPatternMapForAnnotation(altKeyword) == null) {
+                            throw new UnimplementedStepException(parameterLine.replaceFirst(keyword, altKeyword),
+                                    source, lineNumber);
+                        }
+                        altStepImplementations = byKeyword.get(altKeyword);
+                    } else {
+                        altStepImplementations = getStrictStepimplementation(altKeyword,
+                                parameterLine.replaceFirst(keyword, altKeyword), okNotTofindAnything, source,
+                                lineNumber);
+                    }
                     if (altStepImplementations != null && !altStepImplementations.isEmpty()) {
                         // found an alternative, bail immediately
                         list = new ArrayList<StepImplementation>(Collections2.transform(altStepImplementations,
@@ -236,13 +353,6 @@ public class Syntax {
                 }
             }
         }
-        
-        if (list != null) {
-            for (final StepImplementation s : list){
-                stepImplementationsUsageMap.get(s).add(new StepImplementationUsage(parameterLine, source, lineNumber));
-            }
-        }
-        
         return list;
     }
 
@@ -269,6 +379,57 @@ public class Syntax {
         return list;
     }
 
+    /**
+     * A bounded, least recently used map of step lines to their resolved
+     * implementations.
+     */
+    private static final class ResolutionCache {
+
+        // stands in for a null resolution
+        static final List<StepImplementation> NOT_FOUND = Collections
+                .unmodifiableList(new ArrayList<StepImplementation>());
+
+        private int maxSize;
+
+        private final Map<String, List<StepImplementation>> entries = new LinkedHashMap<String, List<StepImplementation>>(
+                16, 0.75f, true) {
+
+            private static final long serialVersionUID = -6785310335018945410L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, List<StepImplementation>> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        ResolutionCache(final int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized void setMaxSize(final int maxSize) {
+            this.maxSize = maxSize;
+            entries.clear();
+        }
+
+        /**
+         * @return the cached list, {@link #NOT_FOUND} or null if there isn't
+         *         one
+         */
+        synchronized List<StepImplementation> get(final String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(final String key, final List<StepImplementation> value) {
+            if (maxSize > 0) {
+                entries.put(key, value != null ? Collections.unmodifiableList(value) : NOT_FOUND);
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+    }
+
     private static final class CloneStepImplementationsWithNewKeywordFunction implements
             Function<StepImplementation, StepImplementation> {
 
@@ -301,16 +462,13 @@ public class Syntax {
      * 
      */
     public List<StepImplementation> getUncalledStepImplementations() {
+        return stepUsageTracker.getUncalled();
+    }
 
-        final List<StepImplementation> uncalled = new ArrayList<StepImplementation>();
-        final Set<Entry<StepImplementation, List<StepImplementationUsage>>> entrySet = stepImplementationsUsageMap.entrySet();
-        
-        for (final Entry<StepImplementation, List<StepImplementationUsage>> e : entrySet){
-            
-            if (e.getValue().isEmpty()){
-                uncalled.add(e.getKey());
-            }
-        }
-        return uncalled;
+    /**
+     * @return what each step implementation has been used by
+     */
+    public StepUsageTracker getStepUsageTracker() {
+        return stepUsageTracker;
     }
 }
@@ -0,0 +1,88 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide dictionary handing out a small int id for each distinct tag
+ * name, used as the bit index in a {@link TagSet}. Ids are never reused or
+ * removed.
+ * 
+ * @author imoore
+ * 
+ */
+final class TagDictionary {
+
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<String, Integer>();
+
+    private static final Object LOCK = new Object();
+
+    // copy on write, indexed by id
+    private static volatile String[] names = new String[0];
+
+
+    private TagDictionary() {
+        // static access only
+    }
+
+
+    /**
+     * @param tag
+     * @return the id of this tag, assigning a new one if it hasn't been seen
+     *         before
+     */
+    static int idOf(final String tag) {
+        final Integer id = IDS.get(tag);
+        if (id != null) {
+            return id.intValue();
+        }
+        synchronized (LOCK) {
+            final Integer existing = IDS.get(tag);
+            if (existing != null) {
+                return existing.intValue();
+            }
+            final String[] current = names;
+            final String[] grown = new String[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = tag;
+            // publish the name before the id so that anyone holding the id
+            // can resolve it
+            names = grown;
+            IDS.put(tag, Integer.valueOf(current.length));
+            return current.length;
+        }
+    }
+
+
+    /**
+     * @param tag
+     * @return the id of this tag, or -1 if it hasn't been seen before
+     */
+    static int lookup(final String tag) {
+        final Integer id = IDS.get(tag);
+        return id != null ? id.intValue() : -1;
+    }
+
+
+    static String nameOf(final int id) {
+        return names[id];
+    }
+}
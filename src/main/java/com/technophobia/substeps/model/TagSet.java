@@ -0,0 +1,268 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable set of tags held as a bitset over the ids in the
+ * {@link TagDictionary}. Instances are interned, so every feature, scenario
+ * and execution node carrying the same tags shares one instance, and tag
+ * matching is a word-wise AND rather than string lookups.
+ * 
+ * @author imoore
+ * 
+ */
+public final class TagSet extends AbstractSet<String> implements Serializable {
+
+    private static final long serialVersionUID = 6404738427358618453L;
+
+    private static final ConcurrentMap<TagSet, TagSet> CANONICAL = new ConcurrentHashMap<TagSet, TagSet>();
+
+    public static final TagSet EMPTY = intern(new TagSet(new long[0]));
+
+    // trimmed so that the last word is never zero
+    private final long[] words;
+    private final int size;
+    private final int hashCode;
+
+
+    private TagSet(final long[] words) {
+        this.words = words;
+
+        int count = 0;
+        int hash = 0;
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+            count++;
+            hash += TagDictionary.nameOf(id).hashCode();
+        }
+        this.size = count;
+        this.hashCode = hash;
+    }
+
+
+    /**
+     * @param tags
+     *            may be null
+     * @return the shared TagSet holding these tags
+     */
+    public static TagSet of(final Collection<String> tags) {
+        if (tags instanceof TagSet) {
+            return (TagSet) tags;
+        } else if (tags == null || tags.isEmpty()) {
+            return EMPTY;
+        }
+        long[] words = new long[0];
+        for (final String tag : tags) {
+            final int id = TagDictionary.idOf(tag);
+            final int word = id >>> 6;
+            if (word >= words.length) {
+                final long[] grown = new long[word + 1];
+                System.arraycopy(words, 0, grown, 0, words.length);
+                words = grown;
+            }
+            words[word] |= 1L << id;
+        }
+        return intern(new TagSet(words));
+    }
+
+
+    /**
+     * @param tags
+     * @param moreTags
+     *            either may be null
+     * @return the shared TagSet holding the tags in both
+     */
+    public static TagSet union(final Collection<String> tags, final Collection<String> moreTags) {
+        final TagSet a = of(tags);
+        final TagSet b = of(moreTags);
+
+        if (a.containsAll(b)) {
+            return a;
+        } else if (b.containsAll(a)) {
+            return b;
+        }
+        final long[] longer = a.words.length >= b.words.length ? a.words : b.words;
+        final long[] shorter = longer == a.words ? b.words : a.words;
+
+        final long[] words = longer.clone();
+        for (int i = 0; i < shorter.length; i++) {
+            words[i] |= shorter[i];
+        }
+        return intern(new TagSet(words));
+    }
+
+
+    private static TagSet intern(final TagSet tagSet) {
+        final TagSet existing = CANONICAL.putIfAbsent(tagSet, tagSet);
+        return existing != null ? existing : tagSet;
+    }
+
+
+    /**
+     * @param other
+     * @return true if every tag in other is also in this set
+     */
+    public boolean containsAll(final TagSet other) {
+        if (other.words.length > this.words.length) {
+            return false;
+        }
+        for (int i = 0; i < other.words.length; i++) {
+            if ((other.words[i] & ~this.words[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @param other
+     * @return true if any tag in other is also in this set
+     */
+    public boolean intersects(final TagSet other) {
+        final int common = Math.min(this.words.length, other.words.length);
+        for (int i = 0; i < common; i++) {
+            if ((this.words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    @Override
+    public boolean containsAll(final Collection<?> c) {
+        if (c instanceof TagSet) {
+            return containsAll((TagSet) c);
+        }
+        return super.containsAll(c);
+    }
+
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        final int id = TagDictionary.lookup((String) o);
+        return id >= 0 && (id >>> 6) < this.words.length && (this.words[id >>> 6] & (1L << id)) != 0;
+    }
+
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+
+    @Override
+    public Iterator<String> iterator() {
+
+        return new Iterator<String>() {
+
+            private int next = nextId(0);
+
+
+            public boolean hasNext() {
+                return this.next >= 0;
+            }
+
+
+            public String next() {
+                if (this.next < 0) {
+                    throw new NoSuchElementException();
+                }
+                final String tag = TagDictionary.nameOf(this.next);
+                this.next = nextId(this.next + 1);
+                return tag;
+            }
+
+
+            public void remove() {
+                throw new UnsupportedOperationException("TagSets are immutable");
+            }
+        };
+    }
+
+
+    private int nextId(final int from) {
+        int word = from >>> 6;
+        if (word >= this.words.length) {
+            return -1;
+        }
+        long bits = this.words[word] & (-1L << from);
+        while (bits == 0) {
+            word++;
+            if (word == this.words.length) {
+                return -1;
+            }
+            bits = this.words[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        } else if (o instanceof TagSet) {
+            return Arrays.equals(this.words, ((TagSet) o).words);
+        }
+        return super.equals(o);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+
+    // ids are only meaningful within this process, so serialize the names
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializedForm(toArray(new String[this.size]));
+    }
+
+    private static class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = -3150823937251618740L;
+
+        private final String[] tags;
+
+
+        SerializedForm(final String[] tags) {
+            this.tags = tags;
+        }
+
+
+        private Object readResolve() throws ObjectStreamException {
+            return TagSet.of(Arrays.asList(this.tags));
+        }
+    }
+}
@@ -45,15 +45,19 @@ public final class Util {
     // TODO - these two methods are both used - used to be one, but now it's two
     // - could they be combined ??
     public static String[] getArgs(final String patternString, final String sourceString) {
+        return getArgs(Pattern.compile(patternString), sourceString);
+    }
+
 
-        log.debug("Util getArgs String[] with pattern: " + patternString + " and sourceStr: "
+    public static String[] getArgs(final Pattern pattern, final String sourceString) {
+
+        log.debug("Util getArgs String[] with pattern: " + pattern.pattern() + " and sourceStr: "
                 + sourceString);
 
         String[] rtn = null;
 
         ArrayList<String> argsList = null;
 
-        final Pattern pattern = Pattern.compile(patternString);
         final Matcher matcher = pattern.matcher(sourceString);
 
         final int groupCount = matcher.groupCount();
@@ -0,0 +1,92 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link PatternMatcher} that compiles all of its patterns into one
+ * combined NFA and finds every pattern matching a string in a single pass
+ * over it, in time linear in the length of the string whatever the
+ * patterns. Patterns using constructs the automaton can't express (back
+ * references, lookaround, embedded flags, possessive quantifiers etc) are
+ * matched with java.util.regex instead.
+ * 
+ * @author imoore
+ * 
+ */
+public class AutomatonMatcher<V> implements PatternMatcher<V> {
+
+    private final List<V> values = new ArrayList<V>();
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+
+    private final RegexAutomaton automaton = new RegexAutomaton();
+
+    // the indexes of the patterns matched by regex, keyed by pattern
+    private final PrefixIndexMatcher<Integer> fallback = new PrefixIndexMatcher<Integer>();
+    private int fallbackCount = 0;
+
+
+    public void add(final Pattern pattern, final V value) {
+
+        final int index = values.size();
+        values.add(value);
+        patterns.add(pattern);
+
+        if (!automaton.add(pattern.pattern(), index)) {
+            fallback.add(pattern, Integer.valueOf(index));
+            fallbackCount++;
+        }
+    }
+
+
+    public List<V> matchesFor(final String string) {
+
+        final List<Integer> matched = new ArrayList<Integer>();
+
+        if (fallbackCount > 0) {
+            matched.addAll(fallback.matchesFor(string));
+        }
+
+        if (fallbackCount < values.size()) {
+            if (RegexAutomaton.isSingleCharsOnly(string)) {
+                automaton.matches(string, matched);
+            } else {
+                // the automaton works on chars rather than code points, so
+                // leave supplementary characters to java.util.regex
+                for (int i = 0; i < patterns.size(); i++) {
+                    if (automaton.handles(i) && patterns.get(i).matcher(string).matches()) {
+                        matched.add(Integer.valueOf(i));
+                    }
+                }
+            }
+        }
+
+        Collections.sort(matched);
+
+        final List<V> vals = new ArrayList<V>(matched.size());
+        for (final Integer index : matched) {
+            vals.add(values.get(index.intValue()));
+        }
+        return vals;
+    }
+}
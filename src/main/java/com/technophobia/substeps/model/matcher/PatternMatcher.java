@@ -0,0 +1,51 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model.matcher;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The engine behind a {@link com.technophobia.substeps.model.PatternMap},
+ * finding every pattern that fully matches a string. Implementations are
+ * selected with {@link PatternMatchers} and need a public no-arg
+ * constructor.
+ * 
+ * @author imoore
+ * 
+ * @param <V>
+ *            the values associated with each pattern
+ */
+public interface PatternMatcher<V> {
+
+    /**
+     * @param pattern
+     * @param value
+     */
+    void add(Pattern pattern, V value);
+
+
+    /**
+     * @param string
+     *            a non empty string
+     * @return the values of all the patterns that match the whole string, in
+     *         the order they were added
+     */
+    List<V> matchesFor(String string);
+}
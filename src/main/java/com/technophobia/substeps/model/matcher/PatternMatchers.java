@@ -0,0 +1,80 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model.matcher;
+
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
+
+/**
+ * Creates the {@link PatternMatcher} used by new PatternMaps, chosen with the
+ * patternMatcher system property: <code>prefix</code> (the default),
+ * <code>automaton</code> or the class name of another implementation.
+ * 
+ * @author imoore
+ * 
+ */
+public final class PatternMatchers {
+
+    public static final String PATTERN_MATCHER_KEY = "patternMatcher";
+
+    public static final String PREFIX_INDEX = "prefix";
+    public static final String AUTOMATON = "automaton";
+
+
+    private PatternMatchers() {
+        // static access only
+    }
+
+
+    public static <V> PatternMatcher<V> newMatcher() {
+        return newMatcher(System.getProperty(PATTERN_MATCHER_KEY));
+    }
+
+
+    /**
+     * @param name
+     *            prefix, automaton, a PatternMatcher class name, or null for
+     *            the default
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PatternMatcher<V> newMatcher(final String name) {
+
+        if (name == null || name.length() == 0 || PREFIX_INDEX.equals(name)) {
+            return new PrefixIndexMatcher<V>();
+        } else if (AUTOMATON.equals(name)) {
+            return new AutomatonMatcher<V>();
+        }
+
+        try {
+            final Class<?> matcherClass = Class.forName(name);
+
+            if (!PatternMatcher.class.isAssignableFrom(matcherClass)) {
+                throw new SubstepsConfigurationException(name + " does not implement "
+                        + PatternMatcher.class.getName());
+            }
+            return (PatternMatcher<V>) matcherClass.newInstance();
+
+        } catch (final ClassNotFoundException e) {
+            throw new SubstepsConfigurationException("Unknown pattern matcher: " + name, e);
+        } catch (final InstantiationException e) {
+            throw new SubstepsConfigurationException("Unable to create pattern matcher: " + name, e);
+        } catch (final IllegalAccessException e) {
+            throw new SubstepsConfigurationException("Unable to create pattern matcher: " + name, e);
+        }
+    }
+}
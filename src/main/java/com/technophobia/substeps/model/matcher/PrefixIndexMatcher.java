@@ -0,0 +1,204 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The default {@link PatternMatcher}. Each pattern's literal prefix is
+ * indexed in a trie, so a lookup only evaluates the regexes of the patterns
+ * whose prefix the string starts with, rather than every pattern.
+ * 
+ * @author imoore
+ * 
+ */
+public class PrefixIndexMatcher<V> implements PatternMatcher<V> {
+
+    private static final String REGEX_META_CHARS = "[](){}.*+?^$|\\";
+
+    private final PrefixNode<V> prefixIndex = new PrefixNode<V>();
+    private int count = 0;
+
+
+    public void add(final Pattern pattern, final V value) {
+        prefixIndex.add(literalPrefixOf(pattern.pattern()), new IndexedPattern<V>(count++, pattern, value));
+    }
+
+
+    public List<V> matchesFor(final String string) {
+
+        final List<IndexedPattern<V>> candidates = prefixIndex.candidatesFor(string);
+
+        // keep the results in the order the patterns were added
+        Collections.sort(candidates);
+
+        final List<V> vals = new ArrayList<V>();
+        for (final IndexedPattern<V> candidate : candidates) {
+
+            if (candidate.pattern.matcher(string).matches()) {
+                vals.add(candidate.value);
+            }
+        }
+        return vals;
+    }
+
+
+    /**
+     * @param regex
+     * @return the literal text that any string matching this regex must start
+     *         with, possibly empty
+     */
+    public static String literalPrefixOf(final String regex) {
+
+        final StringBuilder prefix = new StringBuilder();
+
+        if (hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        int i = regex.startsWith("^") ? 1 : 0;
+
+        while (i < regex.length()) {
+
+            final char c = regex.charAt(i);
+            final char literal;
+            final int next;
+
+            if (c == '\\') {
+                // escaped punctuation is literal, escaped letters are classes
+                // or quoting
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    break;
+                }
+                literal = regex.charAt(i + 1);
+                next = i + 2;
+            } else if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+
+            if (next < regex.length()) {
+                final char quantifier = regex.charAt(next);
+                if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+                    // this char is optional
+                    break;
+                } else if (quantifier == '+') {
+                    prefix.append(literal);
+                    break;
+                }
+            }
+            prefix.append(literal);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+
+    /**
+     * @param regex
+     * @return true if the regex has a | outside of any group, eg a|b
+     */
+    public static boolean hasTopLevelAlternation(final String regex) {
+
+        int depth = 0;
+        boolean inClass = false;
+
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class IndexedPattern<V> implements Comparable<IndexedPattern<V>> {
+
+        private final int order;
+        private final Pattern pattern;
+        private final V value;
+
+
+        IndexedPattern(final int order, final Pattern pattern, final V value) {
+            this.order = order;
+            this.pattern = pattern;
+            this.value = value;
+        }
+
+
+        public int compareTo(final IndexedPattern<V> other) {
+            return this.order < other.order ? -1 : (this.order == other.order ? 0 : 1);
+        }
+    }
+
+    /**
+     * A trie over literal prefixes, each node holding the patterns whose
+     * prefix ends there.
+     */
+    private static class PrefixNode<V> {
+
+        private final Map<Character, PrefixNode<V>> children = new HashMap<Character, PrefixNode<V>>();
+        private final List<IndexedPattern<V>> patterns = new ArrayList<IndexedPattern<V>>();
+
+
+        void add(final String prefix, final IndexedPattern<V> pattern) {
+            PrefixNode<V> node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                final Character c = Character.valueOf(prefix.charAt(i));
+                PrefixNode<V> child = node.children.get(c);
+                if (child == null) {
+                    child = new PrefixNode<V>();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.patterns.add(pattern);
+        }
+
+
+        List<IndexedPattern<V>> candidatesFor(final String string) {
+            final List<IndexedPattern<V>> candidates = new ArrayList<IndexedPattern<V>>();
+
+            PrefixNode<V> node = this;
+            int i = 0;
+            while (node != null) {
+                candidates.addAll(node.patterns);
+                node = i < string.length() ? node.children.get(Character.valueOf(string.charAt(i++))) : null;
+            }
+            return candidates;
+        }
+    }
+}
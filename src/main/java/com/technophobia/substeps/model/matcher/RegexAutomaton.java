@@ -0,0 +1,605 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model.matcher;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A Thompson NFA built from many regexes, simulated a state set at a time so
+ * that a string is matched against all of them in one pass without
+ * backtracking. Only the regular subset of java.util.regex syntax is
+ * supported; {@link #add(String, int)} reports anything else so that the
+ * caller can fall back to java.util.regex for that pattern.
+ * 
+ * @author imoore
+ * 
+ */
+class RegexAutomaton {
+
+    // counted repetitions are expanded, so keep them bounded
+    private static final int MAX_REPEAT = 64;
+
+    private final State start;
+    private final List<State> states = new ArrayList<State>();
+    private final BitSet handled = new BitSet();
+
+
+    RegexAutomaton() {
+        this.start = newState();
+        this.start.epsilons = new ArrayList<State>();
+    }
+
+
+    /**
+     * @param regex
+     * @param index
+     *            reported by {@link #matches(String, List)} when this regex
+     *            matches
+     * @return false if the regex uses constructs that aren't supported, in
+     *         which case the automaton is unchanged
+     */
+    boolean add(final String regex, final int index) {
+
+        final Node node;
+        try {
+            node = new Parser(regex).parse();
+        } catch (final UnsupportedRegexException e) {
+            return false;
+        }
+
+        final State match = newState();
+        match.match = index;
+        this.start.epsilons.add(node.compile(match, this));
+        this.handled.set(index);
+        return true;
+    }
+
+
+    boolean handles(final int index) {
+        return this.handled.get(index);
+    }
+
+
+    /**
+     * @param string
+     * @param matched
+     *            has the index of every regex that matches the whole string
+     *            added
+     */
+    void matches(final String string, final List<Integer> matched) {
+
+        // stamps rather than flags so the states themselves are never written
+        // to, and concurrent lookups are safe
+        final int[] seen = new int[this.states.size()];
+        int step = 1;
+
+        List<State> current = new ArrayList<State>();
+        List<State> next = new ArrayList<State>();
+
+        addState(current, this.start, seen, step);
+
+        for (int i = 0; i < string.length() && !current.isEmpty(); i++) {
+            final char c = string.charAt(i);
+            step++;
+            next.clear();
+
+            for (final State s : current) {
+                if (s.accepts != null && s.accepts.matches(c)) {
+                    addState(next, s.next, seen, step);
+                }
+            }
+            final List<State> tmp = current;
+            current = next;
+            next = tmp;
+        }
+
+        for (final State s : current) {
+            if (s.match >= 0) {
+                matched.add(Integer.valueOf(s.match));
+            }
+        }
+    }
+
+
+    private static void addState(final List<State> list, final State s, final int[] seen, final int step) {
+        if (seen[s.id] == step) {
+            return;
+        }
+        seen[s.id] = step;
+
+        if (s.epsilons != null) {
+            for (final State e : s.epsilons) {
+                addState(list, e, seen, step);
+            }
+        } else {
+            list.add(s);
+        }
+    }
+
+
+    static boolean isSingleCharsOnly(final String string) {
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    State newState() {
+        final State s = new State(this.states.size());
+        this.states.add(s);
+        return s;
+    }
+
+
+    private State split(final State first, final State second) {
+        final State s = newState();
+        s.epsilons = new ArrayList<State>(2);
+        s.epsilons.add(first);
+        s.epsilons.add(second);
+        return s;
+    }
+
+    /**
+     * A state either consumes a char accepted by its CharClass, is an epsilon
+     * split, or marks a match.
+     */
+    static final class State {
+
+        private final int id;
+        private CharClass accepts;
+        private State next;
+        private List<State> epsilons;
+        private int match = -1;
+
+
+        State(final int id) {
+            this.id = id;
+        }
+    }
+
+    private static class UnsupportedRegexException extends Exception {
+
+        private static final long serialVersionUID = 4413407346113446458L;
+    }
+
+    /**
+     * Parsed regex; compiled back to front, each node given the state to
+     * continue to once it has matched.
+     */
+    private abstract static class Node {
+
+        abstract State compile(State next, RegexAutomaton automaton);
+    }
+
+    private static class CharNode extends Node {
+
+        private final CharClass charClass;
+
+
+        CharNode(final CharClass charClass) {
+            this.charClass = charClass;
+        }
+
+
+        @Override
+        State compile(final State next, final RegexAutomaton automaton) {
+            final State s = automaton.newState();
+            s.accepts = this.charClass;
+            s.next = next;
+            return s;
+        }
+    }
+
+    private static class SequenceNode extends Node {
+
+        private final List<Node> nodes = new ArrayList<Node>();
+
+
+        @Override
+        State compile(final State next, final RegexAutomaton automaton) {
+            State s = next;
+            for (int i = this.nodes.size() - 1; i >= 0; i--) {
+                s = this.nodes.get(i).compile(s, automaton);
+            }
+            return s;
+        }
+    }
+
+    private static class AlternationNode extends Node {
+
+        private final List<Node> alternatives = new ArrayList<Node>();
+
+
+        @Override
+        State compile(final State next, final RegexAutomaton automaton) {
+            final State s = automaton.newState();
+            s.epsilons = new ArrayList<State>(this.alternatives.size());
+            for (final Node alternative : this.alternatives) {
+                s.epsilons.add(alternative.compile(next, automaton));
+            }
+            return s;
+        }
+    }
+
+    private static class RepeatNode extends Node {
+
+        private final Node node;
+        private final int min;
+        // -1 for unbounded
+        private final int max;
+
+
+        RepeatNode(final Node node, final int min, final int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+
+        @Override
+        State compile(final State next, final RegexAutomaton automaton) {
+
+            State tail;
+            if (this.max < 0) {
+                final State loop = automaton.split(null, next);
+                loop.epsilons.set(0, this.node.compile(loop, automaton));
+                tail = loop;
+            } else {
+                tail = next;
+                for (int i = this.min; i < this.max; i++) {
+                    tail = automaton.split(this.node.compile(tail, automaton), tail);
+                }
+            }
+            for (int i = 0; i < this.min; i++) {
+                tail = this.node.compile(tail, automaton);
+            }
+            return tail;
+        }
+    }
+
+    /**
+     * A set of chars, as ranges plus any nested predefined classes.
+     */
+    static final class CharClass {
+
+        static final CharClass DIGIT = new CharClass(false).range('0', '9');
+        static final CharClass WORD = new CharClass(false).range('a', 'z').range('A', 'Z').range('0', '9')
+                .range('_', '_');
+        static final CharClass SPACE = new CharClass(false).range(' ', ' ').range('\t', '\r');
+        // '.' doesn't match line terminators
+        static final CharClass ANY = new CharClass(true).range('\n', '\n').range('\r', '\r')
+                .range((char) 0x85, (char) 0x85).range((char) 0x2028, (char) 0x2029);
+
+        private final boolean negated;
+        private char[] ranges = new char[0];
+        private final List<CharClass> members = new ArrayList<CharClass>();
+
+
+        CharClass(final boolean negated) {
+            this.negated = negated;
+        }
+
+
+        static CharClass of(final char c) {
+            return new CharClass(false).range(c, c);
+        }
+
+
+        CharClass range(final char from, final char to) {
+            final char[] grown = new char[this.ranges.length + 2];
+            System.arraycopy(this.ranges, 0, grown, 0, this.ranges.length);
+            grown[this.ranges.length] = from;
+            grown[this.ranges.length + 1] = to;
+            this.ranges = grown;
+            return this;
+        }
+
+
+        CharClass member(final CharClass charClass) {
+            this.members.add(charClass);
+            return this;
+        }
+
+
+        boolean matches(final char c) {
+            boolean in = false;
+            for (int i = 0; i < this.ranges.length && !in; i += 2) {
+                in = c >= this.ranges[i] && c <= this.ranges[i + 1];
+            }
+            for (int i = 0; i < this.members.size() && !in; i++) {
+                in = this.members.get(i).matches(c);
+            }
+            return in != this.negated;
+        }
+    }
+
+    /**
+     * Recursive descent over the supported syntax.
+     */
+    private static class Parser {
+
+        private final String regex;
+        private int pos = 0;
+
+
+        Parser(final String regex) {
+            this.regex = regex;
+        }
+
+
+        Node parse() throws UnsupportedRegexException {
+            if (peek('^')) {
+                this.pos++;
+            }
+            final Node node = parseAlternation();
+            if (this.pos != this.regex.length()) {
+                throw new UnsupportedRegexException();
+            }
+            return node;
+        }
+
+
+        private boolean peek(final char c) {
+            return this.pos < this.regex.length() && this.regex.charAt(this.pos) == c;
+        }
+
+
+        private boolean atEnd() {
+            return this.pos >= this.regex.length();
+        }
+
+
+        private Node parseAlternation() throws UnsupportedRegexException {
+            final Node first = parseSequence();
+            if (!peek('|')) {
+                return first;
+            }
+            final AlternationNode alternation = new AlternationNode();
+            alternation.alternatives.add(first);
+            while (peek('|')) {
+                this.pos++;
+                alternation.alternatives.add(parseSequence());
+            }
+            return alternation;
+        }
+
+
+        private Node parseSequence() throws UnsupportedRegexException {
+            final SequenceNode sequence = new SequenceNode();
+            while (!atEnd() && !peek('|') && !peek(')')) {
+                if (peek('$') && this.pos == this.regex.length() - 1) {
+                    // matches() has to reach the end anyway
+                    this.pos++;
+                } else {
+                    sequence.nodes.add(parseQuantifier(parseAtom()));
+                }
+            }
+            return sequence;
+        }
+
+
+        private Node parseQuantifier(final Node atom) throws UnsupportedRegexException {
+            if (atEnd()) {
+                return atom;
+            }
+            final Node quantified;
+            final char c = this.regex.charAt(this.pos);
+            if (c == '*') {
+                this.pos++;
+                quantified = new RepeatNode(atom, 0, -1);
+            } else if (c == '+') {
+                this.pos++;
+                quantified = new RepeatNode(atom, 1, -1);
+            } else if (c == '?') {
+                this.pos++;
+                quantified = new RepeatNode(atom, 0, 1);
+            } else if (c == '{') {
+                this.pos++;
+                final int min = parseNumber();
+                int max = min;
+                if (peek(',')) {
+                    this.pos++;
+                    max = peek('}') ? -1 : parseNumber();
+                }
+                expect('}');
+                if (min > MAX_REPEAT || max > MAX_REPEAT || (max >= 0 && max < min)) {
+                    throw new UnsupportedRegexException();
+                }
+                quantified = new RepeatNode(atom, min, max);
+            } else {
+                return atom;
+            }
+
+            if (peek('?')) {
+                // reluctant makes no difference to whether the whole string
+                // matches
+                this.pos++;
+            } else if (peek('+')) {
+                // possessive does
+                throw new UnsupportedRegexException();
+            }
+            return quantified;
+        }
+
+
+        private int parseNumber() throws UnsupportedRegexException {
+            final int from = this.pos;
+            while (!atEnd() && Character.isDigit(this.regex.charAt(this.pos))) {
+                this.pos++;
+            }
+            if (from == this.pos || this.pos - from > 4) {
+                throw new UnsupportedRegexException();
+            }
+            return Integer.parseInt(this.regex.substring(from, this.pos));
+        }
+
+
+        private void expect(final char c) throws UnsupportedRegexException {
+            if (!peek(c)) {
+                throw new UnsupportedRegexException();
+            }
+            this.pos++;
+        }
+
+
+        private Node parseAtom() throws UnsupportedRegexException {
+            final char c = this.regex.charAt(this.pos++);
+            switch (c) {
+                case '(': {
+                    if (peek('?')) {
+                        this.pos++;
+                        // only non capturing groups, no lookaround or flags
+                        expect(':');
+                    }
+                    final Node group = parseAlternation();
+                    expect(')');
+                    return group;
+                }
+                case '[': {
+                    return new CharNode(parseClass());
+                }
+                case '.': {
+                    return new CharNode(CharClass.ANY);
+                }
+                case '\\': {
+                    return new CharNode(parseEscape(false));
+                }
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case ')': {
+                    throw new UnsupportedRegexException();
+                }
+                default: {
+                    return new CharNode(CharClass.of(c));
+                }
+            }
+        }
+
+
+        private CharClass parseEscape(final boolean inClass) throws UnsupportedRegexException {
+            if (atEnd()) {
+                throw new UnsupportedRegexException();
+            }
+            final char c = this.regex.charAt(this.pos++);
+            switch (c) {
+                case 'd':
+                    return CharClass.DIGIT;
+                case 'D':
+                    return new CharClass(true).member(CharClass.DIGIT);
+                case 'w':
+                    return CharClass.WORD;
+                case 'W':
+                    return new CharClass(true).member(CharClass.WORD);
+                case 's':
+                    return CharClass.SPACE;
+                case 'S':
+                    return new CharClass(true).member(CharClass.SPACE);
+                case 't':
+                    return CharClass.of('\t');
+                case 'n':
+                    return CharClass.of('\n');
+                case 'r':
+                    return CharClass.of('\r');
+                case 'f':
+                    return CharClass.of('\f');
+                default: {
+                    // escaped punctuation is literal; letters and digits are
+                    // back references, anchors, quoting, properties...
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedRegexException();
+                    }
+                    return CharClass.of(c);
+                }
+            }
+        }
+
+
+        private CharClass parseClass() throws UnsupportedRegexException {
+            final boolean negated = peek('^');
+            if (negated) {
+                this.pos++;
+            }
+            final CharClass charClass = new CharClass(negated);
+
+            // leading ']', nested classes and intersections are left to
+            // java.util.regex
+            if (peek(']')) {
+                throw new UnsupportedRegexException();
+            }
+            while (!peek(']')) {
+                if (atEnd() || peek('[') || this.regex.startsWith("&&", this.pos)) {
+                    throw new UnsupportedRegexException();
+                }
+                final char from;
+                char c = this.regex.charAt(this.pos++);
+                if (c == '\\') {
+                    final CharClass escaped = parseEscape(true);
+                    if (!isSingleChar(escaped)) {
+                        charClass.member(escaped);
+                        continue;
+                    }
+                    from = escaped.ranges[0];
+                } else {
+                    from = c;
+                }
+
+                if (peek('-') && this.pos + 1 < this.regex.length() && this.regex.charAt(this.pos + 1) != ']') {
+                    this.pos++;
+                    c = this.regex.charAt(this.pos++);
+                    final char to;
+                    if (c == '\\') {
+                        final CharClass escaped = parseEscape(true);
+                        if (!isSingleChar(escaped)) {
+                            throw new UnsupportedRegexException();
+                        }
+                        to = escaped.ranges[0];
+                    } else if (c == '[') {
+                        throw new UnsupportedRegexException();
+                    } else {
+                        to = c;
+                    }
+                    if (to < from) {
+                        throw new UnsupportedRegexException();
+                    }
+                    charClass.range(from, to);
+                } else {
+                    charClass.range(from, from);
+                }
+            }
+            this.pos++;
+            return charClass;
+        }
+
+
+        private static boolean isSingleChar(final CharClass charClass) {
+            return !charClass.negated && charClass.members.isEmpty() && charClass.ranges.length == 2
+                    && charClass.ranges[0] == charClass.ranges[1];
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Breaks the contents of a feature file up into {@link FeatureFileToken}s in a
+ * single forward pass over the characters, blank lines and comments are
+ * dropped. Line numbers and offsets are worked out as we go rather than
+ * searched for afterwards, which kept the previous parser quadratic in the
+ * size of the file.
+ * 
+ * @author imoore
+ * 
+ */
+public class FeatureFileLexer {
+
+    public List<FeatureFileToken> tokenise(final String contents) {
+
+        final List<FeatureFileToken> tokens = new ArrayList<FeatureFileToken>();
+
+        final int length = contents.length();
+        int lineStart = 0;
+        int lineNumber = 1;
+
+        for (int i = 0; i < length; i++) {
+            final char c = contents.charAt(i);
+
+            if (c == '\n' || c == '\r') {
+
+                addToken(tokens, contents, lineStart, i, lineNumber);
+
+                // treat \r\n as a single line ending
+                if (c == '\r' && i + 1 < length && contents.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+                lineNumber++;
+            }
+        }
+
+        if (lineStart < length) {
+            addToken(tokens, contents, lineStart, length, lineNumber);
+        }
+
+        return tokens;
+    }
+
+    private void addToken(final List<FeatureFileToken> tokens, final String contents, final int lineStart,
+            final int lineEnd, final int lineNumber) {
+
+        int start = lineStart;
+        while (start < lineEnd && Character.isWhitespace(contents.charAt(start))) {
+            start++;
+        }
+
+        if (start < lineEnd) {
+            final String text = stripComments(contents.substring(start, lineEnd));
+
+            if (text.length() > 0) {
+                tokens.add(new FeatureFileToken(FeatureFileToken.Type.typeOf(text), text, lineNumber, start));
+            }
+        }
+    }
+
+    public static String stripComments(final String line) {
+        String trimmed = null;
+        if (line != null) {
+
+            final int idx = line.trim().indexOf("#");
+            if (idx >= 0) {
+                // is the # inside matched quotes
+
+                boolean doTrim = false;
+
+                if (idx == 0) {
+                    // first char
+                    doTrim = true;
+                }
+
+                final String[] splitByQuotes = line.split("\"[^\"]*\"|'[^']*'");
+                // this will find parts of the string not in quotes
+                for (final String split : splitByQuotes) {
+                    if (split.indexOf("#") > 0) {
+                        // hash exists not in a matching pair of quotes
+                        doTrim = true;
+                        break;
+                    }
+                }
+
+                if (doTrim) {
+                    trimmed = line.trim().substring(0, idx).trim();
+                } else {
+                    trimmed = line.trim();
+                }
+            } else {
+                trimmed = line.trim();
+            }
+        }
+        return trimmed;
+    }
+}
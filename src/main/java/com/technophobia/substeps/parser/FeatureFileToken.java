@@ -0,0 +1,98 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.parser;
+
+/**
+ * A single line of a feature file, classified by the directive it starts
+ * with. The text has had comments stripped and been trimmed; the line number
+ * is 1-based and the offset is that of the first non whitespace character in
+ * the original file contents.
+ * 
+ * @author imoore
+ * 
+ */
+public class FeatureFileToken {
+
+    public static enum Type {
+        // @formatter:off
+        TAGS("Tags:"), FEATURE("Feature:"), BACKGROUND("Background:"), SCENARIO_OUTLINE("Scenario Outline:"), SCENARIO(
+                "Scenario:"), EXAMPLES("Examples"), TABLE_ROW("|"), STEP(null);
+
+        // @formatter:on
+
+        Type(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        private final String prefix;
+
+        static Type typeOf(final String text) {
+            for (final Type type : values()) {
+                if (type.prefix != null && text.startsWith(type.prefix)) {
+                    return type;
+                }
+            }
+            return STEP;
+        }
+    }
+
+    private final Type type;
+    private final String text;
+    private final int lineNumber;
+    private final int offset;
+
+    public FeatureFileToken(final Type type, final String text, final int lineNumber, final int offset) {
+        this.type = type;
+        this.text = text;
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the trimmed text of the line, without any trailing comment
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * @return everything after the first ':' of a directive line, trimmed
+     */
+    public String getDirectiveValue() {
+        final int idx = this.text.indexOf(':');
+        return this.text.substring(idx + 1).trim();
+    }
+
+    public int getLineNumber() {
+        return this.lineNumber;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public String toString() {
+        return this.type + "@" + this.lineNumber + ":" + this.offset + " [" + this.text + "]";
+    }
+}
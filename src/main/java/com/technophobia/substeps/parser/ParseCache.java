@@ -0,0 +1,205 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * An on-disk cache of parsed feature and substep files, keyed by the path of
+ * the source file and a hash of its contents. An entry is only returned when
+ * the content hash it was stored with matches the file as it is now, so an
+ * edited file is simply re-parsed and its entry overwritten.
+ * 
+ * Any problem reading or writing the cache is logged and treated as a miss,
+ * the cache is never the reason a run fails.
+ */
+public class ParseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ParseCache.class);
+
+    // bump this when the shape of the cached model changes
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String ENTRY_SUFFIX = ".parsed";
+
+    private final File cacheDir;
+
+
+    public ParseCache(final File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+
+    /**
+     * @param source
+     *            the file to hash
+     * @return a hex digest of the contents of the file, or null if it can't
+     *         be read
+     */
+    public String contentHashOf(final File source) {
+        try {
+            return digest(Files.toByteArray(source));
+        } catch (final IOException e) {
+            log.debug("unable to hash " + source.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+
+    /**
+     * @param source
+     *            the file that was parsed
+     * @param contentHash
+     *            the current hash of the file, from {@link #contentHashOf}
+     * @param type
+     *            the expected type of the entry
+     * @return the cached parse result or null if there isn't an up to date one
+     */
+    public <T> T get(final File source, final String contentHash, final Class<T> type) {
+
+        final File entry = entryFileFor(source);
+        if (!entry.exists()) {
+            return null;
+        }
+
+        T rtn = null;
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry)));
+
+            if (in.readInt() == FORMAT_VERSION && source.getAbsolutePath().equals(in.readUTF())
+                    && contentHash.equals(in.readUTF())) {
+
+                final Object value = in.readObject();
+                if (type.isInstance(value)) {
+                    rtn = type.cast(value);
+                }
+            }
+        } catch (final IOException e) {
+            log.debug("unable to read parse cache entry " + entry.getAbsolutePath(), e);
+        } catch (final ClassNotFoundException e) {
+            log.debug("unable to read parse cache entry " + entry.getAbsolutePath(), e);
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("parse cache " + (rtn != null ? "hit" : "miss") + " for " + source.getAbsolutePath());
+        }
+        return rtn;
+    }
+
+
+    /**
+     * Stores a parse result, replacing any previous entry for the same source
+     * file. The entry is written to a temporary file first and renamed into
+     * place so concurrent readers never see a partial entry.
+     * 
+     * @param source
+     *            the file that was parsed
+     * @param contentHash
+     *            the hash of the file that was parsed, from
+     *            {@link #contentHashOf}
+     * @param value
+     *            the parse result
+     */
+    public void put(final File source, final String contentHash, final Serializable value) {
+
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+            log.warn("unable to create parse cache directory " + cacheDir.getAbsolutePath());
+            return;
+        }
+
+        final File entry = entryFileFor(source);
+        File tmp = null;
+        ObjectOutputStream out = null;
+        try {
+            tmp = File.createTempFile(entry.getName(), ".tmp", cacheDir);
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(source.getAbsolutePath());
+            out.writeUTF(contentHash);
+            out.writeObject(value);
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(entry)) {
+                // some platforms won't rename over an existing file
+                entry.delete();
+                if (!tmp.renameTo(entry)) {
+                    log.debug("unable to move parse cache entry into place: " + entry.getAbsolutePath());
+                }
+            }
+        } catch (final IOException e) {
+            log.warn("unable to write parse cache entry for " + source.getAbsolutePath(), e);
+        } finally {
+            Closeables.closeQuietly(out);
+            if (tmp != null && tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+
+    private File entryFileFor(final File source) {
+        try {
+            return new File(cacheDir, digest(source.getAbsolutePath().getBytes("UTF-8")) + ENTRY_SUFFIX);
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static String digest(final byte[] bytes) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final StringBuilder buf = new StringBuilder();
+        for (final byte b : md.digest(bytes)) {
+            buf.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return buf.toString();
+    }
+}
@@ -20,20 +20,23 @@ package com.technophobia.substeps.runner;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.technophobia.substeps.execution.DryRunImplementationCache;
 import com.technophobia.substeps.execution.ImplementationCache;
 import com.technophobia.substeps.execution.MethodExecutor;
+import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.DeferredScenarioNode;
 import com.technophobia.substeps.execution.node.ExecutionNodeUsage;
 import com.technophobia.substeps.execution.node.FeatureNode;
 import com.technophobia.substeps.execution.node.IExecutionNode;
@@ -41,14 +44,21 @@ import com.technophobia.substeps.execution.node.NodeWithChildren;
 import com.technophobia.substeps.execution.node.RootNode;
 import com.technophobia.substeps.execution.node.RootNodeExecutionContext;
 import com.technophobia.substeps.execution.node.ScenarioNode;
+import com.technophobia.substeps.execution.node.StreamedOutlineScenarioNode;
+import com.technophobia.substeps.model.FeatureFile;
 import com.technophobia.substeps.model.ParentStep;
+import com.technophobia.substeps.model.PatternMap;
 import com.technophobia.substeps.model.Scope;
 import com.technophobia.substeps.model.Step;
 import com.technophobia.substeps.model.StepImplementation;
+import com.technophobia.substeps.model.StepUsageTracker;
 import com.technophobia.substeps.model.Syntax;
+import com.technophobia.substeps.parser.ParseCache;
 import com.technophobia.substeps.runner.builder.ExecutionNodeTreeBuilder;
 import com.technophobia.substeps.runner.node.RootNodeRunner;
 import com.technophobia.substeps.runner.setupteardown.SetupAndTearDown;
+import com.technophobia.substeps.runner.syntax.DefaultSyntaxErrorReporter;
+import com.technophobia.substeps.runner.syntax.SubStepDefinitionParser;
 import com.technophobia.substeps.runner.syntax.SyntaxBuilder;
 
 /**
@@ -62,6 +72,30 @@ public class ExecutionNodeRunner implements SubstepsRunner {
 
     private static final String DRY_RUN_KEY = "dryRun";
 
+    private static final String PARALLEL_FEATURE_LOADING_KEY = "parallelFeatureLoading";
+
+    private static final String PARSE_CACHE_DIR_KEY = "parseCacheDir";
+
+    private static final String STREAM_OUTLINE_ROWS_KEY = "streamOutlineRows";
+
+    private static final String PARALLEL_TREE_BUILDING_KEY = "parallelTreeBuilding";
+
+    private static final String DEFER_SCENARIO_BUILDING_KEY = "deferScenarioBuilding";
+
+    private static final String STEP_USAGE_TRACKING_KEY = "stepUsageTracking";
+
+    private static final String REPORT_UNCALLED_KEY = "reportUncalled";
+
+    private static final String WRITE_EXECUTION_PLAN_KEY = "writeExecutionPlan";
+
+    private static final String PARALLEL_FEATURE_THREADS_KEY = "parallelFeatureThreads";
+
+    private static final String PARALLEL_SCENARIO_TAG_KEY = "parallelScenarioTag";
+
+    private static final String PARALLEL_SCENARIO_THREADS_KEY = "parallelScenarioThreads";
+
+    private static final String PARALLEL_SCENARIO_FEATURE_SETUP_KEY = "parallelScenarioFeatureSetupPerWorker";
+
     private static final Logger log = LoggerFactory.getLogger(ExecutionNodeRunner.class);
 
     private RootNode rootNode;
@@ -74,6 +108,22 @@ public class ExecutionNodeRunner implements SubstepsRunner {
 
     private final RootNodeRunner rootNodeRunner = new RootNodeRunner();
 
+    private TestParameters parameters;
+
+    private ExecutionNodeTreeBuilder nodeTreeBuilder;
+
+    private SubStepDefinitionParser subStepParser;
+
+    private File subStepsFile;
+
+    private String description;
+
+    private SetupAndTearDown setupAndTearDown;
+
+    private TagManager nonFatalTagmanager;
+
+    private MethodExecutor methodExecutorToUse;
+
     private List<SubstepExecutionFailure> failures;
 
     public void addNotifier(final IExecutionListener notifier) {
@@ -104,18 +154,126 @@ public class ExecutionNodeRunner implements SubstepsRunner {
             subStepsFile = new File(config.getSubStepsFileName());
         }
 
-        final Syntax syntax = SyntaxBuilder.buildSyntax(config.getStepImplementationClasses(), subStepsFile,
+        final String parseCacheDir = System.getProperty(PARSE_CACHE_DIR_KEY);
+        final ParseCache parseCache = parseCacheDir != null ? new ParseCache(new File(parseCacheDir)) : null;
+
+        if (parseCache != null) {
+            log.info("using parse cache in " + parseCache.getCacheDir().getAbsolutePath());
+        }
+
+        final Syntax syntax = SyntaxBuilder.buildSyntax(config.getStepImplementationClasses(), null,
                 config.isStrict(), config.getNonStrictKeywordPrecedence());
 
+        // only counts are needed to report uncalled implementations
+        syntax.getStepUsageTracker().setMode(
+                StepUsageTracker.Mode.forName(System.getProperty(STEP_USAGE_TRACKING_KEY)));
+
+        // hang on to the substeps parser so changed definitions can be
+        // reloaded without re-reading the rest
+        this.subStepsFile = subStepsFile;
+        this.subStepParser = new SubStepDefinitionParser(true, new DefaultSyntaxErrorReporter());
+        this.subStepParser.setParseCache(parseCache);
+
+        if (subStepsFile != null) {
+            syntax.setSubStepsMap(this.subStepParser.loadSubSteps(subStepsFile));
+        }
+
         final TestParameters parameters = new TestParameters(tagmanager, syntax, config.getFeatureFile());
 
         parameters.setFailParseErrorsImmediately(config.isFastFailParseErrors());
+
+        final String parallelLoadingProperty = System.getProperty(PARALLEL_FEATURE_LOADING_KEY);
+        parameters.setParallelLoading(parallelLoadingProperty != null && Boolean.parseBoolean(parallelLoadingProperty));
+
+        parameters.setParseCache(parseCache);
+
+        final String streamOutlineRowsProperty = System.getProperty(STREAM_OUTLINE_ROWS_KEY);
+        parameters.setStreamingOutlineRows(streamOutlineRowsProperty != null
+                && Boolean.parseBoolean(streamOutlineRowsProperty));
+
+        final String parallelTreeBuildingProperty = System.getProperty(PARALLEL_TREE_BUILDING_KEY);
+        parameters.setParallelTreeBuilding(parallelTreeBuildingProperty != null
+                && Boolean.parseBoolean(parallelTreeBuildingProperty));
+
+        final String deferScenarioBuildingProperty = System.getProperty(DEFER_SCENARIO_BUILDING_KEY);
+        parameters.setDeferredScenarioBuilding(deferScenarioBuildingProperty != null
+                && Boolean.parseBoolean(deferScenarioBuildingProperty));
+
         parameters.init();
 
-        final ExecutionNodeTreeBuilder nodeTreeBuilder = new ExecutionNodeTreeBuilder(parameters);
+        this.parameters = parameters;
+        this.nodeTreeBuilder = new ExecutionNodeTreeBuilder(parameters);
+        this.description = theConfig.getDescription();
 
         // building the tree can throw critical failures if exceptions are found
-        this.rootNode = nodeTreeBuilder.buildExecutionNodeTree(theConfig.getDescription());
+        this.rootNode = this.nodeTreeBuilder.buildExecutionNodeTree(this.description);
+
+        final String planFileName = System.getProperty(WRITE_EXECUTION_PLAN_KEY);
+        if (planFileName != null) {
+            final File planFile = new File(planFileName);
+            ExecutionPlan.write(this.rootNode, planFile);
+            log.info("execution plan written to " + planFile.getAbsolutePath());
+        }
+
+        // on by default, CI runs can turn it off to save time
+        final String reportUncalledProperty = System.getProperty(REPORT_UNCALLED_KEY);
+        if (parameters.isDeferredScenarioBuilding()) {
+            // the steps haven't been built yet, everything would be reported
+            log.debug("not reporting uncalled steps, scenario building is deferred");
+        } else if (reportUncalledProperty == null || Boolean.parseBoolean(reportUncalledProperty)) {
+            processUncalledAndUnused(syntax);
+        }
+
+        prepareToRun(config, setupAndTearDown, nonFatalTagmanager);
+
+        return this.rootNode;
+    }
+
+    /**
+     * Prepares to run a tree previously written by
+     * {@link #prepareExecutionConfig} when the writeExecutionPlan system
+     * property was set to the name of the plan file. None of the features or substeps are read and
+     * the syntax isn't built, only the initialisation classes and execution
+     * listeners of the config are used. {@link #runChanged} isn't available
+     * to a runner prepared this way.
+     * 
+     * @param theConfig
+     *            the config the plan was written with
+     * @param planFile
+     *            the plan to run
+     * @return the tree read from the plan
+     */
+    public RootNode prepareExecutionPlan(final SubstepsExecutionConfig theConfig, final File planFile) {
+
+        final ExecutionConfigWrapper config = new ExecutionConfigWrapper(theConfig);
+        config.initProperties();
+
+        final SetupAndTearDown setupAndTearDown = new SetupAndTearDown(config.getInitialisationClasses(),
+                this.methodExecutor);
+
+        setupAndTearDown.setLoggingConfigName(config.getDescription() != null ? config.getDescription()
+                : "SubStepsMojo");
+
+        final TagManager nonFatalTagmanager = config.getNonFatalTags() != null ? new TagManager(
+                config.getNonFatalTags()) : null;
+
+        this.description = theConfig.getDescription();
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = ExecutionNodeRunner.class.getClassLoader();
+        }
+        this.rootNode = ExecutionPlan.read(planFile, classLoader);
+
+        log.info("execution plan read from " + planFile.getAbsolutePath());
+
+        prepareToRun(config, setupAndTearDown, nonFatalTagmanager);
+
+        return this.rootNode;
+    }
+
+    private void prepareToRun(final ExecutionConfigWrapper config, final SetupAndTearDown setupAndTearDown,
+            final TagManager nonFatalTagmanager) {
 
         // add any listeners (including the step execution logger)
 
@@ -133,8 +291,6 @@ public class ExecutionNodeRunner implements SubstepsRunner {
             }
         }
 
-        processUncalledAndUnused(syntax);
-        
         ExecutionContext.put(Scope.SUITE, INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY,
                 this.notificationDistributor);
 
@@ -147,11 +303,45 @@ public class ExecutionNodeRunner implements SubstepsRunner {
             log.info("**** DRY RUN ONLY **");
         }
 
-        this.nodeExecutionContext = new RootNodeExecutionContext(this.notificationDistributor,
-                Lists.<SubstepExecutionFailure> newArrayList(), setupAndTearDown, nonFatalTagmanager,
-                methodExecutorToUse);
+        // each feature thread runs @BeforeAllFeatures again for itself, see
+        // RootNodeRunner.setFeatureThreads
+        final String parallelFeatureThreadsProperty = System.getProperty(PARALLEL_FEATURE_THREADS_KEY);
+        if (parallelFeatureThreadsProperty != null) {
+            final int featureThreads = Integer.parseInt(parallelFeatureThreadsProperty.trim());
+            log.info("running up to " + featureThreads + " features at once");
+            this.rootNodeRunner.setFeatureThreads(featureThreads);
+        }
+
+        // the scenarios of features with the given tag, if there is one, are
+        // run concurrently
+        final String parallelScenarioTag = System.getProperty(PARALLEL_SCENARIO_TAG_KEY);
+        if (parallelScenarioTag != null) {
+            final String parallelScenarioThreadsProperty = System.getProperty(PARALLEL_SCENARIO_THREADS_KEY);
+            final int scenarioThreads = parallelScenarioThreadsProperty != null ? Integer
+                    .parseInt(parallelScenarioThreadsProperty.trim()) : ParallelTasks.defaultThreadCount();
+            // the feature's setup is run once around the scenarios unless asked
+            final String featureSetupProperty = System.getProperty(PARALLEL_SCENARIO_FEATURE_SETUP_KEY);
+            final boolean featureSetupPerWorker = featureSetupProperty != null
+                    && Boolean.parseBoolean(featureSetupProperty);
+            log.info("running up to " + scenarioThreads + " scenarios of features tagged " + parallelScenarioTag
+                    + " at once");
+            this.rootNodeRunner.setParallelScenarios(parallelScenarioTag.trim(), scenarioThreads,
+                    featureSetupPerWorker);
+        }
 
-        return this.rootNode;
+        this.setupAndTearDown = setupAndTearDown;
+        this.nonFatalTagmanager = nonFatalTagmanager;
+        this.methodExecutorToUse = methodExecutorToUse;
+
+        this.nodeExecutionContext = newExecutionContext();
+    }
+
+    private RootNodeExecutionContext newExecutionContext() {
+
+        // safe to read while features are being run on other threads
+        return new RootNodeExecutionContext(this.notificationDistributor,
+                new CopyOnWriteArrayList<SubstepExecutionFailure>(), this.setupAndTearDown, this.nonFatalTagmanager,
+                this.methodExecutorToUse);
     }
 
     /**
@@ -177,21 +367,37 @@ public class ExecutionNodeRunner implements SubstepsRunner {
     }
 
     /**
+     * Looks up each distinct called step through the substeps pattern map,
+     * rather than trying every substep definition against every called step.
+     * 
      * @param syntax
      */
     private void checkForUncalledParentSteps(final Syntax syntax) {
-        
-        final Set<ExecutionNodeUsage> calledExecutionNodes = callerHierarchy.keySet();
-        
+
+        final PatternMap<ParentStep> subStepsMap = syntax.getSubStepsMap();
+        if (subStepsMap == null) {
+            return;
+        }
+
+        final Set<ParentStep> calledParents = Sets.newIdentityHashSet();
+        final Set<String> descriptions = new HashSet<String>();
+
+        for (final ExecutionNodeUsage u : callerHierarchy.keySet()) {
+
+            final String description = u.getDescription();
+            if (description != null && descriptions.add(description)) {
+                calledParents.addAll(subStepsMap.get(description));
+            }
+        }
+
         final StringBuilder buf = new StringBuilder();
-        
-        for (final ParentStep p : syntax.getSortedRootSubSteps()){
-            
-            // is there an executionnodeusage that is going to match ?
-            
-            final Step parent = p.getParent();
-            
-            if (thereIsNotAStepThatMatchesThisPattern(parent.getPattern(), calledExecutionNodes)){
+
+        for (final ParentStep p : syntax.getSortedRootSubSteps()) {
+
+            if (!calledParents.contains(p)) {
+
+                final Step parent = p.getParent();
+
                 buf.append("\t")
                     .append( parent.getLine())
                     .append( " @ ")
@@ -206,25 +412,6 @@ public class ExecutionNodeRunner implements SubstepsRunner {
         }
     }
 
-    private boolean thereIsNotAStepThatMatchesThisPattern(final String stepPattern, final Set<ExecutionNodeUsage> calledExecutionNodes){
-        boolean found = false;
-        
-        final Iterator<ExecutionNodeUsage> it = calledExecutionNodes.iterator();
-        
-        while (it.hasNext() && !found){
-            final ExecutionNodeUsage u = it.next();
-            
-            if (stepPattern == null || u.getDescription() == null){
-                
-                System.out.println("barrf");
-            }
-            
-            found = Pattern.matches(stepPattern, u.getDescription());
-        }
-        // NB. return true if no match found!
-        return !found;
-    }
-    
     // map of nodes to each of the parents, where this node is used
     final Map<ExecutionNodeUsage, List<ExecutionNodeUsage>> callerHierarchy = new HashMap<ExecutionNodeUsage, List<ExecutionNodeUsage>>();
     
@@ -325,6 +512,152 @@ public class ExecutionNodeRunner implements SubstepsRunner {
         return this.rootNode;
     }
 
+    /**
+     * Brings the tree up to date after some feature or substeps files have
+     * changed and executes just the features affected, that is the changed
+     * features and, if any substeps files changed, any feature that uses a
+     * definition from one of them or has a scenario that failed to parse.
+     * Must be called after {@link #prepareExecutionConfig}.
+     * 
+     * @param changedFiles
+     *            the .feature and .substeps files that have been modified,
+     *            added or removed
+     * @return a root node holding only the features that were executed
+     */
+    public RootNode runChanged(final Collection<File> changedFiles) {
+
+        if (this.nodeTreeBuilder == null) {
+            throw new IllegalStateException("runChanged requires a tree built by prepareExecutionConfig");
+        }
+
+        final List<File> changedFeatures = new ArrayList<File>();
+        final Set<String> changedSubsteps = new HashSet<String>();
+        final List<File> changedSubstepsFiles = new ArrayList<File>();
+
+        for (final File f : changedFiles) {
+            if (f.getName().endsWith(".substeps")) {
+                changedSubsteps.add(f.getAbsolutePath());
+                changedSubstepsFiles.add(f);
+            } else {
+                changedFeatures.add(f);
+            }
+        }
+
+        final Syntax syntax = this.parameters.getSyntax();
+
+        if (!changedSubstepsFiles.isEmpty() && this.subStepsFile != null) {
+            syntax.setSubStepsMap(this.subStepParser.reloadSubSteps(this.subStepsFile, changedSubstepsFiles));
+        }
+
+        // which features need rebuilding, by path
+        final Set<String> affected = new HashSet<String>();
+        for (final File f : changedFeatures) {
+            affected.add(f.getAbsolutePath());
+        }
+
+        final Map<String, FeatureFile> existingFeatureFiles = new HashMap<String, FeatureFile>();
+        for (final FeatureFile featureFile : this.parameters.getFeatureFileList()) {
+            existingFeatureFiles.put(featureFile.getSourceFile().getAbsolutePath(), featureFile);
+        }
+
+        final Map<String, FeatureNode> existingNodes = new HashMap<String, FeatureNode>();
+        for (final FeatureNode feature : this.rootNode.getChildren()) {
+            existingNodes.put(feature.getFileUri(), feature);
+
+            if (!changedSubsteps.isEmpty()
+                    && usesAnyOf(feature, existingFeatureFiles.get(feature.getFileUri()), changedSubsteps)) {
+                affected.add(feature.getFileUri());
+            }
+        }
+
+        this.parameters.reloadFeatureFiles(changedFeatures);
+
+        final List<FeatureNode> allFeatures = new ArrayList<FeatureNode>();
+        final List<FeatureNode> rebuiltFeatures = new ArrayList<FeatureNode>();
+
+        for (final FeatureFile featureFile : this.parameters.getFeatureFileList()) {
+
+            final String path = featureFile.getSourceFile().getAbsolutePath();
+
+            if (affected.contains(path)) {
+                final FeatureNode featureNode = this.nodeTreeBuilder.buildFeatureNode(featureFile);
+                if (featureNode != null) {
+                    rebuiltFeatures.add(featureNode);
+                    allFeatures.add(featureNode);
+                }
+            } else if (existingNodes.containsKey(path)) {
+                allFeatures.add(existingNodes.get(path));
+            }
+        }
+
+        log.info("re-running " + rebuiltFeatures.size() + " feature(s) affected by " + changedFiles.size()
+                + " changed file(s)");
+
+        final RootNode changedRoot = new RootNode(this.description, rebuiltFeatures);
+
+        final RootNodeExecutionContext context = newExecutionContext();
+
+        if (!rebuiltFeatures.isEmpty()) {
+            ExecutionContext.put(Scope.SUITE, INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY,
+                    this.notificationDistributor);
+
+            this.rootNodeRunner.run(changedRoot, context);
+        }
+
+        this.failures = context.getFailures();
+
+        // the full tree takes back ownership of the re-run features
+        this.rootNode = new RootNode(this.description, allFeatures);
+
+        return changedRoot;
+    }
+
+    /**
+     * @return true if the feature uses a definition from one of the substeps
+     *         files, or has a node that failed to parse and might now resolve
+     */
+    private boolean usesAnyOf(final FeatureNode feature, final FeatureFile featureFile, final Set<String> fileUris) {
+
+        if (usesAnyOf(feature, fileUris)) {
+            return true;
+        }
+
+        // deferred scenarios and streamed outlines don't hold their steps,
+        // those are resolved from the feature file instead
+        for (final ScenarioNode<?> scenario : feature.getChildren()) {
+            if (scenario instanceof DeferredScenarioNode || scenario instanceof StreamedOutlineScenarioNode) {
+                return featureFile != null && this.nodeTreeBuilder.usesAnyOf(featureFile, fileUris);
+            }
+        }
+        return false;
+    }
+
+    private static boolean usesAnyOf(final IExecutionNode node, final Set<String> fileUris) {
+
+        if (node.hasError() || fileUris.contains(node.getFileUri())) {
+            return true;
+        }
+
+        if (node instanceof BasicScenarioNode && ((BasicScenarioNode) node).getBackground() != null
+                && usesAnyOf(((BasicScenarioNode) node).getBackground(), fileUris)) {
+            return true;
+        }
+
+        if (node instanceof NodeWithChildren<?>) {
+            for (final Object child : ((NodeWithChildren<?>) node).getChildren()) {
+                if (usesAnyOf((IExecutionNode) child, fileUris)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public RootNode getRootNode() {
+
+        return this.rootNode;
+    }
+
     public List<SubstepExecutionFailure> getFailures() {
 
         return this.failures;
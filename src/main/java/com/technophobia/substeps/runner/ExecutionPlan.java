@@ -0,0 +1,532 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.Closeables;
+import com.technophobia.substeps.execution.Feature;
+import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.DeferredScenarioNode;
+import com.technophobia.substeps.execution.node.ExecutionNode;
+import com.technophobia.substeps.execution.node.FeatureNode;
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.OutlineScenarioNode;
+import com.technophobia.substeps.execution.node.OutlineScenarioRowNode;
+import com.technophobia.substeps.execution.node.RootNode;
+import com.technophobia.substeps.execution.node.ScenarioNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.execution.node.StepNode;
+import com.technophobia.substeps.execution.node.StreamedOutlineScenarioNode;
+import com.technophobia.substeps.execution.node.SubstepNode;
+import com.technophobia.substeps.model.TagSet;
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
+
+/**
+ * Writes a fully built execution tree to a file and reads it back, so that a
+ * tree can be built once and run by any number of other processes without
+ * each of them scanning for, parsing and resolving the features and
+ * substeps again.
+ * 
+ * The plan holds each node's description, tags, depth, source file and line,
+ * along with the resolved target class and method of each step
+ * implementation and its already converted arguments. The nodes themselves
+ * can't simply be serialized as the step implementation details aren't part
+ * of their serialized form. Nodes are recreated children first, in the same
+ * order as the tree builders create them.
+ * 
+ * Trees containing streamed outlines or deferred scenarios can't be written,
+ * their steps haven't been built.
+ */
+public final class ExecutionPlan {
+
+    // bump this when the layout of the plan changes
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte FEATURE = 1;
+    private static final byte BASIC_SCENARIO = 2;
+    private static final byte OUTLINE_SCENARIO = 3;
+    private static final byte SUBSTEP = 4;
+    private static final byte STEP_IMPLEMENTATION = 5;
+
+    private static final String OUTLINE_DESCRIPTION_PREFIX = "Scenario #: ";
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (final Class<?> c : new Class<?>[] { boolean.class, byte.class, char.class, short.class, int.class,
+                long.class, float.class, double.class }) {
+            PRIMITIVES.put(c.getName(), c);
+        }
+    }
+
+
+    private ExecutionPlan() {
+        // static methods only
+    }
+
+
+    /**
+     * @param rootNode
+     *            the tree to write
+     * @param planFile
+     *            the file to write, replaced if it already exists. The plan is
+     *            written to a temporary file first and renamed into place, so
+     *            a failed write leaves any previous plan as it was
+     * @throws SubstepsConfigurationException
+     *             if the tree can't be written, for example if a step's
+     *             arguments aren't serializable
+     */
+    public static void write(final RootNode rootNode, final File planFile) {
+
+        File tmp = null;
+        ObjectOutputStream out = null;
+        try {
+            tmp = File.createTempFile(planFile.getName(), ".tmp", planFile.getAbsoluteFile().getParentFile());
+            out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))));
+            out.writeInt(FORMAT_VERSION);
+            writeCommon(rootNode, out);
+            out.writeObject(rootNode.getDescription());
+
+            writeChildCount(rootNode.getChildren(), out);
+            for (final FeatureNode featureNode : rootNode.getChildren()) {
+                writeNode(featureNode, out);
+            }
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(planFile)) {
+                // some platforms won't rename over an existing file
+                planFile.delete();
+                if (!tmp.renameTo(planFile)) {
+                    throw new SubstepsConfigurationException("unable to move execution plan into place: "
+                            + planFile.getAbsolutePath());
+                }
+            }
+
+        } catch (final NotSerializableException e) {
+            throw new SubstepsConfigurationException("unable to write execution plan "
+                    + planFile.getAbsolutePath() + ", step arguments must be serializable: " + e.getMessage());
+        } catch (final IOException e) {
+            throw new SubstepsConfigurationException(e);
+        } finally {
+            Closeables.closeQuietly(out);
+            if (tmp != null && tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+
+    /**
+     * @param planFile
+     *            a plan written by {@link #write}
+     * @param classLoader
+     *            used to load the step implementation classes
+     * @return a new tree, equivalent to the one that was written
+     * @throws SubstepsConfigurationException
+     *             if the plan can't be read or refers to steps that can't be
+     *             found
+     */
+    public static RootNode read(final File planFile, final ClassLoader classLoader) {
+
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(planFile))));
+
+            final int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new SubstepsConfigurationException("execution plan " + planFile.getAbsolutePath()
+                        + " has format version " + version + ", expected " + FORMAT_VERSION);
+            }
+
+            final Reader reader = new Reader(in, classLoader);
+
+            final Common common = reader.readCommon();
+            final String description = reader.readString();
+
+            final int count = in.readInt();
+            final List<FeatureNode> features = new ArrayList<FeatureNode>(count);
+            for (int i = 0; i < count; i++) {
+                features.add((FeatureNode) reader.readNode());
+            }
+
+            return common.applyTo(new RootNode(description, features));
+
+        } catch (final IOException e) {
+            throw new SubstepsConfigurationException(e);
+        } catch (final ClassNotFoundException e) {
+            throw new SubstepsConfigurationException(e);
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+    }
+
+
+    private static void writeNode(final IExecutionNode node, final ObjectOutputStream out) throws IOException {
+
+        if (node instanceof StreamedOutlineScenarioNode || node instanceof DeferredScenarioNode) {
+            throw new SubstepsConfigurationException("unable to write an execution plan for " + node.getDescription()
+                    + ", its steps are built as it runs");
+        }
+
+        if (node instanceof FeatureNode) {
+
+            final FeatureNode featureNode = (FeatureNode) node;
+            out.writeByte(FEATURE);
+            writeCommon(featureNode, out);
+            out.writeObject(featureNode.getDescription());
+            writeTags(featureNode.getTags(), out);
+            writeChildren(featureNode.getChildren(), out);
+
+        } else if (node instanceof BasicScenarioNode) {
+
+            final BasicScenarioNode scenarioNode = (BasicScenarioNode) node;
+            out.writeByte(BASIC_SCENARIO);
+            writeCommon(scenarioNode, out);
+            out.writeObject(scenarioNode.getScenarioName());
+            writeTags(scenarioNode.getTags(), out);
+
+            final SubstepNode background = scenarioNode.getBackground();
+            out.writeBoolean(background != null);
+            if (background != null) {
+                writeNode(background, out);
+            }
+            writeChildren(scenarioNode.getSteps(), out);
+
+        } else if (node instanceof OutlineScenarioNode) {
+
+            final OutlineScenarioNode outlineNode = (OutlineScenarioNode) node;
+            out.writeByte(OUTLINE_SCENARIO);
+            writeCommon(outlineNode, out);
+            out.writeObject(outlineScenarioName(outlineNode));
+            writeTags(outlineNode.getTags(), out);
+
+            writeChildCount(outlineNode.getChildren(), out);
+            for (final OutlineScenarioRowNode rowNode : outlineNode.getChildren()) {
+                // the row index is its position in the outline
+                writeCommon(rowNode, out);
+                writeTags(rowNode.getTags(), out);
+                writeNode(rowNode.getBasicScenarioNode(), out);
+            }
+
+        } else if (node instanceof SubstepNode) {
+
+            final SubstepNode substepNode = (SubstepNode) node;
+            out.writeByte(SUBSTEP);
+            writeCommon(substepNode, out);
+            writeTags(substepNode.getTags(), out);
+            writeChildren(substepNode.getChildren(), out);
+
+        } else if (node instanceof StepImplementationNode) {
+
+            final StepImplementationNode stepNode = (StepImplementationNode) node;
+            out.writeByte(STEP_IMPLEMENTATION);
+            writeCommon(stepNode, out);
+            writeTags(stepNode.getTags(), out);
+
+            final Method method = stepNode.getTargetMethod();
+            out.writeObject(stepNode.getTargetClass().getName());
+            out.writeObject(method.getName());
+
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            out.writeInt(parameterTypes.length);
+            for (final Class<?> parameterType : parameterTypes) {
+                out.writeObject(parameterType.getName());
+            }
+            out.writeObject(stepNode.getMethodArgs());
+
+        } else {
+            throw new SubstepsConfigurationException("unable to write an execution plan containing a "
+                    + node.getClass().getName());
+        }
+    }
+
+
+    private static String outlineScenarioName(final OutlineScenarioNode outlineNode) {
+
+        // the name isn't exposed, only the description it's prefixed into
+        final String description = outlineNode.getDescription();
+        return description.startsWith(OUTLINE_DESCRIPTION_PREFIX) ? description
+                .substring(OUTLINE_DESCRIPTION_PREFIX.length()) : description;
+    }
+
+
+    private static void writeChildren(final List<? extends IExecutionNode> children, final ObjectOutputStream out)
+            throws IOException {
+
+        writeChildCount(children, out);
+        if (children != null) {
+            for (final IExecutionNode child : children) {
+                writeNode(child, out);
+            }
+        }
+    }
+
+
+    private static void writeChildCount(final List<?> children, final ObjectOutputStream out) throws IOException {
+        out.writeInt(children != null ? children.size() : 0);
+    }
+
+
+    private static void writeCommon(final ExecutionNode node, final ObjectOutputStream out) throws IOException {
+
+        // strings are written as objects so that repeated file uris and lines
+        // are only written once
+        out.writeInt(node.getDepth());
+        out.writeObject(node.getLine());
+        out.writeObject(node.getFileUri());
+        out.writeInt(node.getLineNumber());
+
+        // the original exception may not be serializable, keep what it said
+        final Throwable parseFailure = node.hasError() ? node.getResult().getThrown() : null;
+        out.writeObject(parseFailure != null ? parseFailure.toString() : null);
+    }
+
+
+    // no tags and empty tags are both read back as TagSet.EMPTY
+    private static void writeTags(final Set<String> tags, final ObjectOutputStream out) throws IOException {
+
+        out.writeInt(tags != null ? tags.size() : 0);
+        if (tags != null) {
+            for (final String tag : tags) {
+                out.writeObject(tag);
+            }
+        }
+    }
+
+    /**
+     * The details held by every node that aren't passed to its constructor.
+     */
+    private static final class Common {
+
+        private final int depth;
+        private final String line;
+        private final String fileUri;
+        private final int lineNumber;
+        private final String parseFailure;
+
+
+        Common(final int depth, final String line, final String fileUri, final int lineNumber,
+                final String parseFailure) {
+            this.depth = depth;
+            this.line = line;
+            this.fileUri = fileUri;
+            this.lineNumber = lineNumber;
+            this.parseFailure = parseFailure;
+        }
+
+
+        <T extends ExecutionNode> T applyTo(final T node) {
+
+            node.setDepth(depth);
+            node.setLine(line);
+            node.setFileUri(fileUri);
+            node.setLineNumber(lineNumber);
+
+            if (parseFailure != null) {
+                node.getResult().setFailedToParse(new SubstepsConfigurationException(parseFailure));
+            }
+            return node;
+        }
+    }
+
+    private static final class Reader {
+
+        private final ObjectInputStream in;
+        private final ClassLoader classLoader;
+
+        private final Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+        private final Map<String, Method> methods = new HashMap<String, Method>();
+
+
+        Reader(final ObjectInputStream in, final ClassLoader classLoader) {
+            this.in = in;
+            this.classLoader = classLoader;
+        }
+
+
+        IExecutionNode readNode() throws IOException, ClassNotFoundException {
+
+            final byte type = in.readByte();
+            final Common common = readCommon();
+
+            switch (type) {
+
+            case FEATURE: {
+                final String name = readString();
+                final Set<String> tags = readTags();
+
+                final int count = in.readInt();
+                final List<ScenarioNode<?>> scenarios = new ArrayList<ScenarioNode<?>>(count);
+                for (int i = 0; i < count; i++) {
+                    scenarios.add((ScenarioNode<?>) readNode());
+                }
+                return common.applyTo(new FeatureNode(new Feature(name, new File(common.fileUri).getName()),
+                        scenarios, tags));
+            }
+            case BASIC_SCENARIO: {
+                final String name = readString();
+                final Set<String> tags = readTags();
+
+                final SubstepNode background = in.readBoolean() ? (SubstepNode) readNode() : null;
+                final List<StepNode> steps = readSteps();
+
+                return common.applyTo(new BasicScenarioNode(name, background, steps, tags, common.depth));
+            }
+            case OUTLINE_SCENARIO: {
+                final String name = readString();
+                final Set<String> tags = readTags();
+
+                final int count = in.readInt();
+                final List<OutlineScenarioRowNode> rows = new ArrayList<OutlineScenarioRowNode>(count);
+                for (int i = 0; i < count; i++) {
+                    final Common rowCommon = readCommon();
+                    final Set<String> rowTags = readTags();
+                    final BasicScenarioNode scenarioNode = (BasicScenarioNode) readNode();
+
+                    rows.add(rowCommon.applyTo(new OutlineScenarioRowNode(i, scenarioNode, rowTags,
+                            rowCommon.depth)));
+                }
+                return common.applyTo(new OutlineScenarioNode(name, rows, tags, common.depth));
+            }
+            case SUBSTEP: {
+                final Set<String> tags = readTags();
+                final List<StepNode> steps = readSteps();
+
+                return common.applyTo(new SubstepNode(steps, tags, common.depth));
+            }
+            case STEP_IMPLEMENTATION: {
+                final Set<String> tags = readTags();
+
+                final Class<?> targetClass = loadClass(readString());
+                final Method targetMethod = readMethod(targetClass);
+
+                final StepImplementationNode stepNode = new StepImplementationNode(targetClass, targetMethod, tags,
+                        common.depth);
+                stepNode.setMethodArgs((Object[]) in.readObject());
+
+                return common.applyTo(stepNode);
+            }
+            default:
+                throw new SubstepsConfigurationException("unrecognised node type " + type + " in execution plan");
+            }
+        }
+
+
+        private List<StepNode> readSteps() throws IOException, ClassNotFoundException {
+
+            final int count = in.readInt();
+            final List<StepNode> steps = new ArrayList<StepNode>(count);
+            for (int i = 0; i < count; i++) {
+                steps.add((StepNode) readNode());
+            }
+            return steps;
+        }
+
+
+        private Method readMethod(final Class<?> targetClass) throws IOException, ClassNotFoundException {
+
+            final String name = readString();
+
+            final int count = in.readInt();
+            final Class<?>[] parameterTypes = new Class<?>[count];
+            final StringBuilder key = new StringBuilder(targetClass.getName()).append('.').append(name).append('(');
+            for (int i = 0; i < count; i++) {
+                final String typeName = readString();
+                parameterTypes[i] = loadClass(typeName);
+                key.append(typeName).append(',');
+            }
+            key.append(')');
+
+            Method method = methods.get(key.toString());
+            if (method == null) {
+                try {
+                    method = targetClass.getMethod(name, parameterTypes);
+                } catch (final NoSuchMethodException e) {
+                    throw new SubstepsConfigurationException("step implementation " + key
+                            + " in the execution plan no longer exists");
+                }
+                methods.put(key.toString(), method);
+            }
+            return method;
+        }
+
+
+        private Class<?> loadClass(final String name) throws ClassNotFoundException {
+
+            Class<?> c = PRIMITIVES.get(name);
+            if (c == null) {
+                c = classes.get(name);
+            }
+            if (c == null) {
+                c = Class.forName(name, false, classLoader);
+                classes.put(name, c);
+            }
+            return c;
+        }
+
+
+        Common readCommon() throws IOException, ClassNotFoundException {
+
+            final int depth = in.readInt();
+            final String line = readString();
+            final String fileUri = readString();
+            final int lineNumber = in.readInt();
+            final String parseFailure = readString();
+
+            return new Common(depth, line, fileUri, lineNumber, parseFailure);
+        }
+
+
+        private Set<String> readTags() throws IOException, ClassNotFoundException {
+
+            final int count = in.readInt();
+            if (count == 0) {
+                return TagSet.EMPTY;
+            }
+            final List<String> tags = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                tags.add(readString());
+            }
+            return TagSet.of(tags);
+        }
+
+
+        String readString() throws IOException, ClassNotFoundException {
+            return (String) in.readObject();
+        }
+    }
+}
@@ -20,25 +20,27 @@ package com.technophobia.substeps.runner;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import junit.framework.Assert;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Strings;
+import com.google.common.io.Files;
 import com.technophobia.substeps.model.Background;
+import com.technophobia.substeps.model.ExampleFile;
 import com.technophobia.substeps.model.FeatureFile;
 import com.technophobia.substeps.model.Scenario;
 import com.technophobia.substeps.model.Step;
-import com.technophobia.substeps.parser.FileContents;
+import com.technophobia.substeps.model.TagSet;
+import com.technophobia.substeps.parser.FeatureFileLexer;
+import com.technophobia.substeps.parser.FeatureFileToken;
 
 /**
  * @author ian
@@ -48,39 +50,24 @@ public class FeatureFileParser {
 
     private final Logger log = LoggerFactory.getLogger(FeatureFileParser.class);
 
-    private static Map<String, Directive> directiveMap = new HashMap<String, Directive>();
-
-    private FileContents currentFileContents = null;
-
-    private static final Pattern DIRECTIVE_PATTERN = Pattern.compile("([\\w ]*):");
+    private final FeatureFileLexer lexer = new FeatureFileLexer();
 
     public FeatureFile loadFeatureFile(final File featureFile) {
         // IM - this is a little clumsy, feature file created, passed around and
         // if invalid, discarded..
 
-        // rest our current set of lines
-        this.currentFileContents = null;
-
         final FeatureFile ff = new FeatureFile();
         ff.setSourceFile(featureFile);
 
         Assert.assertTrue("Feature file: " + featureFile.getAbsolutePath() + " does not exist!", featureFile.exists());
 
-        readFeatureFile(featureFile);
-
-        final String deCommented = stripCommentsAndBlankLines(this.currentFileContents.getLines());
+        final List<FeatureFileToken> tokens = readFeatureFile(featureFile);
 
-        chunkUpFeatureFile(deCommented, ff);
+        processTokens(tokens, ff);
 
-        if (parseFeatureDescription(ff)) {
-            // now we're in chunks, time to process each scenario..
+        if (ff.getName() != null) {
             if (ff.getScenarios() != null) {
 
-                for (final Scenario sc : ff.getScenarios()) {
-                    buildScenario(sc, featureFile);
-
-                }
-
                 cascadeTags(ff);
 
                 return ff;
@@ -98,29 +85,17 @@ public class FeatureFileParser {
     /**
      * @param featureFile
      */
-    private void readFeatureFile(final File featureFile) {
-
-        this.currentFileContents = new FileContents();
+    private List<FeatureFileToken> readFeatureFile(final File featureFile) {
 
         try {
-            this.currentFileContents.readFile(featureFile);
+            return this.lexer.tokenise(Files.toString(featureFile, Charset.forName("UTF-8")));
 
         } catch (final IOException e) {
             this.log.error("failed to load feature file: " + e.getMessage(), e);
+            return Collections.emptyList();
         }
     }
 
-    private String getFirstLinePattern(final String element) {
-
-        final StringBuilder buf = new StringBuilder();
-        final String[] lines = element.split("\n");
-        // add a wildcard to allow # comments on the end of the line and
-        // also tab / space formatting
-
-        buf.append("(").append(Pattern.quote(lines[0])).append(")");
-        return buf.toString();
-    }
-
     /**
      * @param ff
      */
@@ -129,180 +104,176 @@ public class FeatureFileParser {
 
         if (ff != null && ff.getTags() != null && !ff.getTags().isEmpty()) {
             for (final Scenario sc : ff.getScenarios()) {
-                if (sc.getTags() == null) {
-                    sc.setTags(ff.getTags());
-                } else {
-                    sc.getTags().addAll(ff.getTags());
-                }
+                sc.setTags(TagSet.union(sc.getTags(), ff.getTags()));
             }
         }
     }
 
     /**
+     * walks the tokens in order, building up the feature, it's scenarios and
+     * their steps as each directive is encountered
+     * 
+     * @param tokens
      * @param ff
      */
-    private boolean parseFeatureDescription(final FeatureFile ff) {
-        boolean valid = true;
-        final String raw = ff.getRawText();
-
-        if (Strings.isNullOrEmpty(raw)) {
-            valid = false;
-        } else {
-            final String[] lines = raw.split("\n");
-            final StringBuilder description = new StringBuilder();
-
-            for (int i = 0; i < lines.length; i++) {
-                final String line = lines[i];
-                if (i == 0) {
-                    // first line, description is everything after the :
-                    final int idx = line.indexOf(':');
-                    ff.setName(line.substring(idx + 1).trim());
-                } else {
-                    if (description.length() > 0) {
-                        description.append("\n");
-                    }
-                    description.append(line);
-                }
-            }
-        }
-        return valid;
-    }
-
-    /**
-     * @param sc
-     */
-    private void buildScenario(final Scenario sc, final File file) {
-
-        final String raw = sc.getRawText();
-
-        final String[] lines = raw.split("\n");
+    private void processTokens(final List<FeatureFileToken> tokens, final FeatureFile ff) {
 
+        Set<String> currentTags = null;
+        List<FeatureFileToken> currentBackground = null;
+        Background background = null;
+        Scenario currentScenario = null;
+        FeatureFileToken.Type currentDirective = null;
         boolean collectExamples = false;
 
-        int lastOffset = sc.getSourceStartOffset();
-
-        sc.setSourceStartLineNumber(this.currentFileContents.getSourceLineNumberForOffset(lastOffset));
+        StringBuilder rawText = null;
 
-        for (int i = 0; i < lines.length; i++) {
-            final String line = lines[i];
+        for (final FeatureFileToken token : tokens) {
 
-            // need to find the line number using an offset. move the offset as
-            // we progress through the lines, that way we can take into account
-            // duplicates
-
-            final int lineNumber = this.currentFileContents.getSourceLineNumber(line, lastOffset);
+            if (this.log.isTraceEnabled()) {
+                this.log.trace("token: " + token);
+            }
 
-            lastOffset = this.currentFileContents.getEndOfLineOffset(lineNumber);
+            switch (token.getType()) {
+                case TAGS: {
+                    setRawText(ff, currentScenario, currentDirective, rawText);
+                    rawText = null;
 
-            if (i == 0) {
-                // first line, description is everything after the :
-                final int idx = line.indexOf(':');
-                sc.setDescription(line.substring(idx + 1).trim());
-                sc.setScenarioLineNumber(lineNumber);
-            } else if (line.startsWith(Directive.EXAMPLES.val)) {
-                collectExamples = true;
-            } else {
-                if (line.startsWith("|")) {
+                    if (currentTags == null) {
+                        currentTags = new HashSet<String>();
+                    }
+                    processTags(currentTags, token.getDirectiveValue());
+                    currentDirective = token.getType();
+                    break;
+                }
+                case FEATURE: {
+                    setRawText(ff, currentScenario, currentDirective, rawText);
+                    rawText = new StringBuilder();
 
-                    if (collectExamples) {
-                        // we're now onto the examples
-                        parseExamples(lineNumber, line, sc);
-                    } else {
-                        // this is an inline table
-                        final Step last = sc.getSteps().get(sc.getSteps().size() - 1);
-                        final String[] data = line.split("\\|");
-                        last.addTableData(data);
+                    ff.setName(token.getDirectiveValue());
+                    if (currentTags != null) {
+                        ff.setTags(currentTags);
+                    }
+                    currentTags = null;
+                    currentBackground = null;
+                    background = null;
+                    currentDirective = token.getType();
+                    break;
+                }
+                case BACKGROUND: {
+                    setRawText(ff, currentScenario, currentDirective, rawText);
+                    rawText = null;
+
+                    // stash
+                    currentBackground = new ArrayList<FeatureFileToken>();
+                    currentBackground.add(token);
+                    background = null;
+                    currentDirective = token.getType();
+                    break;
+                }
+                case SCENARIO:
+                case SCENARIO_OUTLINE: {
+                    setRawText(ff, currentScenario, currentDirective, rawText);
+                    rawText = new StringBuilder();
+
+                    if (background == null && currentBackground != null) {
+                        // all of the background's lines have been seen by
+                        // now, the scenarios that follow share the one copy
+                        background = buildBackground(currentBackground, ff.getSourceFile());
                     }
 
-                } else {
-                    sc.addStep(new Step(line, file, lineNumber, this.currentFileContents
-                            .getSourceStartOffsetForLineIndex(lineNumber)));
+                    currentScenario = processScenarioDirective(ff, currentTags, background, token);
+                    currentTags = null;
+                    collectExamples = false;
+                    currentDirective = token.getType();
+                    break;
+                }
+                case EXAMPLES: {
+                    if (currentDirective == FeatureFileToken.Type.SCENARIO
+                            || currentDirective == FeatureFileToken.Type.SCENARIO_OUTLINE) {
+
+                        final ExampleFile exampleFile = exampleFileFor(ff, token.getDirectiveValue());
+                        if (exampleFile != null) {
+                            currentScenario.setExampleFile(exampleFile);
+                        } else {
+                            collectExamples = true;
+                        }
+                        break;
+                    }
+                    // otherwise this is just another line
+                    processLine(currentDirective, token, ff, currentTags, currentBackground, currentScenario,
+                            collectExamples);
+                    break;
+                }
+                default: {
+                    processLine(currentDirective, token, ff, currentTags, currentBackground, currentScenario,
+                            collectExamples);
+                    break;
                 }
             }
+
+            if (rawText != null) {
+                rawText.append(token.getText()).append("\n");
+            }
+        }
+        setRawText(ff, currentScenario, currentDirective, rawText);
+    }
+
+    private void setRawText(final FeatureFile ff, final Scenario currentScenario,
+            final FeatureFileToken.Type currentDirective, final StringBuilder rawText) {
+
+        if (rawText != null) {
+            if (currentDirective == FeatureFileToken.Type.FEATURE) {
+                ff.setRawText(rawText.toString());
+            } else if (currentScenario != null) {
+                currentScenario.setRawText(rawText.toString());
+            }
         }
     }
 
     /**
-     * @param fileContents
-     * @param ff
+     * a line that isn't a directive, what it means depends on the last
+     * directive we saw
      */
-    private void chunkUpFeatureFile(final String fileContents, final FeatureFile ff) {
-        // get the feature name / description
-        // split the feature file up
+    private void processLine(final FeatureFileToken.Type currentDirective, final FeatureFileToken token,
+            final FeatureFile ff, final Set<String> currentTags, final List<FeatureFileToken> currentBackground,
+            final Scenario currentScenario, final boolean collectExamples) {
 
-        final String topLevelFeatureElements[] = fileContents
-                .split("(?=Tags:)|(?=Feature:)|(?=Background:)|(?=Scenario:)|(?=Scenario Outline:)");
+        if (currentDirective == null) {
+            this.log.debug("ignoring line " + token.getLineNumber() + " preceding any directive: " + token.getText());
+            return;
+        }
 
-        Set<String> currentTags = null;
+        switch (currentDirective) {
+            case TAGS: {
+                processTags(currentTags, token.getText());
+                break;
+            }
+            case BACKGROUND: {
+                currentBackground.add(token);
+                break;
+            }
+            case SCENARIO:
+            case SCENARIO_OUTLINE: {
+                if (token.getType() == FeatureFileToken.Type.TABLE_ROW) {
 
-        if (topLevelFeatureElements != null) {
-            String currentBackground = null;
-
-            for (final String element : topLevelFeatureElements) {
-
-                if (!Strings.isNullOrEmpty(element)) {
-
-                    this.log.trace("topLevelElement:\n" + element);
-
-                    // grab the identifer
-
-                    final Matcher m = DIRECTIVE_PATTERN.matcher(element);
-                    if (m.lookingAt()) {
-                        final Directive directive = directiveMap.get(m.group(1));
-
-                        switch (directive) {
-                            case TAGS: {
-                                if (currentTags == null) {
-                                    currentTags = new HashSet<String>();
-                                }
-                                processTags(currentTags, element);
-                                break;
-                            }
-                            case FEATURE: {
-                                ff.setRawText(element);
-                                if (currentTags != null) {
-                                    ff.setTags(currentTags);
-                                }
-                                currentTags = null;
-                                currentBackground = null;
-                                break;
-                            }
-                            case BACKGROUND: {
-                                // stash
-                                currentBackground = element;
-                                break;
-                            }
-                            case SCENARIO:
-                            case SCENARIO_OUTLINE: {
-
-                                final String firstLinePattern = getFirstLinePattern(element);
-
-                                final Pattern finderPattern = Pattern.compile(firstLinePattern);
-
-                                final Matcher matcher = finderPattern
-                                        .matcher(this.currentFileContents.getFullContent());
-                                int start = -1;
-
-                                if (matcher.find()) {
-                                    start = matcher.start(0);
-                                    // start offsets of this elem into the
-                                    // original file
-                                }
-
-                                processScenarioDirective(ff, currentTags, currentBackground, element,
-                                        directive == Directive.SCENARIO_OUTLINE, start);
-
-                                currentTags = null;
-                                break;
-                            }
-                            default: {
-                                this.log.error("unknown directive");
-                                break;
-                            }
-                        }
+                    if (collectExamples) {
+                        // we're now onto the examples
+                        parseExamples(token.getLineNumber(), token.getText(), currentScenario);
+                    } else {
+                        // this is an inline table
+                        final Step last = currentScenario.getSteps().get(currentScenario.getSteps().size() - 1);
+                        final String[] data = token.getText().split("\\|");
+                        last.addTableData(data);
                     }
 
+                } else {
+                    currentScenario.addStep(new Step(token.getText(), ff.getSourceFile(), token.getLineNumber(), token
+                            .getOffset()));
                 }
+                break;
+            }
+            default: {
+                // feature description
             }
         }
     }
@@ -310,33 +281,45 @@ public class FeatureFileParser {
     /**
      * @param ff
      * @param currentTags
-     * @param currentBackground
-     * @param sc
-     * @param outline
+     * @param background
+     * @param token
      * @return
      */
-    private void processScenarioDirective(final FeatureFile ff, final Set<String> currentTags,
-            final String currentBackground, final String sc, final boolean outline, final int start) {
+    private Scenario processScenarioDirective(final FeatureFile ff, final Set<String> currentTags,
+            final Background background, final FeatureFileToken token) {
         final Scenario scenario = new Scenario();
 
-        scenario.setRawText(sc);
+        scenario.setDescription(token.getDirectiveValue());
+        scenario.setScenarioLineNumber(token.getLineNumber());
         scenario.setTags(currentTags);
-        scenario.setOutline(outline);
-        scenario.setSourceStartOffset(start);
+        scenario.setOutline(token.getType() == FeatureFileToken.Type.SCENARIO_OUTLINE);
+        scenario.setSourceStartOffset(token.getOffset());
+        scenario.setSourceStartLineNumber(token.getLineNumber());
 
         ff.addScenario(scenario);
 
-        if (currentBackground != null) {
+        if (background != null) {
+
+            scenario.setBackground(background);
+        }
+        return scenario;
+    }
 
-            final int backgroundLineNumberIdx = backgroundLineNumber();
+    private Background buildBackground(final List<FeatureFileToken> backgroundTokens, final File sourceFile) {
 
-            scenario.setBackground(new Background(backgroundLineNumberIdx, currentBackground, ff.getSourceFile()));
+        final StringBuilder rawText = new StringBuilder();
+        final List<Step> steps = new ArrayList<Step>();
 
+        for (int i = 0; i < backgroundTokens.size(); i++) {
+            final FeatureFileToken token = backgroundTokens.get(i);
+            rawText.append(token.getText()).append("\n");
+
+            if (i > 0) {
+                steps.add(new Step(token.getText(), sourceFile, token.getLineNumber(), token.getOffset()));
+            }
         }
-    }
 
-    private int backgroundLineNumber() {
-        return Math.max(currentFileContents.getFirstLineNumberStartingWith("Background:"), 0);
+        return new Background(backgroundTokens.get(0).getLineNumber(), rawText.toString(), steps);
     }
 
     /**
@@ -347,9 +330,7 @@ public class FeatureFileParser {
         // break up the tags - TODO - this is where we will need to evaluate any
         // boolean logic of tag expressions
 
-        final String postDirective = raw.substring(raw.indexOf(':') + 1);
-
-        final String[] split = postDirective.split("\\s");
+        final String[] split = raw.split("\\s");
         for (final String s : split) {
             final String trimmed = s.trim();
             if (trimmed.length() > 0) {
@@ -359,62 +340,25 @@ public class FeatureFileParser {
     }
 
     public static String stripComments(final String line) {
-        String trimmed = null;
-        if (line != null) {
-
-            final int idx = line.trim().indexOf("#");
-            if (idx >= 0) {
-                // is the # inside matched quotes
-
-                boolean doTrim = false;
-
-                if (idx == 0) {
-                    // first char
-                    doTrim = true;
-                }
-
-                final String[] splitByQuotes = line.split("\"[^\"]*\"|'[^']*'");
-                // this will find parts of the string not in quotes
-                for (final String split : splitByQuotes) {
-                    if (split.indexOf("#") > 0) {
-                        // hash exists not in a matching pair of quotes
-                        doTrim = true;
-                        break;
-                    }
-                }
-
-                if (doTrim) {
-                    trimmed = line.trim().substring(0, idx).trim();
-                } else {
-                    trimmed = line.trim();
-                }
-            } else {
-                trimmed = line.trim();
-            }
-        }
-        return trimmed;
+        return FeatureFileLexer.stripComments(line);
     }
 
     /**
-     * @param featureFile
-     * @return
+     * @return the external examples named by an Examples: directive, resolved
+     *         relative to the feature file, or null if the directive doesn't
+     *         name a .csv or .tsv file
      */
-    private String stripCommentsAndBlankLines(final List<String> lines) {
-
-        final StringBuilder buf = new StringBuilder();
-
-        for (final String s : lines) {
-
-            final String trimmed = stripComments(s);
+    private ExampleFile exampleFileFor(final FeatureFile ff, final String directiveValue) {
 
-            if (!Strings.isNullOrEmpty(trimmed)) {
-                // up for inclusion
-                buf.append(trimmed);
-                buf.append("\n");
-            }
+        if (directiveValue.length() == 0) {
+            return null;
         }
 
-        return buf.toString();
+        File file = new File(directiveValue);
+        if (!file.isAbsolute()) {
+            file = new File(ff.getSourceFile().getAbsoluteFile().getParentFile(), directiveValue);
+        }
+        return ExampleFile.forFile(file);
     }
 
     /**
@@ -423,7 +367,7 @@ public class FeatureFileParser {
     private void parseExamples(final int lineNumber, final String trimmed, final Scenario sc) {
         final String[] split = trimmed.split("\\|");
 
-        if (sc.getExampleParameters() == null) {
+        if (sc.getExampleRows() == null) {
             sc.addExampleKeys(split);
             sc.setExampleKeysLineNumber(lineNumber);
         } else {
@@ -432,25 +376,4 @@ public class FeatureFileParser {
 
     }
 
-    private static enum Directive {
-        // @formatter:off
-        TAGS("Tags"), FEATURE("Feature"), BACKGROUND("Background"), SCENARIO("Scenario"), SCENARIO_OUTLINE(
-                "Scenario Outline"), EXAMPLES("Examples");
-
-        // @formatter:on
-
-        Directive(final String val) {
-            this.val = val;
-        }
-
-        private final String val;
-
-    }
-
-    static {
-        for (final Directive d : Directive.values()) {
-            directiveMap.put(d.val, d);
-        }
-    }
-
 }
@@ -0,0 +1,131 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
+
+/**
+ * Runs a batch of independent tasks on a pool of worker threads, handing the
+ * results back in the order the tasks were supplied so that callers see the
+ * same ordering as they would running the tasks one after another.
+ * 
+ * @author imoore
+ * 
+ */
+public final class ParallelTasks {
+
+    private ParallelTasks() {
+        // no op
+    }
+
+    public static int defaultThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public static <T> List<T> invokeAll(final List<? extends Callable<T>> tasks) {
+        return invokeAll(tasks, defaultThreadCount());
+    }
+
+    /**
+     * @param tasks
+     * @param threads
+     *            the maximum number of worker threads to use, the tasks are
+     *            run on the calling thread if this is one or less
+     * @return the results of each task, in the same order as the tasks
+     * @throws RuntimeException
+     *             the first failure encountered, in task order, rethrown as
+     *             is if unchecked
+     */
+    public static <T> List<T> invokeAll(final List<? extends Callable<T>> tasks, final int threads) {
+
+        final List<T> results = new ArrayList<T>(tasks.size());
+
+        final int poolSize = Math.min(threads, tasks.size());
+
+        if (poolSize <= 1) {
+            for (final Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize, new WorkerThreadFactory());
+        try {
+            final List<Future<T>> futures = executor.invokeAll(tasks);
+
+            for (final Future<T> future : futures) {
+                results.add(get(future));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SubstepsConfigurationException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static <T> T call(final Callable<T> task) {
+        try {
+            return task.call();
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new SubstepsConfigurationException(e);
+        }
+    }
+
+    private static <T> T get(final Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SubstepsConfigurationException(cause);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix = "substeps-" + POOL_NUMBER.getAndIncrement() + "-worker-";
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, this.namePrefix + this.threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
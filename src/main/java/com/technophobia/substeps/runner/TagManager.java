@@ -18,7 +18,6 @@
  */
 package com.technophobia.substeps.runner;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -29,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import com.technophobia.substeps.execution.AbstractExecutionNodeVisitor;
 import com.technophobia.substeps.execution.node.IExecutionNode;
 import com.technophobia.substeps.execution.node.TaggedNode;
+import com.technophobia.substeps.model.TagSet;
 
 /**
  * 
@@ -46,6 +46,10 @@ public class TagManager extends AbstractExecutionNodeVisitor<Boolean> {
     private Set<String> acceptedTags = null;
     private Set<String> excludedTags = null;
 
+    // the above as bitsets, rebuilt whenever they change
+    private TagSet acceptedTagSet = TagSet.EMPTY;
+    private TagSet excludedTagSet = TagSet.EMPTY;
+
     public TagManager(final String tagList) {
 
         acceptedTags = new HashSet<String>();
@@ -62,6 +66,7 @@ public class TagManager extends AbstractExecutionNodeVisitor<Boolean> {
             parseTextValue(tagList);
         }
         insertCommandLineTags();
+        compileTags();
     }
 
     public void insertTagOverlay(final String textValue) {
@@ -74,6 +79,12 @@ public class TagManager extends AbstractExecutionNodeVisitor<Boolean> {
             excludedTags.remove(normalised);
             insertTag(s);
         }
+        compileTags();
+    }
+
+    private void compileTags() {
+        acceptedTagSet = TagSet.of(acceptedTags);
+        excludedTagSet = TagSet.of(excludedTags);
     }
 
     /**
@@ -133,34 +144,20 @@ public class TagManager extends AbstractExecutionNodeVisitor<Boolean> {
     // passed a set of tags, works out if we should run this feature or not
     public boolean acceptTaggedScenario(final Set<String> tags) {
 
-        if (acceptAll || (acceptedTags.isEmpty() && excludedTags.isEmpty())) {
+        if (acceptAll || (acceptedTagSet.isEmpty() && excludedTagSet.isEmpty())) {
             return true;
-        } else if (acceptedTags.size() > 0 && (tags == null || tags.isEmpty())) {
+        }
+        // the tags on nodes and features are already TagSets, so this is
+        // normally free
+        final TagSet tagSet = TagSet.of(tags);
+
+        if (!acceptedTagSet.isEmpty() && tagSet.isEmpty()) {
             return false;
-        } else if (containsAny(tags, excludedTags)) {
+        } else if (tagSet.intersects(excludedTagSet)) {
             return false;
         } else {
-            return tags == null || tags.containsAll(acceptedTags);
-        }
-    }
-
-    private <T> boolean containsAny(final Collection<T> col1, final Collection<T> col2) {
-        if (col1 != null && col2 != null) {
-            if (col1.size() > col2.size()) {
-                for (final T item : col1) {
-                    if (col2.contains(item)) {
-                        return true;
-                    }
-                }
-            } else {
-                for (final T item : col2) {
-                    if (col1.contains(item)) {
-                        return true;
-                    }
-                }
-            }
+            return tagSet.containsAll(acceptedTagSet);
         }
-        return false;
     }
 
     private String[] toArray(final String annotationValue) {
@@ -173,7 +170,7 @@ public class TagManager extends AbstractExecutionNodeVisitor<Boolean> {
     }
 
     public Set<String> getAcceptedTags() {
-        return acceptedTags;
+        return acceptedTagSet;
     }
 
     private String normaliseTag(final String tag) {
@@ -20,8 +20,12 @@ package com.technophobia.substeps.runner;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.junit.Assert;
 import org.slf4j.Logger;
@@ -30,7 +34,8 @@ import org.slf4j.LoggerFactory;
 import com.technophobia.substeps.model.FeatureFile;
 import com.technophobia.substeps.model.Scenario;
 import com.technophobia.substeps.model.Syntax;
-import com.technophobia.substeps.runner.syntax.FileUtils;
+import com.technophobia.substeps.parser.ParseCache;
+import com.technophobia.substeps.scanner.FileDiscovery;
 
 /**
  * @author ian
@@ -44,6 +49,11 @@ public class TestParameters {
     private final String featureFile;
     private List<FeatureFile> featureFileList = null;
     private boolean failParseErrorsImmediately = true;
+    private boolean parallelLoading = false;
+    private boolean parallelTreeBuilding = false;
+    private boolean deferredScenarioBuilding = false;
+    private ParseCache parseCache = null;
+    private boolean streamingOutlineRows = false;
 
 
     public TestParameters(final TagManager tagManager, final Syntax syntax, final String featureFile) {
@@ -59,16 +69,15 @@ public class TestParameters {
 
 
     public void init(final boolean failOnNoFeatures) {
-        final List<File> featureFiles = FileUtils.getFiles(new File(featureFile), ".feature");
+        final List<File> featureFiles = FileDiscovery.withExtension(".feature").find(new File(featureFile));
 
-        final FeatureFileParser fp2 = new FeatureFileParser();
-        for (final File f : featureFiles) {
-            final FeatureFile fFile = fp2.loadFeatureFile(f);
-            if (featureFileList == null) {
-                featureFileList = new ArrayList<FeatureFile>();
-            }
-            if (fFile != null) {
-                featureFileList.add(fFile);
+        if (!featureFiles.isEmpty()) {
+            featureFileList = new ArrayList<FeatureFile>();
+
+            for (final FeatureFile fFile : loadFeatureFiles(featureFiles)) {
+                if (fFile != null) {
+                    featureFileList.add(fFile);
+                }
             }
         }
 
@@ -86,6 +95,96 @@ public class TestParameters {
     }
 
 
+    /**
+     * Re-reads the feature files that have changed since {@link #init()},
+     * leaving the others as they are.
+     * 
+     * @param changedFiles
+     *            the feature files that have been modified, added or removed
+     * @return the reloaded feature files, not including any that have been
+     *         removed or discarded
+     */
+    public List<FeatureFile> reloadFeatureFiles(final Collection<File> changedFiles) {
+
+        final Set<File> changed = new HashSet<File>();
+        for (final File f : changedFiles) {
+            changed.add(f.getAbsoluteFile());
+        }
+
+        final List<FeatureFile> retained = new ArrayList<FeatureFile>();
+        for (final FeatureFile fFile : featureFileList) {
+            if (!changed.contains(fFile.getSourceFile().getAbsoluteFile())) {
+                retained.add(fFile);
+            }
+        }
+
+        final List<File> existing = new ArrayList<File>();
+        for (final File f : changedFiles) {
+            if (f.exists()) {
+                existing.add(f);
+            }
+        }
+
+        final List<FeatureFile> reloaded = new ArrayList<FeatureFile>();
+        for (final FeatureFile fFile : loadFeatureFiles(existing)) {
+            if (fFile != null) {
+                reloaded.add(fFile);
+            }
+        }
+
+        retained.addAll(reloaded);
+        Collections.sort(retained, new FeatureFileComparator());
+        featureFileList = retained;
+
+        return reloaded;
+    }
+
+
+    /**
+     * @param featureFiles
+     * @return the parsed feature files, in the same order as the files they
+     *         came from, null where a file was discarded
+     */
+    private List<FeatureFile> loadFeatureFiles(final List<File> featureFiles) {
+
+        // the parser holds no state between files so can be shared
+        final FeatureFileParser parser = new FeatureFileParser();
+
+        final List<Callable<FeatureFile>> tasks = new ArrayList<Callable<FeatureFile>>(featureFiles.size());
+        for (final File f : featureFiles) {
+            tasks.add(new Callable<FeatureFile>() {
+                public FeatureFile call() {
+                    return loadFeatureFile(parser, f);
+                }
+            });
+        }
+
+        final int threads = parallelLoading ? ParallelTasks.defaultThreadCount() : 1;
+        log.debug("loading " + featureFiles.size() + " feature files using " + threads + " thread(s)");
+
+        return ParallelTasks.invokeAll(tasks, threads);
+    }
+
+
+    private FeatureFile loadFeatureFile(final FeatureFileParser parser, final File f) {
+
+        final String contentHash = parseCache != null ? parseCache.contentHashOf(f) : null;
+        if (contentHash == null) {
+            return parser.loadFeatureFile(f);
+        }
+
+        FeatureFile featureFile = parseCache.get(f, contentHash, FeatureFile.class);
+
+        if (featureFile == null) {
+            featureFile = parser.loadFeatureFile(f);
+            if (featureFile != null) {
+                parseCache.put(f, contentHash, featureFile);
+            }
+        }
+        return featureFile;
+    }
+
+
     /**
      * @return
      */
@@ -138,4 +237,79 @@ public class TestParameters {
     public void setFailParseErrorsImmediately(final boolean failParseErrorsImmediately) {
         this.failParseErrorsImmediately = failParseErrorsImmediately;
     }
+
+
+    public boolean isParallelLoading() {
+        return parallelLoading;
+    }
+
+
+    /**
+     * @param parallelLoading
+     *            parse the feature files concurrently, one thread per core
+     */
+    public void setParallelLoading(final boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
+
+
+    public boolean isParallelTreeBuilding() {
+        return parallelTreeBuilding;
+    }
+
+
+    /**
+     * @param parallelTreeBuilding
+     *            resolve the steps of the features concurrently, one thread
+     *            per core, when building the execution tree
+     */
+    public void setParallelTreeBuilding(final boolean parallelTreeBuilding) {
+        this.parallelTreeBuilding = parallelTreeBuilding;
+    }
+
+
+    public boolean isDeferredScenarioBuilding() {
+        return deferredScenarioBuilding;
+    }
+
+
+    /**
+     * @param deferredScenarioBuilding
+     *            only build the skeletons of the scenarios up front, each
+     *            scenario's steps are built just before it runs
+     */
+    public void setDeferredScenarioBuilding(final boolean deferredScenarioBuilding) {
+        this.deferredScenarioBuilding = deferredScenarioBuilding;
+    }
+
+
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
+
+    /**
+     * @param parseCache
+     *            where to keep parsed feature files between runs, null to
+     *            always parse the files
+     */
+    public void setParseCache(final ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+
+    public boolean isStreamingOutlineRows() {
+        return streamingOutlineRows;
+    }
+
+
+    /**
+     * @param streamingOutlineRows
+     *            build the rows of outlines with inline examples as they are
+     *            run rather than up front, outlines with external examples
+     *            are always streamed
+     */
+    public void setStreamingOutlineRows(final boolean streamingOutlineRows) {
+        this.streamingOutlineRows = streamingOutlineRows;
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.substeps.execution.node.RootNode;
+import com.technophobia.substeps.scanner.FileChangeMonitor;
+import com.technophobia.substeps.scanner.FileDiscovery;
+
+/**
+ * A long running mode for the edit-test loop: the suite is prepared and run
+ * once, then the feature and substeps files are polled for changes and, as
+ * they change, only the features affected are re-parsed, rebuilt and
+ * executed again. Runs until {@link #stop()} is called or the thread is
+ * interrupted.
+ * 
+ * @author imoore
+ * 
+ */
+public class WatchMode implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(WatchMode.class);
+
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+
+    private final ExecutionNodeRunner runner;
+    private final SubstepsExecutionConfig config;
+    private final long pollIntervalMillis;
+
+    private volatile boolean stopped = false;
+
+
+    public WatchMode(final ExecutionNodeRunner runner, final SubstepsExecutionConfig config) {
+        this(runner, config, DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+
+    public WatchMode(final ExecutionNodeRunner runner, final SubstepsExecutionConfig config,
+            final long pollIntervalMillis) {
+        this.runner = runner;
+        this.config = config;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+
+    public void run() {
+
+        // snapshot the files first, so that edits made while the suite is
+        // first prepared and run are picked up straight afterwards
+        final List<FileChangeMonitor> monitors = new ArrayList<FileChangeMonitor>();
+        monitors.add(new FileChangeMonitor(new File(this.config.getFeatureFile()), FileDiscovery
+                .withExtension(".feature")));
+
+        if (this.config.getSubStepsFileName() != null) {
+            monitors.add(new FileChangeMonitor(new File(this.config.getSubStepsFileName()), FileDiscovery
+                    .withExtension(".substeps")));
+        }
+
+        this.runner.prepareExecutionConfig(this.config);
+        report(this.runner.run());
+
+        log.info("watching for changes to feature and substeps files");
+
+        while (!this.stopped && !Thread.currentThread().isInterrupted()) {
+
+            try {
+                Thread.sleep(this.pollIntervalMillis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            final List<File> changed = new ArrayList<File>();
+            for (final FileChangeMonitor monitor : monitors) {
+                changed.addAll(monitor.changedFiles());
+            }
+
+            if (!changed.isEmpty()) {
+                log.info("changed: " + changed);
+                try {
+                    report(this.runner.runChanged(changed));
+                } catch (final RuntimeException e) {
+                    // most likely a parse or configuration error in the
+                    // change, keep watching for the fix
+                    log.error("unable to re-run changed features: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+
+    public void stop() {
+        this.stopped = true;
+    }
+
+
+    private void report(final RootNode rootNode) {
+        final List<SubstepExecutionFailure> failures = this.runner.getFailures();
+        log.info("ran " + rootNode.getChildren().size() + " feature(s), "
+                + (failures != null ? failures.size() : 0) + " failure(s)");
+    }
+}
@@ -18,12 +18,16 @@
  */
 package com.technophobia.substeps.runner.builder;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import com.google.common.collect.Lists;
 import com.technophobia.substeps.execution.node.FeatureNode;
 import com.technophobia.substeps.execution.node.RootNode;
 import com.technophobia.substeps.model.FeatureFile;
+import com.technophobia.substeps.runner.ParallelTasks;
 import com.technophobia.substeps.runner.TestParameters;
 
 /**
@@ -42,18 +46,70 @@ public class ExecutionNodeTreeBuilder {
 
     public RootNode buildExecutionNodeTree(String description) {
 
-        List<FeatureNode> features = Lists.newArrayListWithExpectedSize(parameters.getFeatureFileList().size());
+        final List<FeatureFile> featureFiles = parameters.getFeatureFileList();
 
-        for (final FeatureFile featureFile : parameters.getFeatureFileList()) {
+        List<FeatureNode> features = Lists.newArrayListWithExpectedSize(featureFiles.size());
 
-            FeatureNode featureNode = featureNodeBuilder.build(featureFile);
-            if (featureNode != null) {
+        // deferred scenarios have nothing worth doing in parallel
+        if (parameters.isParallelTreeBuilding() && !parameters.isDeferredScenarioBuilding()) {
 
-                features.add(featureNode);
+            // resolving the steps is where the time goes, the nodes are
+            // created afterwards in feature order so they're numbered as they
+            // would be building sequentially
+            final List<Callable<FeatureNodeBuilder.FeaturePlan>> tasks =
+                    new ArrayList<Callable<FeatureNodeBuilder.FeaturePlan>>(featureFiles.size());
+
+            for (final FeatureFile featureFile : featureFiles) {
+                tasks.add(new Callable<FeatureNodeBuilder.FeaturePlan>() {
+                    public FeatureNodeBuilder.FeaturePlan call() {
+                        return featureNodeBuilder.plan(featureFile);
+                    }
+                });
+            }
+
+            for (final FeatureNodeBuilder.FeaturePlan plan : ParallelTasks.invokeAll(tasks)) {
+                if (plan != null) {
+                    features.add(featureNodeBuilder.create(plan));
+                }
+            }
+        } else {
+
+            for (final FeatureFile featureFile : featureFiles) {
+
+                FeatureNode featureNode = buildFeatureNode(featureFile);
+                if (featureNode != null) {
+
+                    features.add(featureNode);
+                }
             }
         }
 
         return new RootNode(description, features);
     }
 
+    /**
+     * @param featureFile
+     * @return the subtree for a single feature, or null if none of it is
+     *         runnable
+     */
+    public FeatureNode buildFeatureNode(FeatureFile featureFile) {
+
+        return featureNodeBuilder.build(featureFile);
+    }
+
+    /**
+     * Resolves the steps of a feature against the current syntax, for
+     * features whose steps aren't all held in the tree.
+     * 
+     * @param featureFile
+     * @param substepsFileUris
+     *            the absolute paths of some substeps files
+     * @return true if the feature uses a substep definition from one of the
+     *         files, or has a scenario that can't be resolved
+     */
+    public boolean usesAnyOf(FeatureFile featureFile, Set<String> substepsFileUris) {
+
+        return featureNodeBuilder.usesAnyOf(featureFile, substepsFileUris);
+    }
+
 }
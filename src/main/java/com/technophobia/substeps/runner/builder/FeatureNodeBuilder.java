@@ -18,7 +18,7 @@
  */
 package com.technophobia.substeps.runner.builder;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -31,6 +31,7 @@ import com.technophobia.substeps.execution.node.FeatureNode;
 import com.technophobia.substeps.execution.node.ScenarioNode;
 import com.technophobia.substeps.model.FeatureFile;
 import com.technophobia.substeps.model.Scenario;
+import com.technophobia.substeps.model.TagSet;
 import com.technophobia.substeps.runner.TestParameters;
 
 public class FeatureNodeBuilder {
@@ -50,28 +51,33 @@ public class FeatureNodeBuilder {
 
     public FeatureNode build(final FeatureFile featureFile) {
 
-        if (parameters.isRunnable(featureFile)) {
+        if (parameters.isDeferredScenarioBuilding()) {
 
-            return buildRunnableFeatureNode(featureFile);
+            return buildDeferred(featureFile);
+        }
+
+        final FeaturePlan plan = plan(featureFile);
+
+        return plan != null ? create(plan) : null;
+    }
+
+    private FeatureNode buildDeferred(final FeatureFile featureFile) {
+
+        if (!parameters.isRunnable(featureFile)) {
 
-        } else {
             log.debug("feature not runnable: " + featureFile.toString());
             return null;
         }
 
-    }
-
-    private FeatureNode buildRunnableFeatureNode(FeatureFile featureFile) {
+        final Set<String> tags = TagSet.of(featureFile.getTags());
 
         List<ScenarioNode<?>> scenarioNodes = Lists.newArrayListWithExpectedSize(featureFile.getScenarios().size());
 
-        Set<String> tags = featureFile.getTags() != null ? featureFile.getTags() : Collections.<String> emptySet();
-
         for (final Scenario scenario : featureFile.getScenarios()) {
 
             if (scenario != null) {
 
-                ScenarioNode<?> scenarioNode = scenarioNodeBuilder.build(scenario, tags, _2);
+                ScenarioNode<?> scenarioNode = scenarioNodeBuilder.buildDeferred(scenario, tags, _2);
                 if (scenarioNode != null) {
 
                     scenarioNodes.add(scenarioNode);
@@ -79,6 +85,77 @@ public class FeatureNodeBuilder {
             }
         }
 
+        return newFeatureNode(featureFile, scenarioNodes, tags);
+    }
+
+    /**
+     * @return true if any runnable scenario of the feature uses a substep
+     *         definition from one of the files, or can't be resolved
+     * @see ScenarioNodeBuilder#usesAnyOf(Scenario, Set)
+     */
+    boolean usesAnyOf(final FeatureFile featureFile, final Set<String> substepsFileUris) {
+
+        for (final Scenario scenario : featureFile.getScenarios()) {
+
+            if (scenario != null && parameters.isRunnable(scenario)
+                    && scenarioNodeBuilder.usesAnyOf(scenario, substepsFileUris)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out what the steps of a feature resolve to without creating any
+     * nodes, so can be called for several features at once.
+     * 
+     * @return the plan, or null if the feature isn't runnable
+     */
+    FeaturePlan plan(final FeatureFile featureFile) {
+
+        if (!parameters.isRunnable(featureFile)) {
+
+            log.debug("feature not runnable: " + featureFile.toString());
+            return null;
+        }
+
+        final FeaturePlan plan = new FeaturePlan(featureFile, TagSet.of(featureFile.getTags()));
+
+        for (final Scenario scenario : featureFile.getScenarios()) {
+
+            if (scenario != null) {
+
+                ScenarioNodeBuilder.ScenarioPlan scenarioPlan = scenarioNodeBuilder.plan(scenario, plan.tags, _2);
+                if (scenarioPlan != null) {
+
+                    plan.scenarios.add(scenarioPlan);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Creates the nodes for a feature that has been planned, in the same order
+     * as they'd have been built directly.
+     */
+    FeatureNode create(final FeaturePlan plan) {
+
+        final FeatureFile featureFile = plan.featureFile;
+
+        List<ScenarioNode<?>> scenarioNodes = Lists.newArrayListWithExpectedSize(plan.scenarios.size());
+
+        for (final ScenarioNodeBuilder.ScenarioPlan scenarioPlan : plan.scenarios) {
+
+            scenarioNodes.add(scenarioNodeBuilder.create(scenarioPlan));
+        }
+
+        return newFeatureNode(featureFile, scenarioNodes, plan.tags);
+    }
+
+    private static FeatureNode newFeatureNode(final FeatureFile featureFile, final List<ScenarioNode<?>> scenarioNodes,
+            final Set<String> tags) {
+
         final Feature feature = new Feature(featureFile.getName(), featureFile.getSourceFile().getName());
 
         final FeatureNode featureNode = new FeatureNode(feature, scenarioNodes, tags);
@@ -89,4 +166,17 @@ public class FeatureNodeBuilder {
         return featureNode;
     }
 
+    static final class FeaturePlan {
+
+        private final FeatureFile featureFile;
+        private final Set<String> tags;
+        private final List<ScenarioNodeBuilder.ScenarioPlan> scenarios =
+                new ArrayList<ScenarioNodeBuilder.ScenarioPlan>();
+
+        FeaturePlan(final FeatureFile featureFile, final Set<String> tags) {
+            this.featureFile = featureFile;
+            this.tags = tags;
+        }
+    }
+
 }
@@ -18,24 +18,31 @@
  */
 package com.technophobia.substeps.runner.builder;
 
+import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
 import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.DeferredScenarioNode;
 import com.technophobia.substeps.execution.node.OutlineScenarioNode;
 import com.technophobia.substeps.execution.node.OutlineScenarioRowNode;
 import com.technophobia.substeps.execution.node.ScenarioNode;
 import com.technophobia.substeps.execution.node.StepNode;
+import com.technophobia.substeps.execution.node.StreamedOutlineScenarioNode;
 import com.technophobia.substeps.execution.node.SubstepNode;
 import com.technophobia.substeps.model.ExampleParameter;
 import com.technophobia.substeps.model.Scenario;
 import com.technophobia.substeps.model.Step;
+import com.technophobia.substeps.model.TagSet;
 import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
 import com.technophobia.substeps.runner.TestParameters;
 
@@ -52,32 +59,177 @@ public class ScenarioNodeBuilder {
         this.substepNodeBuilder = new SubstepNodeBuilder(parameters);
     }
 
-    // TODO - to turn off - @SuppressWarnings("PMD.AvoidCatchingThrowable")
     public ScenarioNode<?> build(final Scenario scenario, final Set<String> inheritedTags, int depth) {
 
-        if (parameters.isRunnable(scenario)) {
+        final ScenarioPlan plan = plan(scenario, inheritedTags, depth);
+
+        return plan != null ? create(plan) : null;
+    }
+
+    /**
+     * Builds a scenario without its steps, they're built when the scenario is
+     * run. Outlines are streamed, see {@link StreamedOutlineScenarioNode}.
+     * 
+     * @return the skeleton, or null if the scenario isn't runnable
+     */
+    public ScenarioNode<?> buildDeferred(final Scenario scenario, final Set<String> inheritedTags, final int depth) {
+
+        if (!parameters.isRunnable(scenario)) {
+
+            log.debug("scenario not runnable: " + scenario.toString());
+            return null;
+        }
+
+        if (parameters.isFailParseErrorsImmediately()) {
+
+            // the nodes aren't built until the scenario runs, too late to
+            // fail fast, so resolve the steps now and build the nodes only if
+            // that fails, which throws
+            final ScenarioPlan plan = planRunnableScenario(scenario, inheritedTags, depth);
+            if (plan.failed()) {
+                create(plan);
+            }
+        }
+
+        final Set<String> allTags = TagSet.union(inheritedTags, scenario.getTags());
+
+        if (scenario.isOutline()) {
 
-            return buildRunnableScenarioNode(scenario, inheritedTags, depth);
+            return newStreamedOutlineScenarioNode(scenario, allTags, depth);
+        }
+
+        return new DeferredScenarioNode(scenario.getDescription(), new Callable<BasicScenarioNode>() {
+
+            public BasicScenarioNode call() {
+                return (BasicScenarioNode) create(planRunnableScenario(scenario, inheritedTags, depth));
+            }
+        }, allTags, depth);
+    }
+
+    /**
+     * Works out what the steps of a scenario resolve to without creating any
+     * nodes, see {@link SubstepNodeBuilder}.
+     * 
+     * @return the plan, or null if the scenario isn't runnable
+     */
+    // TODO - to turn off - @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    ScenarioPlan plan(final Scenario scenario, final Set<String> inheritedTags, int depth) {
 
-        } else {
+        if (!parameters.isRunnable(scenario)) {
 
             log.debug("scenario not runnable: " + scenario.toString());
             return null;
         }
+
+        return planRunnableScenario(scenario, inheritedTags, depth);
+    }
+
+    private ScenarioPlan planRunnableScenario(final Scenario scenario, final Set<String> inheritedTags, int depth) {
+
+        final ScenarioPlan plan = new ScenarioPlan(scenario, inheritedTags, depth);
+
+        try {
+            if (scenario.isOutline()) {
+
+                final Set<String> allTags = TagSet.union(inheritedTags, scenario.getTags());
+
+                plan.streamed = scenario.hasExternalExamples() || parameters.isStreamingOutlineRows();
+
+                if (plan.streamed) {
+
+                    // plan the first row now so that problems common to every
+                    // row are found while the tree is built, as they are for
+                    // other scenarios
+                    final Iterator<ExampleParameter> firstRow = scenario.getExampleRows().iterator();
+                    try {
+                        if (firstRow.hasNext()) {
+                            plan.rows.add(planBasicScenario(scenario, firstRow.next(), allTags));
+                        }
+                    } finally {
+                        if (firstRow instanceof Closeable) {
+                            Closeables.closeQuietly((Closeable) firstRow);
+                        }
+                    }
+                } else {
+                    for (final ExampleParameter outlineParameters : scenario.getExampleRows()) {
+
+                        final BasicScenarioPlan row = planBasicScenario(scenario, outlineParameters, allTags);
+                        plan.rows.add(row);
+
+                        if (row.failed()) {
+                            break;
+                        }
+                    }
+                }
+            } else {
+
+                plan.rows.add(planBasicScenario(scenario, null, inheritedTags));
+            }
+        } catch (final Throwable t) {
+            plan.failure = t;
+        }
+
+        return plan;
+    }
+
+    /**
+     * Resolves the steps of a scenario again without creating any nodes, for
+     * scenarios whose steps aren't held in the tree. Every row of an outline
+     * is resolved, one at a time.
+     * 
+     * @return true if the scenario uses a substep definition from one of the
+     *         files, or can't be resolved
+     */
+    // TODO - to turn off - @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    boolean usesAnyOf(final Scenario scenario, final Set<String> substepsFileUris) {
+
+        try {
+            if (!scenario.isOutline()) {
+
+                return planBasicScenario(scenario, null, null).usesAnyOf(substepsFileUris);
+            }
+
+            final Iterator<ExampleParameter> rows = scenario.getExampleRows().iterator();
+            try {
+                while (rows.hasNext()) {
+                    if (planBasicScenario(scenario, rows.next(), null).usesAnyOf(substepsFileUris)) {
+                        return true;
+                    }
+                }
+            } finally {
+                if (rows instanceof Closeable) {
+                    Closeables.closeQuietly((Closeable) rows);
+                }
+            }
+            return false;
+
+        } catch (final Throwable t) {
+
+            log.debug("unable to resolve " + scenario.getDescription(), t);
+            return true;
+        }
     }
 
-    private ScenarioNode<?> buildRunnableScenarioNode(final Scenario scenario, Set<String> inheritedTags, int depth) {
+    // TODO - to turn off - @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    ScenarioNode<?> create(final ScenarioPlan plan) {
+
+        final Scenario scenario = plan.scenario;
+        final int depth = plan.depth;
 
         ScenarioNode<?> scenarioNode = null;
 
         try {
+            if (plan.failure != null) {
+                throw plan.failure;
+            }
+
             if (scenario.isOutline()) {
 
-                scenarioNode = buildOutlineScenarioNode(scenario, inheritedTags, depth);
+                scenarioNode = createOutlineScenarioNode(plan);
 
             } else {
 
-                scenarioNode = buildBasicScenarioNode(scenario, null, inheritedTags, depth);
+                scenarioNode = createBasicScenarioNode(scenario, plan.rows.get(0), plan.inheritedTags, depth);
             }
         } catch (final Throwable t) {
 
@@ -101,54 +253,205 @@ public class ScenarioNodeBuilder {
 
     public OutlineScenarioNode buildOutlineScenarioNode(final Scenario scenario, Set<String> inheritedTags, int depth) {
 
-        int idx = 0;
-        List<OutlineScenarioRowNode> outlineRowNodes = Lists.newArrayListWithExpectedSize(scenario
-                .getExampleParameters().size());
+        final ScenarioPlan plan = planRunnableScenario(scenario, inheritedTags, depth);
+        if (plan.failure != null) {
+            throw propagate(plan.failure);
+        }
+        return createOutlineScenarioNode(plan);
+    }
+
+    private OutlineScenarioNode createOutlineScenarioNode(final ScenarioPlan plan) {
 
-        Set<String> allTags = Sets.newHashSet();
-        allTags.addAll(inheritedTags);
+        final Scenario scenario = plan.scenario;
+        final int depth = plan.depth;
 
-        if (scenario.getTags() != null) {
-            allTags.addAll(scenario.getTags());
+        final Set<String> allTags = TagSet.union(plan.inheritedTags, scenario.getTags());
+
+        if (plan.streamed) {
+
+            return createStreamedOutlineScenarioNode(plan, allTags);
         }
 
-        for (final ExampleParameter outlineParameters : scenario.getExampleParameters()) {
+        int idx = 0;
+        List<OutlineScenarioRowNode> outlineRowNodes = Lists.newArrayList();
 
-            BasicScenarioNode basicSenarioNode = buildBasicScenarioNode(scenario, outlineParameters, allTags, depth + 2);
+        for (final BasicScenarioPlan row : plan.rows) {
+
+            BasicScenarioNode basicSenarioNode = createBasicScenarioNode(scenario, row, allTags, depth + 2);
             outlineRowNodes.add(new OutlineScenarioRowNode(idx++, basicSenarioNode, allTags, depth + 1));
         }
 
         return new OutlineScenarioNode(scenario.getDescription(), outlineRowNodes, allTags, depth);
     }
 
+    private OutlineScenarioNode createStreamedOutlineScenarioNode(final ScenarioPlan plan, final Set<String> allTags) {
+
+        final Scenario scenario = plan.scenario;
+        final int depth = plan.depth;
+
+        // the first row's nodes are only built to check it
+        if (!plan.rows.isEmpty()) {
+            createBasicScenarioNode(scenario, plan.rows.get(0), allTags, depth + 2);
+        }
+
+        return newStreamedOutlineScenarioNode(scenario, allTags, depth);
+    }
+
+    private OutlineScenarioNode newStreamedOutlineScenarioNode(final Scenario scenario, final Set<String> allTags,
+            final int depth) {
+
+        final Iterable<OutlineScenarioRowNode> rows = new Iterable<OutlineScenarioRowNode>() {
+
+            public Iterator<OutlineScenarioRowNode> iterator() {
+
+                final Iterator<ExampleParameter> exampleRows = scenario.getExampleRows().iterator();
+
+                return new Iterator<OutlineScenarioRowNode>() {
+
+                    private int idx = 0;
+
+                    public boolean hasNext() {
+                        return exampleRows.hasNext();
+                    }
+
+                    public OutlineScenarioRowNode next() {
+                        final ExampleParameter outlineParameters = exampleRows.next();
+                        final int rowIdx = idx++;
+
+                        BasicScenarioNode basicSenarioNode = buildBasicScenarioNode(scenario, outlineParameters,
+                                allTags, depth + 2);
+                        return new OutlineScenarioRowNode(rowIdx, basicSenarioNode, allTags, depth + 1);
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        return new StreamedOutlineScenarioNode(scenario.getDescription(), rows, allTags, depth);
+    }
+
     public BasicScenarioNode buildBasicScenarioNode(final Scenario scenario, final ExampleParameter scenarioParameters,
             Set<String> inheritedTags, int depth) {
 
-        Set<String> allTags = Sets.newHashSet();
-        allTags.addAll(inheritedTags);
+        return createBasicScenarioNode(scenario, planBasicScenario(scenario, scenarioParameters, inheritedTags),
+                inheritedTags, depth);
+    }
 
-        if (scenario.getTags() != null) {
+    private BasicScenarioPlan planBasicScenario(final Scenario scenario, final ExampleParameter scenarioParameters,
+            final Set<String> inheritedTags) {
 
-            allTags.addAll(scenario.getTags());
-        }
+        final BasicScenarioPlan plan = new BasicScenarioPlan();
 
-        SubstepNode background = scenario.hasBackground() ? substepNodeBuilder.build(scenario.getDescription(),
-                scenario.getBackground().getSteps(), parameters.getSyntax().getSubStepsMap(), null, scenarioParameters,
-                true, allTags, depth + 1) : null;
+        if (scenario.hasBackground()) {
+            plan.background = substepNodeBuilder.planSubsteps(scenario.getDescription(), scenario.getBackground()
+                    .getSteps(), parameters.getSyntax().getSubStepsMap(), null, scenarioParameters, true);
 
-        List<StepNode> steps = Lists.newArrayList();
+            if (plan.background.failed()) {
+                return plan;
+            }
+        }
 
         if (scenario.hasSteps()) {
 
             for (Step step : scenario.getSteps()) {
 
-                steps.add(substepNodeBuilder.buildStepNode(scenario.getDescription(), step, parameters.getSyntax()
-                        .getSubStepsMap(), null, scenarioParameters, false, allTags, depth + 1));
+                final SubstepNodeBuilder.StepPlan stepPlan = substepNodeBuilder.planStep(scenario.getDescription(),
+                        step, parameters.getSyntax().getSubStepsMap(), null, scenarioParameters, false);
+                plan.steps.add(stepPlan);
+
+                if (stepPlan.failed()) {
+                    break;
+                }
             }
+        }
 
+        return plan;
+    }
+
+    private BasicScenarioNode createBasicScenarioNode(final Scenario scenario, final BasicScenarioPlan plan,
+            Set<String> inheritedTags, int depth) {
+
+        final Set<String> allTags = TagSet.union(inheritedTags, scenario.getTags());
+
+        SubstepNode background = plan.background != null ? substepNodeBuilder.createSubstepNode(plan.background,
+                allTags, depth + 1) : null;
+
+        List<StepNode> steps = Lists.newArrayList();
+
+        for (final SubstepNodeBuilder.StepPlan stepPlan : plan.steps) {
+
+            steps.add(substepNodeBuilder.createStepNode(stepPlan, allTags, depth + 1));
         }
 
         return new BasicScenarioNode(scenario.getDescription(), background, steps, allTags, depth);
     }
 
+    private static RuntimeException propagate(final Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        return new SubstepsConfigurationException(t);
+    }
+
+    /**
+     * What a scenario resolved to, an outline has a plan for each row.
+     */
+    static final class ScenarioPlan {
+
+        private final Scenario scenario;
+        private final Set<String> inheritedTags;
+        private final int depth;
+
+        private boolean streamed = false;
+        private final List<BasicScenarioPlan> rows = new ArrayList<BasicScenarioPlan>();
+
+        private Throwable failure;
+
+        ScenarioPlan(final Scenario scenario, final Set<String> inheritedTags, final int depth) {
+            this.scenario = scenario;
+            this.inheritedTags = inheritedTags;
+            this.depth = depth;
+        }
+
+        boolean failed() {
+            if (this.failure != null) {
+                return true;
+            }
+            for (final BasicScenarioPlan row : this.rows) {
+                if (row.failed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class BasicScenarioPlan {
+
+        private SubstepNodeBuilder.SubstepsPlan background;
+        private final List<SubstepNodeBuilder.StepPlan> steps = new ArrayList<SubstepNodeBuilder.StepPlan>();
+
+        boolean failed() {
+            return (this.background != null && this.background.failed())
+                    || (!this.steps.isEmpty() && this.steps.get(this.steps.size() - 1).failed());
+        }
+
+        boolean usesAnyOf(final Set<String> substepsFileUris) {
+
+            if (this.background != null && SubstepNodeBuilder.usesAnyOf(this.background, substepsFileUris)) {
+                return true;
+            }
+            for (final SubstepNodeBuilder.StepPlan stepPlan : this.steps) {
+                if (SubstepNodeBuilder.usesAnyOf(stepPlan, substepsFileUris)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
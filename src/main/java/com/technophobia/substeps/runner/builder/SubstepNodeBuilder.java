@@ -18,16 +18,13 @@
  */
 package com.technophobia.substeps.runner.builder;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,22 +33,54 @@ import com.google.common.collect.Lists;
 import com.technophobia.substeps.execution.node.StepImplementationNode;
 import com.technophobia.substeps.execution.node.StepNode;
 import com.technophobia.substeps.execution.node.SubstepNode;
+import com.technophobia.substeps.model.ArgumentBindingPlan;
 import com.technophobia.substeps.model.ExampleParameter;
 import com.technophobia.substeps.model.ParentStep;
 import com.technophobia.substeps.model.PatternMap;
+import com.technophobia.substeps.model.PlaceholderTemplate;
 import com.technophobia.substeps.model.Step;
 import com.technophobia.substeps.model.StepImplementation;
-import com.technophobia.substeps.model.SubSteps.StepParameter;
-import com.technophobia.substeps.model.Util;
+import com.technophobia.substeps.model.StepUsageTracker;
+import com.technophobia.substeps.model.Syntax;
 import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
-import com.technophobia.substeps.model.parameter.Converter;
 import com.technophobia.substeps.runner.TestParameters;
 
+/**
+ * Builds the nodes for steps. This is done in two parts so that the work of
+ * resolving steps can be done for several features at once: planning works
+ * out what each step resolves to without creating any nodes or changing the
+ * shared {@link Step} and {@link ParentStep} model, creating the nodes from a
+ * plan is cheap and done in the original order so that node ids stay the
+ * same.
+ * 
+ * The plan for a substep definition or a background depends only on its steps
+ * and the parameters passed to them, so it's worked out once and shared by
+ * every step that expands to it; only the nodes, and the arguments passed to
+ * their methods, are created each time. Backgrounds expanded with the
+ * parameters of an outline row aren't shared, and only the most recently used
+ * plans are kept.
+ */
 public class SubstepNodeBuilder {
 
     private static final Logger log = LoggerFactory.getLogger(SubstepNodeBuilder.class);
     private final TestParameters parameters;
 
+    public static final int MAX_SHARED_PLANS = 1000;
+
+    // guarded by itself
+    private final Map<PlanKey, SubstepsPlan> sharedPlans = new LinkedHashMap<PlanKey, SubstepsPlan>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 2983563419735117374L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<PlanKey, SubstepsPlan> eldest) {
+            return size() > MAX_SHARED_PLANS;
+        }
+    };
+
+    // the substeps the shared plans were made with
+    private PatternMap<ParentStep> sharedPlansSubStepsMap = null;
+
     SubstepNodeBuilder(final TestParameters parameters) {
 
         this.parameters = parameters;
@@ -62,63 +91,170 @@ public class SubstepNodeBuilder {
             final ExampleParameter parametersForSteps, final boolean throwExceptionIfUnableToBuildMethodArgs,
             final Set<String> tags, final int depth) {
 
+        return createSubstepNode(
+                planSubsteps(scenarioDescription, steps, subStepsMapLocal, parent, parametersForSteps,
+                        throwExceptionIfUnableToBuildMethodArgs), tags, depth);
+    }
+
+    public StepNode buildStepNode(final String scenarioDescription, final Step step,
+            final PatternMap<ParentStep> subStepsMapLocal, final ParentStep parent,
+            final ExampleParameter parametersForSteps, final boolean throwExceptionIfUnableToBuildMethodArgs,
+            final Set<String> tags, final int depth) {
+
+        return createStepNode(
+                planStep(scenarioDescription, step, subStepsMapLocal, parent, parametersForSteps,
+                        throwExceptionIfUnableToBuildMethodArgs), tags, depth);
+    }
+
+    SubstepsPlan planSubsteps(final String scenarioDescription, final List<Step> steps,
+            final PatternMap<ParentStep> subStepsMapLocal, final ParentStep parent,
+            final ExampleParameter parametersForSteps, final boolean throwExceptionIfUnableToBuildMethodArgs) {
+
+        final SubstepsPlan plan = new SubstepsPlan();
+
         if (steps == null || steps.isEmpty()) {
 
-            throw new SubstepsConfigurationException("There are no steps for " + scenarioDescription + " or a substep");
+            plan.failure = new SubstepsConfigurationException("There are no steps for " + scenarioDescription
+                    + " or a substep");
+            return plan;
         }
 
-        final List<StepNode> substeps = Lists.newArrayList();
+        // a background with the parameters of an outline row is only used by
+        // that row
+        final boolean rowSpecific = parent == null && parametersForSteps != null
+                && !parametersForSteps.getParameters().isEmpty();
+
+        final PlanKey key = !rowSpecific && subStepsMapLocal == subStepsMapForSharedPlans() ? new PlanKey(steps,
+                parent != null, parametersForSteps, throwExceptionIfUnableToBuildMethodArgs) : null;
+
+        if (key != null) {
+            synchronized (this.sharedPlans) {
+                final SubstepsPlan shared = this.sharedPlans.get(key);
+                if (shared != null) {
+                    recordUsages(shared);
+                    return shared;
+                }
+            }
+        }
 
         for (final Step step : steps) {
 
-            substeps.add(buildStepNode(scenarioDescription, step, subStepsMapLocal, parent, parametersForSteps,
-                    throwExceptionIfUnableToBuildMethodArgs, tags, depth + 1));
+            final StepPlan stepPlan = planStep(scenarioDescription, step, subStepsMapLocal, parent,
+                    parametersForSteps, throwExceptionIfUnableToBuildMethodArgs);
+            plan.steps.add(stepPlan);
 
+            // building would have stopped here
+            if (stepPlan.failed()) {
+                break;
+            }
         }
 
-        return new SubstepNode(substeps, tags, depth);
+        // failures aren't shared as the messages can refer to the scenario
+        if (key != null && !plan.failed()) {
+            synchronized (this.sharedPlans) {
+                final SubstepsPlan existing = this.sharedPlans.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+                this.sharedPlans.put(key, plan);
+            }
+        }
+        return plan;
     }
 
-    public StepNode buildStepNode(final String scenarioDescription, final Step step,
-            final PatternMap<ParentStep> subStepsMapLocal, final ParentStep parent,
-            final ExampleParameter parametersForSteps, final boolean throwExceptionIfUnableToBuildMethodArgs,
-            final Set<String> tags, final int depth) {
+    /**
+     * Records the step implementation lookups a shared plan stands in for, as
+     * the syntax would have if the steps had been resolved again.
+     */
+    private void recordUsages(final SubstepsPlan plan) {
 
-        substituteStepParametersIntoStep(parametersForSteps, step);
+        final StepUsageTracker stepUsageTracker = this.parameters.getSyntax().getStepUsageTracker();
 
-        // is this step defined as a root of some sub steps, ie a parent?
-        ParentStep substepsParent = null;
+        for (final StepPlan stepPlan : plan.steps) {
 
-        if (subStepsMapLocal != null) {
-            substepsParent = locateSubStepsParent(subStepsMapLocal, step);
+            if (stepPlan.impl != null) {
+                stepUsageTracker.record(stepPlan.impl, stepPlan.lookupLine, stepPlan.step.getSource(),
+                        stepPlan.step.getSourceLineNumber());
+
+            } else if (stepPlan.substeps != null) {
+                recordUsages(stepPlan.substeps);
+            }
         }
+    }
 
-        StepNode stepNode;
+    /**
+     * @return the substeps map that the shared plans can be used with, they're
+     *         discarded if the syntax has been given different substeps since
+     *         they were made
+     */
+    private synchronized PatternMap<ParentStep> subStepsMapForSharedPlans() {
 
-        if (substepsParent != null) {
+        final PatternMap<ParentStep> current = this.parameters.getSyntax().getSubStepsMap();
 
-            stepNode = buildSubstepNode(scenarioDescription, step, subStepsMapLocal,
-                    throwExceptionIfUnableToBuildMethodArgs, tags, depth, substepsParent);
-            
-            // this step was implemented by a substep as opposed to a step impl
+        if (current != this.sharedPlansSubStepsMap) {
+            synchronized (this.sharedPlans) {
+                this.sharedPlans.clear();
+            }
+            this.sharedPlansSubStepsMap = current;
+        }
+        return this.sharedPlansSubStepsMap;
+    }
 
-        } else {
+    // TODO - to turn off - @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    StepPlan planStep(final String scenarioDescription, final Step step,
+            final PatternMap<ParentStep> subStepsMapLocal, final ParentStep parent,
+            final ExampleParameter parametersForSteps, final boolean throwExceptionIfUnableToBuildMethodArgs) {
+
+        final StepPlan plan = new StepPlan(step);
 
-            stepNode = buildStepImplementationNode(parent, step, throwExceptionIfUnableToBuildMethodArgs, tags, depth);
+        try {
+            // if this is an outline, need to perform token replacement at this
+            // level before passing down the chain
+            final boolean substitute = parametersForSteps != null && !parametersForSteps.getParameters().isEmpty();
+
+            final String parameterLine = substitute ? step.getLineTemplate().substitute(
+                    parametersForSteps.getParameters()) : step.getLine();
+
+            final List<Map<String, String>> inlineTable = substitute ? substituteInlineTable(parametersForSteps,
+                    step) : step.getInlineTable();
+
+            // is this step defined as a root of some sub steps, ie a parent?
+            ParentStep substepsParent = null;
+
+            if (subStepsMapLocal != null) {
+                substepsParent = locateSubStepsParent(subStepsMapLocal, step);
+            }
+
+            if (substepsParent != null) {
+
+                // this step was implemented by a substep as opposed to a step
+                // impl
+                planSubstep(plan, scenarioDescription, parameterLine, subStepsMapLocal,
+                        throwExceptionIfUnableToBuildMethodArgs, substepsParent);
+            } else {
+
+                // the parent's parameters are the ones passed down with its
+                // steps
+                planStepImplementation(plan, parent != null ? parametersForSteps : null, parameterLine, inlineTable,
+                        throwExceptionIfUnableToBuildMethodArgs);
+            }
+        } catch (final Throwable t) {
+            plan.failure = t;
         }
 
-        return stepNode;
+        return plan;
     }
 
-    private SubstepNode buildSubstepNode(final String scenarioDescription, final Step step,
+    private void planSubstep(final StepPlan plan, final String scenarioDescription, final String parameterLine,
             final PatternMap<ParentStep> subStepsMapLocal, final boolean throwExceptionIfUnableToBuildMethodArgs,
-            final Set<String> tags, final int depth, final ParentStep substepsParent) {
-        substepsParent.initialiseParamValues(-1, step.getParameterLine());
+            final ParentStep substepsParent) {
+
+        final Step step = plan.step;
 
-        final ExampleParameter parametersForSubSteps = substepsParent.getParamValueMap();
+        final ExampleParameter parametersForSubSteps = substepsParent.paramValuesFor(-1, parameterLine);
 
         final List<StepImplementation> list = this.parameters.getSyntax().checkForStepImplementations(
-                step.getKeyword(), step.getParameterLine(), step.getSource(), step.getSourceLineNumber());
+                step.getKeyword(), parameterLine, step.getSource(), step.getSourceLineNumber());
 
         if (list != null && !list.isEmpty()) {
             final StepImplementation problem = list.get(0);
@@ -127,7 +263,7 @@ public class SubstepNodeBuilder {
             // step, ie a step that has substeps
             // fail immediately or mark as parse error
 
-            final String msg = "line: [" + step.getParameterLine() + "] in [" + step.getSource()
+            final String msg = "line: [" + parameterLine + "] in [" + step.getSource()
                     + "] matches step implementation method: [" + problem.getMethod().toString()
                     + "] AND matches a sub step definition: [" + substepsParent.getParent().getParameterLine()
                     + "] in [" + substepsParent.getSubStepFile() + "]";
@@ -136,32 +272,38 @@ public class SubstepNodeBuilder {
 
         }
 
-        final SubstepNode substepNode = build(scenarioDescription, substepsParent.getSteps(), subStepsMapLocal,
-                substepsParent, parametersForSubSteps, throwExceptionIfUnableToBuildMethodArgs, tags, depth);
-     // Change TPCLA-299
-     //  substepNode.setLine(substepsParent.getParent().getParameterLine());
-       substepNode.setLine(step.getLine());
-        substepNode.setFileUri(substepsParent.getSubStepFileUri());
-        substepNode.setLineNumber(substepsParent.getSourceLineNumber());
-        return substepNode;
+        plan.substepsParent = substepsParent;
+        plan.substeps = planSubsteps(scenarioDescription, substepsParent.getSteps(), subStepsMapLocal,
+                substepsParent, parametersForSubSteps, throwExceptionIfUnableToBuildMethodArgs);
     }
 
     private ParentStep locateSubStepsParent(final PatternMap<ParentStep> subStepsMapLocal, final Step step) {
         ParentStep substepsParent = subStepsMapLocal.get(step.getLine(), 0);
 
         // if we're not strict then we can look for other step defs that fit
-        if (!this.parameters.getSyntax().isStrict() && substepsParent == null) {
+        final Syntax syntax = this.parameters.getSyntax();
+        if (!syntax.isStrict() && substepsParent == null) {
             final String originalKeyword = step.getKeyword();
 
-            for (final String altKeyword : this.parameters.getSyntax().getNonStrictKeywordPrecedence()) {
+            // what the line matches under every other keyword, in one go
+            final Map<String, List<ParentStep>> byKeyword = subStepsMapLocal == syntax.getSubStepsMap() ? syntax
+                    .getSubStepsKeywordIndex().matchesByKeyword(originalKeyword, step.getLine()) : null;
+
+            for (final String altKeyword : syntax.getNonStrictKeywordPrecedence()) {
                 // don't use the same keyword again
                 if (altKeyword.compareToIgnoreCase(originalKeyword) != 0) {
 
-                    final String altLine = step.getLine().replaceFirst(originalKeyword, altKeyword);
-                    substepsParent = subStepsMapLocal.get(altLine, 0);
+                    if (byKeyword != null) {
+                        final List<ParentStep> matches = byKeyword.get(altKeyword);
+                        substepsParent = matches != null ? matches.get(0) : null;
+                    } else {
+                        substepsParent = subStepsMapLocal.get(
+                                step.getLine().replaceFirst(originalKeyword, altKeyword), 0);
+                    }
                     if (substepsParent != null) {
                         // do we need to modify the parent ??
 
+                        final String altLine = step.getLine().replaceFirst(originalKeyword, altKeyword);
                         substepsParent = substepsParent.cloneWithAltLine(altLine);
 
                         break;
@@ -173,75 +315,57 @@ public class SubstepNodeBuilder {
         return substepsParent;
     }
 
-    public void substituteStepParametersIntoStep(final ExampleParameter parametersForSteps, final Step step) {
-        // if this is an outline, need to perform token replacement at this
-        // level before passing down the chain
-        if (parametersForSteps != null && !parametersForSteps.getParameters().isEmpty()) {
+    private List<Map<String, String>> substituteInlineTable(final ExampleParameter parametersForSteps,
+            final Step step) {
 
-            // replace any tokens in this step
-            step.setParameterLine(substitutePlaceholders(step.getLine(), parametersForSteps.getParameters()));
+        final List<Map<String, PlaceholderTemplate>> inlineTable = step.getInlineTableTemplates();
+        if (inlineTable == null) {
+            return null;
+        }
 
-            final List<Map<String, String>> inlineTable = step.getInlineTable();
-            if (inlineTable != null) {
-                log.trace("substituting inline table values");
+        log.trace("substituting inline table values");
 
-                final List<Map<String, String>> replacedInlineTable = new ArrayList<Map<String, String>>();
+        final List<Map<String, String>> replacedInlineTable = new ArrayList<Map<String, String>>(inlineTable.size());
 
-                for (final Map<String, String> row : inlineTable) {
-                    final Map<String, String> replacedRow = new HashMap<String, String>();
-                    replacedInlineTable.add(replacedRow);
-                    final Set<Entry<String, String>> entrySet = row.entrySet();
+        for (final Map<String, PlaceholderTemplate> row : inlineTable) {
+            final Map<String, String> replacedRow = new HashMap<String, String>();
+            replacedInlineTable.add(replacedRow);
 
-                    for (final Entry<String, String> e : entrySet) {
-                        replacedRow.put(e.getKey(),
-                                substitutePlaceholders(e.getValue(), parametersForSteps.getParameters()));
-                    }
-                }
-
-                step.setSubstitutedInlineTable(replacedInlineTable);
+            for (final Entry<String, PlaceholderTemplate> e : row.entrySet()) {
+                replacedRow.put(e.getKey(), e.getValue().substitute(parametersForSteps.getParameters()));
             }
         }
+        return replacedInlineTable;
     }
 
-    public StepImplementationNode buildStepImplementationNode(final ParentStep parent, final Step step,
-            final boolean throwExceptionIfUnableToBuildMethodArgs, final Set<String> tags, final int depth) {
+    private void planStepImplementation(final StepPlan plan, final ExampleParameter parentParameters,
+            final String parameterLine, final List<Map<String, String>> inlineTable,
+            final boolean throwExceptionIfUnableToBuildMethodArgs) {
+
+        final Step step = plan.step;
 
         log.debug("looking for impl for step: " + step.toString());
 
-        if (parent != null && parent.getParamValueMap() != null) {
-            step.setParameterLine(substitutePlaceholders(step.getLine(), parent.getParamValueMap().getParameters()));
-        }
+        final String line = parentParameters != null ? step.getLineTemplate().substitute(
+                parentParameters.getParameters()) : parameterLine;
 
-        final StepImplementation execImpl = pickImplToExecute(step);
+        final StepImplementation execImpl = pickImplToExecute(step, line);
 
         if (execImpl != null) {
 
-            final StepImplementationNode stepImplementationNode = new StepImplementationNode(
-                    execImpl.getImplementedIn(), execImpl.getMethod(), tags, depth);
-
-            stepImplementationNode.setLine(step.getParameterLine());
-            stepImplementationNode.setFileUri(step.getSource().getAbsolutePath());
-            stepImplementationNode.setLineNumber(step.getSourceLineNumber());
-
-            try {
-                setMethodParameters(execImpl, step.getParameterLine(), parent, step.getSubstitutedInlineTable(),
-                        stepImplementationNode);
-
-            } catch (final Throwable e) {
+            plan.impl = execImpl;
+            plan.lookupLine = line;
+            plan.line = line;
+            plan.throwExceptionIfUnableToBuildMethodArgs = throwExceptionIfUnableToBuildMethodArgs;
 
-                if (throwExceptionIfUnableToBuildMethodArgs) {
-                    throw new RuntimeException(e);
-                } else {
-                    log.debug(e.getMessage(), e);
-                }
-            } finally {
+            if (execImpl.getBindingPlan().getParameterCount() > 0) {
 
-                // need to clear this out for the next time around
-                step.setParameterLine(null);
+                // the arguments themselves are converted for each node
+                plan.line = substitutePlaceholders(line,
+                        parentParameters != null ? parentParameters.getParameters() : null);
+                plan.inlineTable = inlineTable;
             }
 
-            return stepImplementationNode;
-
         } else {
 
             log.error("Unable to locate an implementation for the step: " + step.toDebugString());
@@ -251,14 +375,14 @@ public class SubstepNodeBuilder {
         }
     }
 
-    private StepImplementation pickImplToExecute(final Step step) {
+    private StepImplementation pickImplToExecute(final Step step, final String line) {
 
         StepImplementation impl = null;
 
         // using the specified 'phrase' look for a corresponding impl
 
         final List<StepImplementation> list = this.parameters.getSyntax().getStepImplementations(step.getKeyword(),
-                step.getParameterLine(), step.getSource(), step.getSourceLineNumber());
+                line, step.getSource(), step.getSourceLineNumber());
 
         if (list != null && list.size() > 1) {
             log.error("found too many impls for line: " + step.getLine());
@@ -278,51 +402,27 @@ public class SubstepNodeBuilder {
         return impl;
     }
 
-    private void setMethodParameters(final StepImplementation execImpl, final String stepParameter,
-            final ParentStep parent, final List<Map<String, String>> inlineTable, final StepImplementationNode stepNode)
-            throws IllegalArgumentException {
-
-        final Method stepImplementationMethod = execImpl.getMethod();
-
-        final Class<?>[] stepImplementationMethodParameterTypes = stepImplementationMethod.getParameterTypes();
+    /**
+     * Converts the arguments for a node made from the plan, each node gets its
+     * own as the step can change them.
+     */
+    private void setMethodArguments(final StepPlan plan, final StepImplementationNode node) {
 
-        final Class<? extends Converter<?>>[] parameterConverters = getParameterConverters(stepImplementationMethod);
+        final ArgumentBindingPlan bindingPlan = plan.impl.getBindingPlan();
 
-        if (stepImplementationMethodParameterTypes != null && stepImplementationMethodParameterTypes.length > 0) {
-            Map<String, String> paramValueMap = null;
-
-            if (parent != null && parent.getParamValueMap() != null) {
-                paramValueMap = parent.getParamValueMap().getParameters();
-            }
-
-            final Object[] methodParameters = getStepMethodArguments(stepParameter, paramValueMap, execImpl.getValue(),
-                    inlineTable, stepImplementationMethodParameterTypes, parameterConverters, stepNode);
-
-            if (methodParameters.length != stepImplementationMethodParameterTypes.length) {
-                throw new IllegalArgumentException(
-                        "Argument mismatch between what expected for step impl and what found in feature");
-            }
+        if (bindingPlan.getParameterCount() == 0) {
+            return;
         }
-    }
-
-    private Object[] getStepMethodArguments(final String stepParameter, final Map<String, String> parentArguments,
-            final String stepImplementationPattern, final List<Map<String, String>> inlineTable,
-            final Class<?>[] parameterTypes, final Class<? extends Converter<?>>[] converterTypes,
-            final StepImplementationNode stepNode) {
-        // does the stepParameter contain any <> which require substitution ?
-        log.debug("getStepMethodArguments for: " + stepParameter);
 
-        final String substitutedStepParam = substitutePlaceholders(stepParameter, parentArguments);
+        log.debug("setMethodArguments for: " + plan.line);
 
-        stepNode.setLine(substitutedStepParam);
-        List<Object> argsList = Util.getArgs(stepImplementationPattern, substitutedStepParam, parameterTypes,
-                converterTypes);
+        List<Object> argsList = bindingPlan.bind(plan.line);
 
-        if (inlineTable != null) {
+        if (plan.inlineTable != null) {
             if (argsList == null) {
                 argsList = new ArrayList<Object>();
             }
-            argsList.add(inlineTable);
+            argsList.add(copyInlineTable(plan.inlineTable));
         }
 
         Object[] arguments = null;
@@ -332,64 +432,222 @@ public class SubstepNodeBuilder {
             arguments = argsList.toArray(arguments);
         }
 
-        stepNode.setMethodArgs(arguments);
+        node.setMethodArgs(arguments);
 
-        return arguments;
+        if (arguments == null || arguments.length != bindingPlan.getParameterCount()) {
+            throw new IllegalArgumentException(
+                    "Argument mismatch between what expected for step impl and what found in feature");
+        }
     }
 
-    private Class<? extends Converter<?>>[] getParameterConverters(final Method method) {
+    private static List<Map<String, String>> copyInlineTable(final List<Map<String, String>> inlineTable) {
 
-        final Annotation[][] annotations = method.getParameterAnnotations();
-        final int size = annotations.length;
+        final List<Map<String, String>> copy = new ArrayList<Map<String, String>>(inlineTable.size());
+        for (final Map<String, String> row : inlineTable) {
+            copy.add(new HashMap<String, String>(row));
+        }
+        return copy;
+    }
 
-        @SuppressWarnings("unchecked")
-        final Class<? extends Converter<?>>[] result = new Class[size];
+    /**
+     * Creates the nodes for a plan, failing at the same point that building
+     * the nodes directly would have.
+     */
+    SubstepNode createSubstepNode(final SubstepsPlan plan, final Set<String> tags, final int depth) {
 
-        for (int i = 0; i < size; i++) {
-            for (final Annotation annotation : annotations[i]) {
-                if (annotation instanceof StepParameter) {
-                    result[i] = ((StepParameter) annotation).converter();
+        if (plan.failure != null) {
+            throw propagate(plan.failure);
+        }
+
+        final List<StepNode> substeps = Lists.newArrayList();
+
+        for (final StepPlan stepPlan : plan.steps) {
+
+            substeps.add(createStepNode(stepPlan, tags, depth + 1));
+        }
+
+        return new SubstepNode(substeps, tags, depth);
+    }
+
+    StepNode createStepNode(final StepPlan plan, final Set<String> tags, final int depth) {
+
+        final Step step = plan.step;
+
+        if (plan.substeps != null) {
+
+            final SubstepNode substepNode = createSubstepNode(plan.substeps, tags, depth);
+            // Change TPCLA-299
+            // substepNode.setLine(substepsParent.getParent().getParameterLine());
+            substepNode.setLine(step.getLine());
+            substepNode.setFileUri(plan.substepsParent.getSubStepFileUri());
+            substepNode.setLineNumber(plan.substepsParent.getSourceLineNumber());
+            return substepNode;
+
+        } else if (plan.impl != null) {
+
+            final StepImplementationNode stepImplementationNode = new StepImplementationNode(
+                    plan.impl.getImplementedIn(), plan.impl.getMethod(), tags, depth);
+
+            stepImplementationNode.setLine(plan.line);
+            stepImplementationNode.setFileUri(step.getSource().getAbsolutePath());
+            stepImplementationNode.setLineNumber(step.getSourceLineNumber());
+
+            if (plan.failure != null) {
+                throw propagate(plan.failure);
+            }
+
+            try {
+                setMethodArguments(plan, stepImplementationNode);
+
+            } catch (final Throwable e) {
+
+                if (plan.throwExceptionIfUnableToBuildMethodArgs) {
+                    throw new RuntimeException(e);
                 }
+                log.debug(e.getMessage(), e);
             }
+            return stepImplementationNode;
         }
 
-        return result;
+        throw propagate(plan.failure);
+    }
+
+    /**
+     * @return true if the plan failed or expands to a substep definition from
+     *         one of the files
+     */
+    static boolean usesAnyOf(final SubstepsPlan plan, final Set<String> substepsFileUris) {
+
+        if (plan.failed()) {
+            return true;
+        }
+        for (final StepPlan stepPlan : plan.steps) {
+            if (usesAnyOf(stepPlan, substepsFileUris)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean usesAnyOf(final StepPlan plan, final Set<String> substepsFileUris) {
+
+        if (plan.failed()) {
+            return true;
+        }
+        return plan.substeps != null
+                && (substepsFileUris.contains(plan.substepsParent.getSubStepFileUri()) || usesAnyOf(plan.substeps,
+                        substepsFileUris));
+    }
+
+    private static RuntimeException propagate(final Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        return new SubstepsConfigurationException(t);
     }
 
     public String substitutePlaceholders(final String stepParameter, final Map<String, String> parentArguments) {
         // is there anything to replace?
-        String rtn;
-        final String paramRegEx = ".*<([^>]*)>.*";
-        final Pattern findParamPattern = Pattern.compile(paramRegEx);
-        if (parentArguments != null && findParamPattern.matcher(stepParameter).matches()) {
-            // need to do a replacement, split on >
-            rtn = stepParameter;
-            final String paramRegEx2 = ".*<(.*)";
-            final Pattern p2 = Pattern.compile(paramRegEx2);
-
-            final String[] splits = stepParameter.split(">");
-
-            for (final String s : splits) {
-                final Matcher matcher = p2.matcher(s);
-                if (matcher.find()) {
-                    final String key = matcher.group(1);
-                    String val = parentArguments.get(key);
-                    log.debug("replacing: <" + key + "> with: " + val + " in string: " + rtn);
-
-                    if (val == null) {
-                        val = " ";
-                    }
+        if (parentArguments == null || stepParameter.indexOf('<') < 0) {
+            return stepParameter;
+        }
+        return PlaceholderTemplate.compile(stepParameter).substitute(parentArguments);
+    }
 
-                    rtn = rtn.replaceAll("<" + key + ">", Matcher.quoteReplacement(val));
+    /**
+     * Identifies the steps of a substep definition or background along with
+     * the parameters they're expanded with.
+     */
+    private static final class PlanKey {
+
+        private final List<Step> steps;
+        private final boolean hasParent;
+        private final Map<String, String> parameters;
+        private final boolean throwExceptionIfUnableToBuildMethodArgs;
+        private final int hash;
+
+        PlanKey(final List<Step> steps, final boolean hasParent, final ExampleParameter parameters,
+                final boolean throwExceptionIfUnableToBuildMethodArgs) {
+            this.steps = steps;
+            this.hasParent = hasParent;
+            this.parameters = parameters != null ? parameters.getParameters() : null;
+            this.throwExceptionIfUnableToBuildMethodArgs = throwExceptionIfUnableToBuildMethodArgs;
+
+            int h = System.identityHashCode(steps);
+            h = 31 * h + (hasParent ? 1 : 0);
+            h = 31 * h + (this.parameters != null ? this.parameters.hashCode() : 0);
+            h = 31 * h + (throwExceptionIfUnableToBuildMethodArgs ? 1 : 0);
+            this.hash = h;
+        }
 
-                }
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
             }
-        } else {
-            // nothing to replace
-            rtn = stepParameter;
+            if (!(obj instanceof PlanKey)) {
+                return false;
+            }
+            final PlanKey other = (PlanKey) obj;
+            return this.steps == other.steps
+                    && this.hasParent == other.hasParent
+                    && this.throwExceptionIfUnableToBuildMethodArgs == other.throwExceptionIfUnableToBuildMethodArgs
+                    && (this.parameters == null ? other.parameters == null : this.parameters
+                            .equals(other.parameters));
         }
+    }
 
-        return rtn;
+    /**
+     * What a list of steps resolved to, eg. the steps of a substep definition
+     * or a background.
+     */
+    static final class SubstepsPlan {
+
+        private final List<StepPlan> steps = new ArrayList<StepPlan>();
+
+        // thrown before any of the steps are built
+        private Throwable failure;
+
+        boolean failed() {
+            return this.failure != null || (!this.steps.isEmpty() && this.steps.get(this.steps.size() - 1).failed());
+        }
     }
 
+    /**
+     * What a step resolved to, either a step implementation method with its
+     * arguments or a substep definition with its own steps.
+     */
+    static final class StepPlan {
+
+        private final Step step;
+
+        private StepImplementation impl;
+        // the line the implementation was looked up with
+        private String lookupLine;
+        private String line;
+        private List<Map<String, String>> inlineTable;
+        private boolean throwExceptionIfUnableToBuildMethodArgs;
+
+        private ParentStep substepsParent;
+        private SubstepsPlan substeps;
+
+        // thrown after the node is created if the step was resolved, before
+        // if it wasn't
+        private Throwable failure;
+
+        StepPlan(final Step step) {
+            this.step = step;
+        }
+
+        boolean failed() {
+            return this.failure != null || (this.substeps != null && this.substeps.failed());
+        }
+    }
 }
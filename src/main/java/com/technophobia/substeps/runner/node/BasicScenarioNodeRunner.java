@@ -24,11 +24,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.DeferredScenarioNode;
 import com.technophobia.substeps.execution.node.RootNodeExecutionContext;
 import com.technophobia.substeps.execution.node.StepImplementationNode;
 import com.technophobia.substeps.execution.node.StepNode;
 import com.technophobia.substeps.execution.node.SubstepNode;
 import com.technophobia.substeps.model.Scope;
+import com.technophobia.substeps.runner.SubstepExecutionFailure;
 
 public class BasicScenarioNodeRunner extends AbstractNodeRunner<BasicScenarioNode, Boolean> {
 
@@ -45,6 +47,50 @@ public class BasicScenarioNodeRunner extends AbstractNodeRunner<BasicScenarioNod
         log.info("Executing scenario {}", node.getDescription());
 
         this.context = context;
+
+        if (node instanceof DeferredScenarioNode) {
+
+            return executeDeferred((DeferredScenarioNode) node, context);
+        }
+
+        return runBackgroundAndSteps(node, context);
+    }
+
+    private boolean executeDeferred(DeferredScenarioNode node, RootNodeExecutionContext context) {
+
+        final BasicScenarioNode expanded;
+        try {
+            expanded = node.expand();
+
+        } catch (final RuntimeException e) {
+
+            // fail fast parse errors are thrown rather than held in the node
+            log.debug("unable to build the steps of " + node.getDescription(), e);
+            context.addFailure(new SubstepExecutionFailure(e, node));
+            return false;
+        }
+
+        if (expanded.hasError()) {
+
+            log.debug("failed to build the steps of " + node.getDescription(), expanded.getResult().getThrown());
+            context.addFailure(new SubstepExecutionFailure(expanded.getResult().getThrown(), node));
+            return false;
+        }
+
+        // the subtree hangs off the skeleton while it runs, only the
+        // skeleton's result is kept once it has
+        if (expanded.getBackground() != null) {
+            expanded.getBackground().setParent(node);
+        }
+        for (final StepNode step : expanded.getSteps()) {
+            step.setParent(node);
+        }
+
+        return runBackgroundAndSteps(expanded, context);
+    }
+
+    private boolean runBackgroundAndSteps(BasicScenarioNode node, RootNodeExecutionContext context) {
+
         boolean success = runBackgroundIfPresent(node, context);
 
         Iterator<StepNode> stepIt = node.getSteps().iterator();
@@ -32,11 +32,58 @@ public class FeatureNodeRunner extends AbstractNodeRunner<FeatureNode, Boolean>
 
     private static final Logger log = LoggerFactory.getLogger(FeatureNodeRunner.class);
 
+    // the suite's setup is run by each worker too
+    private static final Scope[] WORKER_SCOPES = { Scope.SUITE };
+
+    private static final Scope[] WORKER_SCOPES_WITH_FEATURE = { Scope.SUITE, Scope.FEATURE };
+
     BasicScenarioNodeRunner basicScenarioNodeRunner = new BasicScenarioNodeRunner();
     OutlineScenarioNodeRunner outlineScenarioNodeRunner = new OutlineScenarioNodeRunner();
 
     private RootNodeExecutionContext context;
 
+    private String parallelTag;
+
+    private int scenarioThreads = 1;
+
+    private boolean featureSetupPerWorker = false;
+
+    /**
+     * The scenarios of features with the given tag are run at once on a pool
+     * of worker threads, each with its own step implementation instances and
+     * execution context. The feature's setup and tear down are run exactly
+     * once around the batch, on the thread running the feature, so whatever
+     * they put on the step implementation instances or in the
+     * {@link Scope#FEATURE} execution context isn't seen by the scenarios.
+     * The suite's setup and tear down are run by each worker against its own
+     * instances, as well as around the suite. Each scenario's setup and tear
+     * down is run on the thread running the scenario.
+     * 
+     * @param parallelTag
+     *            the feature tag, eg parallel, or null for none
+     * @param scenarioThreads
+     *            the number of scenarios of a feature to run at once
+     */
+    public void setParallelScenarios(String parallelTag, int scenarioThreads) {
+        setParallelScenarios(parallelTag, scenarioThreads, false);
+    }
+
+    /**
+     * As {@link #setParallelScenarios(String, int)}, optionally with the
+     * feature's setup and tear down also run by each worker, against its own
+     * instances and execution context, so that the scenarios see what it sets
+     * up. The feature is then set up once more than the number of workers.
+     * 
+     * @param featureSetupPerWorker
+     *            true to run the feature's setup and tear down on each worker
+     *            as well
+     */
+    public void setParallelScenarios(String parallelTag, int scenarioThreads, boolean featureSetupPerWorker) {
+        this.parallelTag = parallelTag;
+        this.scenarioThreads = scenarioThreads;
+        this.featureSetupPerWorker = featureSetupPerWorker;
+    }
+
     @Override
     protected boolean execute(FeatureNode node, RootNodeExecutionContext context) {
         log.info("Executing feature {}", node.getDescription());
@@ -45,6 +92,22 @@ public class FeatureNodeRunner extends AbstractNodeRunner<FeatureNode, Boolean>
 
         boolean success = addExpectedChildrenFailureIfNoChildren(node, node.getChildren(), context);
 
+        if (runsScenariosInParallel(node, context)) {
+
+            log.info("running the " + node.getChildren().size() + " scenarios of " + node.getDescription()
+                    + " on up to " + scenarioThreads + " threads");
+
+            return ParallelNodeRunner.runAll(node.getChildren(), scenarioThreads, context,
+                    featureSetupPerWorker ? WORKER_SCOPES_WITH_FEATURE : WORKER_SCOPES,
+                    new ParallelNodeRunner.WorkerFactory<ScenarioNode<?>>() {
+
+                        public ParallelNodeRunner.Worker<ScenarioNode<?>> newWorker() {
+                            return new ScenarioWorker();
+                        }
+                    })
+                    && success;
+        }
+
         for (ScenarioNode<?> scenario : node.getChildren()) {
 
             success &= scenario.dispatch(this);
@@ -53,6 +116,38 @@ public class FeatureNodeRunner extends AbstractNodeRunner<FeatureNode, Boolean>
         return success;
     }
 
+    private boolean runsScenariosInParallel(FeatureNode node, RootNodeExecutionContext context) {
+
+        if (parallelTag == null || scenarioThreads <= 1 || node.getChildren().size() <= 1 || node.getTags() == null
+                || !node.getTags().contains(parallelTag)) {
+            return false;
+        }
+
+        if (!ParallelNodeRunner.canRunInParallel(context)) {
+            log.warn("unable to run scenarios in parallel with a " + context.getMethodExecutor().getClass().getName()
+                    + ", running them one at a time");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a runner with the same settings as this one, for use by another
+     *         thread
+     */
+    ParallelNodeRunner.Worker<FeatureNode> newWorker() {
+
+        final FeatureNodeRunner runner = new FeatureNodeRunner();
+        runner.setParallelScenarios(parallelTag, scenarioThreads, featureSetupPerWorker);
+
+        return new ParallelNodeRunner.Worker<FeatureNode>() {
+
+            public boolean run(FeatureNode node, RootNodeExecutionContext workerContext) {
+                return runner.run(node, workerContext);
+            }
+        };
+    }
+
     @Override
     protected Scope getScope() {
 
@@ -71,4 +166,17 @@ public class FeatureNodeRunner extends AbstractNodeRunner<FeatureNode, Boolean>
         return basicScenarioNodeRunner.run(basicScenarioNode, context);
     }
 
+    /**
+     * Runs scenarios on one worker thread, with runners of its own.
+     */
+    private static final class ScenarioWorker implements ParallelNodeRunner.Worker<ScenarioNode<?>> {
+
+        private final FeatureNodeRunner runner = new FeatureNodeRunner();
+
+        public boolean run(ScenarioNode<?> scenario, RootNodeExecutionContext workerContext) {
+
+            runner.context = workerContext;
+            return scenario.dispatch(runner);
+        }
+    }
 }
@@ -18,18 +18,33 @@
  */
 package com.technophobia.substeps.runner.node;
 
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.technophobia.substeps.execution.node.RootNodeExecutionContext;
 import com.technophobia.substeps.execution.node.OutlineScenarioNode;
 import com.technophobia.substeps.execution.node.OutlineScenarioRowNode;
+import com.technophobia.substeps.execution.node.StreamedOutlineScenarioNode;
 import com.technophobia.substeps.model.Scope;
+import com.technophobia.substeps.runner.SubstepExecutionFailure;
 
 public class OutlineScenarioNodeRunner extends AbstractNodeRunner<OutlineScenarioNode, Void> {
 
+    private static final Logger log = LoggerFactory.getLogger(OutlineScenarioNodeRunner.class);
+
     private final OutlineScenarioRowNodeRunner outlineScenarioRowNodeRunner = new OutlineScenarioRowNodeRunner();
 
     @Override
     protected boolean execute(OutlineScenarioNode node, RootNodeExecutionContext context) {
 
+        if (node instanceof StreamedOutlineScenarioNode) {
+
+            return executeStreamed((StreamedOutlineScenarioNode) node, context);
+        }
+
         boolean success = addExpectedChildrenFailureIfNoChildren(node, node.getChildren(), context);
 
         for (OutlineScenarioRowNode outlineRow : node.getChildren()) {
@@ -40,6 +55,49 @@ public class OutlineScenarioNodeRunner extends AbstractNodeRunner<OutlineScenari
         return success;
     }
 
+    private boolean executeStreamed(StreamedOutlineScenarioNode node, RootNodeExecutionContext context) {
+
+        boolean success = true;
+        int rowCount = 0;
+
+        final Iterator<OutlineScenarioRowNode> rows = node.rowIterator();
+
+        while (true) {
+
+            final OutlineScenarioRowNode outlineRow;
+            try {
+                if (!rows.hasNext()) {
+                    break;
+                }
+                outlineRow = rows.next();
+
+            } catch (final RuntimeException e) {
+
+                // the iterator can't be relied on to have moved past a row
+                // it failed on, so the rest of the rows aren't run
+                log.debug("failed to build outline row " + rowCount + " of " + node.getDescription(), e);
+                context.addFailure(new SubstepExecutionFailure(e, node));
+                success = false;
+                rowCount++;
+                break;
+            }
+
+            outlineRow.setParent(node);
+            success &= outlineScenarioRowNodeRunner.run(outlineRow, context);
+            rowCount++;
+
+            // the row isn't referenced from the tree so is free to be
+            // collected now it has run
+        }
+
+        if (rowCount == 0) {
+            success = addExpectedChildrenFailureIfNoChildren(node,
+                    Collections.<OutlineScenarioRowNode> emptyList(), context);
+        }
+
+        return success;
+    }
+
     @Override
     protected Scope getScope() {
 
@@ -0,0 +1,258 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.substeps.execution.ImplementationCache;
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.RootNodeExecutionContext;
+import com.technophobia.substeps.model.Scope;
+import com.technophobia.substeps.runner.ExecutionContext;
+import com.technophobia.substeps.runner.IExecutionListener;
+import com.technophobia.substeps.runner.INotificationDistributor;
+import com.technophobia.substeps.runner.ParallelTasks;
+import com.technophobia.substeps.runner.SubstepExecutionFailure;
+import com.technophobia.substeps.runner.setupteardown.SetupAndTearDown;
+
+/**
+ * Runs sibling nodes on a pool of worker threads. Each worker has its own
+ * step implementation instances, setup and tear down and execution context,
+ * and each node its own context for failures, which are added to the
+ * parent's context in the order of the nodes once they have all been run.
+ * 
+ * The setup of the enclosing scopes, eg. {@link Scope#SUITE} for features, is
+ * run again by each worker against its own instances and execution context,
+ * before the first node it takes, so that whatever it sets up is there for
+ * the worker's steps, and torn down once the worker has finished.
+ * 
+ * Listeners are notified one call at a time, the notifications for a node
+ * all come from the thread running it in the usual order.
+ */
+final class ParallelNodeRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelNodeRunner.class);
+
+    interface Worker<NODE_TYPE extends IExecutionNode> {
+
+        boolean run(NODE_TYPE node, RootNodeExecutionContext workerContext);
+    }
+
+    interface WorkerFactory<NODE_TYPE extends IExecutionNode> {
+
+        /**
+         * Called on each worker thread, the worker is only used by that
+         * thread.
+         */
+        Worker<NODE_TYPE> newWorker();
+    }
+
+    private ParallelNodeRunner() {
+        // static methods only
+    }
+
+    /**
+     * @return true if the context's step implementations can be created
+     *         afresh for each worker
+     */
+    static boolean canRunInParallel(final RootNodeExecutionContext context) {
+        return context.getMethodExecutor() instanceof ImplementationCache;
+    }
+
+    /**
+     * @param workerScopes
+     *            the scopes enclosing the nodes, outermost first, whose setup
+     *            and tear down each worker runs
+     */
+    static <NODE_TYPE extends IExecutionNode> boolean runAll(final List<NODE_TYPE> nodes, final int threads,
+            final RootNodeExecutionContext context, final Scope[] workerScopes,
+            final WorkerFactory<NODE_TYPE> workerFactory) {
+
+        final int workers = Math.min(threads, nodes.size());
+
+        final ImplementationCache methodExecutor = (ImplementationCache) context.getMethodExecutor();
+        final INotificationDistributor notificationDistributor = synchronizedDistributor(context
+                .getNotificationDistributor());
+
+        final RootNodeExecutionContext[] nodeContexts = new RootNodeExecutionContext[nodes.size()];
+        final boolean[] nodeSuccess = new boolean[nodes.size()];
+        final AtomicInteger nextNode = new AtomicInteger();
+
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(workers);
+
+        for (int i = 0; i < workers; i++) {
+
+            tasks.add(new Callable<Void>() {
+
+                public Void call() {
+
+                    final ImplementationCache workerMethodExecutor = methodExecutor.emptyCopy();
+                    final SetupAndTearDown workerSetupAndTearDown = context.getSetupAndTeardown().copyFor(
+                            workerMethodExecutor);
+
+                    // the execution context is per thread, the worker starts
+                    // with an empty one
+                    ExecutionContext.put(Scope.SUITE, INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY,
+                            notificationDistributor);
+
+                    final Worker<NODE_TYPE> worker = workerFactory.newWorker();
+
+                    Throwable setupFailure = null;
+                    int scopesSetUp = 0;
+
+                    RootNodeExecutionContext lastContext = null;
+                    NODE_TYPE lastNode = null;
+
+                    try {
+                        for (int idx = nextNode.getAndIncrement(); idx < nodes.size(); idx = nextNode
+                                .getAndIncrement()) {
+
+                            // set up once there's a node to run
+                            if (lastNode == null) {
+                                try {
+                                    for (final Scope scope : workerScopes) {
+                                        workerSetupAndTearDown.runSetup(scope);
+                                        scopesSetUp++;
+                                    }
+                                } catch (final Throwable t) {
+                                    log.warn("worker setup failed", t);
+                                    setupFailure = t;
+                                }
+                            }
+
+                            lastNode = nodes.get(idx);
+                            lastContext = context.newWorkerContext(notificationDistributor,
+                                    workerSetupAndTearDown, workerMethodExecutor);
+                            nodeContexts[idx] = lastContext;
+
+                            if (setupFailure != null) {
+                                // as if the node's own setup had failed
+                                notificationDistributor.onNodeStarted(lastNode);
+                                lastContext.addFailure(new SubstepExecutionFailure(setupFailure, lastNode, true));
+                                notificationDistributor.onNodeFailed(lastNode, setupFailure);
+                                lastNode.getResult().setFailed(setupFailure);
+                            } else {
+                                nodeSuccess[idx] = worker.run(lastNode, lastContext);
+                            }
+                        }
+                    } finally {
+                        runTearDown(workerSetupAndTearDown, workerScopes, scopesSetUp, lastNode, lastContext);
+                        ExecutionContext.clear(Scope.SUITE);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            ParallelTasks.invokeAll(tasks, workers);
+        } finally {
+            for (final RootNodeExecutionContext nodeContext : nodeContexts) {
+                if (nodeContext != null) {
+                    context.addWorkerResults(nodeContext);
+                }
+            }
+        }
+
+        boolean success = true;
+        for (final boolean s : nodeSuccess) {
+            success &= s;
+        }
+        return success;
+    }
+
+    /**
+     * Tears down the scopes a worker set up, innermost first, any failure is
+     * put down to the last node the worker ran.
+     */
+    private static void runTearDown(final SetupAndTearDown workerSetupAndTearDown, final Scope[] workerScopes,
+            final int scopesSetUp, final IExecutionNode lastNode, final RootNodeExecutionContext lastContext) {
+
+        for (int i = scopesSetUp - 1; i >= 0; i--) {
+            try {
+                workerSetupAndTearDown.runTearDown(workerScopes[i]);
+            } catch (final Throwable t) {
+                log.warn("worker tear down failed", t);
+
+                if (lastContext != null) {
+                    lastContext.addFailure(new SubstepExecutionFailure(t, lastNode, true));
+                }
+            } finally {
+                ExecutionContext.clear(workerScopes[i]);
+            }
+        }
+    }
+
+    private static INotificationDistributor synchronizedDistributor(final INotificationDistributor distributor) {
+
+        // already shared between the workers of an enclosing pool
+        return distributor instanceof SynchronizedNotificationDistributor ? distributor
+                : new SynchronizedNotificationDistributor(distributor);
+    }
+
+    /**
+     * Hands each notification to the listeners in one go, so that listeners
+     * written for a single thread see the notifications of each node, in
+     * order, one at a time.
+     */
+    private static final class SynchronizedNotificationDistributor implements INotificationDistributor {
+
+        private final INotificationDistributor delegate;
+
+        SynchronizedNotificationDistributor(final INotificationDistributor delegate) {
+            this.delegate = delegate;
+        }
+
+        public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+            synchronized (delegate) {
+                delegate.onNodeFailed(node, cause);
+            }
+        }
+
+        public void onNodeStarted(final IExecutionNode node) {
+            synchronized (delegate) {
+                delegate.onNodeStarted(node);
+            }
+        }
+
+        public void onNodeFinished(final IExecutionNode node) {
+            synchronized (delegate) {
+                delegate.onNodeFinished(node);
+            }
+        }
+
+        public void onNodeIgnored(final IExecutionNode node) {
+            synchronized (delegate) {
+                delegate.onNodeIgnored(node);
+            }
+        }
+
+        public void addListener(final IExecutionListener listener) {
+            synchronized (delegate) {
+                delegate.addListener(listener);
+            }
+        }
+    }
+}
@@ -18,6 +18,9 @@
  */
 package com.technophobia.substeps.runner.node;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.technophobia.substeps.execution.node.FeatureNode;
 import com.technophobia.substeps.execution.node.RootNode;
 import com.technophobia.substeps.execution.node.RootNodeExecutionContext;
@@ -25,13 +28,72 @@ import com.technophobia.substeps.model.Scope;
 
 public class RootNodeRunner extends AbstractNodeRunner<RootNode, Void> {
 
+    private static final Logger log = LoggerFactory.getLogger(RootNodeRunner.class);
+
+    // the suite's setup is run by each worker too
+    private static final Scope[] WORKER_SCOPES = { Scope.SUITE };
+
     FeatureNodeRunner featureNodeRunner = new FeatureNodeRunner();
 
+    private int featureThreads = 1;
+
+    /**
+     * Note that the suite's setup, eg. @BeforeAllFeatures, is then run
+     * once by each worker as well as once on the calling thread, and its tear
+     * down likewise. A suite setup that starts a server or binds a port will
+     * fail on the second run unless it allows for that.
+     * 
+     * @param featureThreads
+     *            the number of features to run at once, each on a worker
+     *            thread with its own step implementation instances and
+     *            execution context, which the suite's setup is also run
+     *            against. Features are run one after another on the calling
+     *            thread if this is one or less.
+     */
+    public void setFeatureThreads(int featureThreads) {
+        this.featureThreads = featureThreads;
+    }
+
+    /**
+     * @see FeatureNodeRunner#setParallelScenarios(String, int)
+     */
+    public void setParallelScenarios(String parallelTag, int scenarioThreads) {
+        featureNodeRunner.setParallelScenarios(parallelTag, scenarioThreads);
+    }
+
+    /**
+     * @see FeatureNodeRunner#setParallelScenarios(String, int, boolean)
+     */
+    public void setParallelScenarios(String parallelTag, int scenarioThreads, boolean featureSetupPerWorker) {
+        featureNodeRunner.setParallelScenarios(parallelTag, scenarioThreads, featureSetupPerWorker);
+    }
+
     @Override
     protected boolean execute(RootNode node, RootNodeExecutionContext context) {
 
         boolean success = addExpectedChildrenFailureIfNoChildren(node, node.getChildren(), context);
 
+        if (featureThreads > 1 && node.getChildren().size() > 1) {
+
+            if (ParallelNodeRunner.canRunInParallel(context)) {
+
+                log.info("running " + node.getChildren().size() + " features on up to " + featureThreads
+                        + " threads");
+
+                return ParallelNodeRunner.runAll(node.getChildren(), featureThreads, context, WORKER_SCOPES,
+                        new ParallelNodeRunner.WorkerFactory<FeatureNode>() {
+
+                            public ParallelNodeRunner.Worker<FeatureNode> newWorker() {
+                                return featureNodeRunner.newWorker();
+                            }
+                        })
+                        && success;
+            }
+
+            log.warn("unable to run features in parallel with a " + context.getMethodExecutor().getClass().getName()
+                    + ", running them one at a time");
+        }
+
         for (FeatureNode feature : node.getChildren()) {
 
             success &= featureNodeRunner.run(feature, context);
@@ -46,5 +108,4 @@ public class RootNodeRunner extends AbstractNodeRunner<RootNode, Void> {
         return Scope.SUITE;
 
     }
-
 }
@@ -19,7 +19,9 @@
 package com.technophobia.substeps.runner.setupteardown;
 
 import java.lang.reflect.Method;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,10 +42,16 @@ public class SetupAndTearDown {
 
     private String loggingConfigName = null;
 
+    private final Class<?>[] classes;
+
     private final MethodExecutor methodExecutor;
 
     private final BeforeAndAfterMethods beforeAndAfterMethods;
 
+    // looked up once, these are run for every node
+    private final Map<MethodState, List<Method>> methodsByState = new EnumMap<MethodState, List<Method>>(
+            MethodState.class);
+
     public String getLoggingConfigName() {
         return this.loggingConfigName;
     }
@@ -54,9 +62,28 @@ public class SetupAndTearDown {
 
     public SetupAndTearDown(final Class<?>[] classes, final MethodExecutor methodExecutor) {
 
+        this.classes = classes;
         this.beforeAndAfterMethods = new BeforeAndAfterMethods(classes);
         this.methodExecutor = methodExecutor;
         this.methodExecutor.addImplementationClasses(classes);
+
+        for (final MethodState methodState : MethodState.values()) {
+            this.methodsByState.put(methodState, this.beforeAndAfterMethods.getSetupAndTearDownMethods(methodState));
+        }
+    }
+
+    /**
+     * @param otherMethodExecutor
+     *            the executor that will hold the copy's own instances of the
+     *            initialisation classes
+     * @return a copy running the same methods against the instances of
+     *         another executor, for use by a different thread
+     */
+    public SetupAndTearDown copyFor(final MethodExecutor otherMethodExecutor) {
+
+        final SetupAndTearDown copy = new SetupAndTearDown(this.classes, otherMethodExecutor);
+        copy.setLoggingConfigName(this.loggingConfigName);
+        return copy;
     }
 
     public void runBeforeAll() throws Throwable {
@@ -103,9 +130,12 @@ public class SetupAndTearDown {
 
     private void runAllMethods(final MethodState methodState) throws Throwable {
 
-        final List<Method> setupAndTearDownMethods = this.beforeAndAfterMethods.getSetupAndTearDownMethods(methodState);
+        final List<Method> setupAndTearDownMethods = this.methodsByState.get(methodState);
 
-        this.methodExecutor.executeMethods(setupAndTearDownMethods);
+        // most scopes have nothing to run
+        if (!setupAndTearDownMethods.isEmpty()) {
+            this.methodExecutor.executeMethods(setupAndTearDownMethods);
+        }
     }
 
     private void prepareLoggingConfig() {
@@ -128,7 +158,9 @@ public class SetupAndTearDown {
      * @throws Throwable
      */
     public void runSetup(final Scope currentScope) throws Throwable {
-        this.log.trace("running setup for scope: " + currentScope);
+        if (this.log.isTraceEnabled()) {
+            this.log.trace("running setup for scope: " + currentScope);
+        }
 
         switch (currentScope) {
             case SUITE: {
@@ -156,7 +188,9 @@ public class SetupAndTearDown {
      * @param scope
      */
     public void runTearDown(final Scope currentScope) throws Throwable {
-        this.log.trace("runTearDown: " + currentScope);
+        if (this.log.isTraceEnabled()) {
+            this.log.trace("runTearDown: " + currentScope);
+        }
 
         // TODO could implement this as methods on Scope itself
         switch (currentScope) {
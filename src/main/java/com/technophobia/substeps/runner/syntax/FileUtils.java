@@ -20,39 +20,18 @@
 package com.technophobia.substeps.runner.syntax;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.util.ArrayList;
 import java.util.List;
 
+import com.technophobia.substeps.scanner.FileDiscovery;
+
 /**
  * @author ian
  * 
+ * @deprecated use {@link FileDiscovery}
  */
-// TODO replace with commons io
 @Deprecated
 public class FileUtils {
     public static List<File> getFiles(final File fFile, final String extension) {
-
-        final List<File> files = new ArrayList<File>();
-        if (fFile.exists()) {
-            if (fFile.isDirectory()) {
-                final File[] children = fFile.listFiles(new FileFilter() {
-                    public boolean accept(final File dir) {
-                        return dir.isDirectory()
-                                || (dir.isFile() && dir.getName().endsWith(
-                                        extension));
-                    }
-
-                });
-                if (children != null && children.length > 0) {
-                    for (final File f : children) {
-                        files.addAll(getFiles(f, extension));
-                    }
-                }
-            } else {
-                files.add(fFile);
-            }
-        }
-        return files;
+        return FileDiscovery.withExtension(extension).find(fFile);
     }
 }
@@ -21,7 +21,12 @@ package com.technophobia.substeps.runner.syntax;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,30 +37,40 @@ import com.technophobia.substeps.model.PatternMap;
 import com.technophobia.substeps.model.Step;
 import com.technophobia.substeps.model.exception.DuplicatePatternException;
 import com.technophobia.substeps.parser.FileContents;
+import com.technophobia.substeps.parser.ParseCache;
 import com.technophobia.substeps.runner.FeatureFileParser;
+import com.technophobia.substeps.runner.ParallelTasks;
+import com.technophobia.substeps.scanner.FileDiscovery;
 
 /**
+ * Loads substep definitions. Each file is parsed on its own, concurrently
+ * with the others, and the definitions are then merged into a single
+ * {@link PatternMap} in file order, which is where duplicate patterns are
+ * detected and reported.
+ * 
  * @author ian
  * 
- *         TODO: failOnDuplicateSubsteps is used inconsistently between
- *         processDirective and parseSubStepFile. It's also being interpreted as
- *         'fail-fast' when it was intended to mean
- *         parse-and-(run|don't-run)-on-error.
+ *         TODO: failOnDuplicateSubsteps is being interpreted as 'fail-fast'
+ *         when it was intended to mean parse-and-(run|don't-run)-on-error.
  * 
  */
 public class SubStepDefinitionParser {
 
-    private final Logger log = LoggerFactory.getLogger(SubStepDefinitionParser.class);
+    private static final Logger log = LoggerFactory.getLogger(SubStepDefinitionParser.class);
 
-    private ParentStep currentParentStep;
+    private PatternMap<ParentStep> parentMap = new PatternMap<ParentStep>();
 
-    private final PatternMap<ParentStep> parentMap = new PatternMap<ParentStep>();
+    // the definitions read from each file since the last full load, kept so
+    // a reload only has to re-read the files that have changed
+    private final Map<File, List<ParentStep>> parsedFiles = new ConcurrentHashMap<File, List<ParentStep>>();
 
     private final boolean failOnDuplicateSubsteps;
 
     private final SyntaxErrorReporter syntaxErrorReporter;
 
-    private FileContents currentFileContents;
+    private ParseCache parseCache;
+
+    private boolean parallelLoading = true;
 
     public SubStepDefinitionParser(final SyntaxErrorReporter syntaxErrorReporter) {
         this(true, syntaxErrorReporter);
@@ -68,190 +83,281 @@ public class SubStepDefinitionParser {
 
     void parseSubStepFile(final File substepFile) {
 
-        this.currentFileContents = new FileContents();
+        merge(parentStepsIn(substepFile));
+    }
 
-        try {
 
-            this.currentFileContents.readFile(substepFile);
+    public PatternMap<ParentStep> loadSubSteps(final File definitions) {
 
-            for (int i = 0; i < this.currentFileContents.getNumberOfLines(); i++) {
+        // the files may have changed since they were last loaded
+        this.parsedFiles.clear();
 
-                // Line numbers are 1-based in FileContents
-                processLine(i + 1);
-            }
+        return load(definitions);
+    }
 
-            // add the last scenario in, but only if it has some steps
-            if (this.currentParentStep != null) {
-
-                if (this.currentParentStep.getSteps() != null && !this.currentParentStep.getSteps().isEmpty()) {
-                    try {
-                        storeForPatternOrThrowException(this.currentParentStep.getParent().getPattern(),
-                                this.currentParentStep);
-                    } catch (final DuplicatePatternException ex) {
-                        this.syntaxErrorReporter.reportSubstepsError(ex);
-                        if (this.failOnDuplicateSubsteps) {
-                            throw ex;
-                        }
-                    }
-                } else {
 
-                    this.log.warn("Ignoring substep definition [" + this.currentParentStep.getParent().getLine()
-                            + "] as it has no steps");
-                }
-                // we're moving on to another file, so set this to null.
-                // TODO - pass this around rather than stash the state
-                this.currentParentStep = null;
-            }
-        } catch (final FileNotFoundException e) {
-            this.log.error(e.getMessage(), e);
-        } catch (final IOException e) {
+    /**
+     * Reloads the definitions after some of the files have changed, only the
+     * changed files are read again. Duplicates are checked for and reported
+     * across all of the definitions as they are on a full load.
+     * 
+     * @param definitions
+     *            the file or directory originally loaded
+     * @param changedFiles
+     *            the substeps files that have been modified, added or removed
+     * @return a new map of all the definitions
+     */
+    public PatternMap<ParentStep> reloadSubSteps(final File definitions, final Collection<File> changedFiles) {
 
-            this.log.error(e.getMessage(), e);
+        for (final File f : changedFiles) {
+            this.parsedFiles.remove(f.getAbsoluteFile());
         }
+        return load(definitions);
     }
 
-    public PatternMap<ParentStep> loadSubSteps(final File definitions) {
 
-        final List<File> substepsFiles = FileUtils.getFiles(definitions, ".substeps");
+    private PatternMap<ParentStep> load(final File definitions) {
+
+        this.parentMap = new PatternMap<ParentStep>();
+
+        final List<File> substepsFiles = FileDiscovery.withExtension(".substeps").find(definitions);
 
+        final List<Callable<List<ParentStep>>> tasks = new ArrayList<Callable<List<ParentStep>>>(
+                substepsFiles.size());
         for (final File f : substepsFiles) {
-            parseSubStepFile(f);
+            tasks.add(new Callable<List<ParentStep>>() {
+                public List<ParentStep> call() {
+                    return parentStepsIn(f);
+                }
+            });
+        }
+
+        final int threads = this.parallelLoading ? ParallelTasks.defaultThreadCount() : 1;
+        log.debug("loading " + substepsFiles.size() + " substeps files using " + threads + " thread(s)");
+
+        // merging in file order keeps duplicate reporting the same as a
+        // sequential load
+        for (final List<ParentStep> parentSteps : ParallelTasks.invokeAll(tasks, threads)) {
+            merge(parentSteps);
         }
 
         return this.parentMap;
     }
 
-    private void processLine(final int lineNumberIdx) {
-        final String line = this.currentFileContents.getLineAt(lineNumberIdx);
 
-        if (this.log.isTraceEnabled()) {
-            this.log.trace("substep line[" + line + "] @ " + lineNumberIdx + ":"
-                    + this.currentFileContents.getFile().getName());
-        }
+    /**
+     * @param parseCache
+     *            where to keep the parsed definitions between runs, null to
+     *            always parse the files
+     */
+    public void setParseCache(final ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
 
-        if (line != null && line.length() > 0) {
-            // does this line begin with any of annotation values that we're
-            // interested in ?
 
-            // pick out the first word
-            final String trimmed = FeatureFileParser.stripComments(line.trim());
-            if (trimmed != null && trimmed.length() > 0 && !trimmed.startsWith("#")) {
-                processTrimmedLine(trimmed, lineNumberIdx);
+    /**
+     * @param parallelLoading
+     *            parse the substeps files concurrently, one thread per core,
+     *            true by default
+     */
+    public void setParallelLoading(final boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
+
+
+    private void merge(final List<ParentStep> parentSteps) {
+
+        for (final ParentStep parentStep : parentSteps) {
+            try {
+                storeForPatternOrThrowException(parentStep.getParent().getPattern(), parentStep);
+            } catch (final DuplicatePatternException ex) {
+                this.syntaxErrorReporter.reportSubstepsError(ex);
+                if (this.failOnDuplicateSubsteps) {
+                    throw ex;
+                }
             }
+        }
+    }
 
+
+    /**
+     * @param substepFile
+     * @return the definitions in the file, in the order they were defined
+     */
+    private List<ParentStep> parentStepsIn(final File substepFile) {
+
+        final File key = substepFile.getAbsoluteFile();
+
+        List<ParentStep> parentSteps = this.parsedFiles.get(key);
+        if (parentSteps == null) {
+            parentSteps = readParentSteps(substepFile);
+            this.parsedFiles.put(key, parentSteps);
         }
+        return parentSteps;
     }
 
-    private void processTrimmedLine(final String trimmed, final int lineNumberIdx) {
 
-        // TODO convert <> into regex wildcards
+    /**
+     * @return the definitions in the file, from the parse cache if the file
+     *         hasn't changed since it was last parsed
+     */
+    private List<ParentStep> readParentSteps(final File substepFile) {
 
-        final int scolon = trimmed.indexOf(':');
+        final String contentHash = this.parseCache != null ? this.parseCache.contentHashOf(substepFile) : null;
+        if (contentHash == null) {
+            return new SubStepDefinitionFile(substepFile).read();
+        }
 
-        boolean lineProcessed = false;
+        @SuppressWarnings("unchecked")
+        ArrayList<ParentStep> parentSteps = this.parseCache.get(substepFile, contentHash, ArrayList.class);
 
-        if (scolon > 0) {
-            // is this a directive line
-            final String word = trimmed.substring(0, scolon);
-            final String remainder = trimmed.substring(scolon + 1);
-            final Directive d = isDirective(word);
-            if (d != null) {
-                final String trimmedRemainder = remainder.trim();
-                if (!Strings.isNullOrEmpty(trimmedRemainder)) {
-                    processDirective(d, remainder, lineNumberIdx);
-                    lineProcessed = true;
-                }
-            }
+        if (parentSteps == null) {
+            parentSteps = new SubStepDefinitionFile(substepFile).read();
+            this.parseCache.put(substepFile, contentHash, parentSteps);
         }
+        return parentSteps;
+    }
 
-        if (!lineProcessed) {
-            if (this.currentParentStep != null) {
 
-                final int sourceOffset = this.currentFileContents.getSourceStartOffsetForLineIndex(lineNumberIdx);
-                // no context at the mo
-                this.currentParentStep.addStep(new Step(trimmed, true, this.currentFileContents.getFile(),
-                        lineNumberIdx, sourceOffset));
-            }
+    private void storeForPatternOrThrowException(final String newPattern, final ParentStep parentStep)
+            throws DuplicatePatternException {
+
+        if (!this.parentMap.containsPattern(newPattern)) {
+            this.parentMap.put(newPattern, parentStep);
+        } else {
+            throw new DuplicatePatternException(newPattern, this.parentMap.getValueForPattern(newPattern), parentStep);
         }
+
     }
 
+    /**
+     * The state of parsing a single substeps file, one of these per file so
+     * files can be parsed independently of each other.
+     */
+    private static final class SubStepDefinitionFile {
+
+        private final File substepFile;
+
+        private final FileContents fileContents = new FileContents();
 
-    private void processDirective(final Directive d, final String remainder, final int lineNumberIdx) {
-        this.currentDirective = d;
+        private final ArrayList<ParentStep> parentSteps = new ArrayList<ParentStep>();
 
-        switch (this.currentDirective) {
+        private ParentStep currentParentStep;
 
-            case DEFINITION: {
+        SubStepDefinitionFile(final File substepFile) {
+            this.substepFile = substepFile;
+        }
+
+        ArrayList<ParentStep> read() {
 
-                // build up a Step from the remainder
+            try {
 
-                final int sourceOffset = this.currentFileContents.getSourceStartOffsetForLineIndex(lineNumberIdx);
+                this.fileContents.readFile(this.substepFile);
 
-                final Step parent = new Step(remainder, true, this.currentFileContents.getFile(), lineNumberIdx,
-                        sourceOffset);
+                for (int i = 0; i < this.fileContents.getNumberOfLines(); i++) {
 
+                    // Line numbers are 1-based in FileContents
+                    processLine(i + 1);
+                }
+
+                // add the last scenario in, but only if it has some steps
                 if (this.currentParentStep != null) {
-                    final String newPattern = this.currentParentStep.getParent().getPattern();
 
-                    try {
-                        storeForPatternOrThrowException(newPattern, this.currentParentStep);
-                    } catch (final DuplicatePatternException ex) {
-                        this.syntaxErrorReporter.reportSubstepsError(ex);
+                    if (this.currentParentStep.getSteps() != null && !this.currentParentStep.getSteps().isEmpty()) {
+                        this.parentSteps.add(this.currentParentStep);
+                    } else {
 
-                        if (this.failOnDuplicateSubsteps) {
-                            throw ex;
-                        }
+                        log.warn("Ignoring substep definition [" + this.currentParentStep.getParent().getLine()
+                                + "] as it has no steps");
                     }
                 }
+            } catch (final FileNotFoundException e) {
+                log.error(e.getMessage(), e);
+            } catch (final IOException e) {
 
-                this.currentParentStep = new ParentStep(parent);
+                log.error(e.getMessage(), e);
+            }
+
+            return this.parentSteps;
+        }
+
+        private void processLine(final int lineNumberIdx) {
+            final String line = this.fileContents.getLineAt(lineNumberIdx);
+
+            if (log.isTraceEnabled()) {
+                log.trace("substep line[" + line + "] @ " + lineNumberIdx + ":" + this.fileContents.getFile().getName());
+            }
+
+            if (line != null && line.length() > 0) {
+                // does this line begin with any of annotation values that
+                // we're interested in ?
+
+                // pick out the first word
+                final String trimmed = FeatureFileParser.stripComments(line.trim());
+                if (trimmed != null && trimmed.length() > 0 && !trimmed.startsWith("#")) {
+                    processTrimmedLine(trimmed, lineNumberIdx);
+                }
 
-                break;
             }
-            default: // whatever
         }
-    }
 
-    /*
-     * private void processDirective(final Directive d, final String remainder,
-     * final File source, final int lineNumber) { this.currentDirective = d;
-     * 
-     * switch (this.currentDirective) {
-     * 
-     * case DEFINITION: {
-     * 
-     * // build up a Step from the remainder
-     * 
-     * final Step parent = new Step(remainder, true, source, lineNumber);
-     * 
-     * if (this.currentParentStep != null) { final String newPattern =
-     * this.currentParentStep.getParent() .getPattern(); // check for existing
-     * values if (this.parentMap.containsPattern(newPattern)) { final ParentStep
-     * otherValue = this.parentMap .getValueForPattern(newPattern);
-     * 
-     * this.log.error("duplicate patterns detected: " + newPattern + " in : " +
-     * otherValue.getSubStepFile() + " and " +
-     * this.currentParentStep.getSubStepFile());
-     * 
-     * }
-     * 
-     * storeForPatternOrReportFailure(source, newPattern,
-     * this.currentParentStep); }
-     * 
-     * this.currentParentStep = new ParentStep(parent);
-     * 
-     * break; } } }
-     */
+        private void processTrimmedLine(final String trimmed, final int lineNumberIdx) {
 
-    private void storeForPatternOrThrowException(final String newPattern, final ParentStep parentStep)
-            throws DuplicatePatternException {
+            // TODO convert <> into regex wildcards
 
-        if (!this.parentMap.containsPattern(newPattern)) {
-            this.parentMap.put(newPattern, parentStep);
-        } else {
-            throw new DuplicatePatternException(newPattern, this.parentMap.getValueForPattern(newPattern), parentStep);
+            final int scolon = trimmed.indexOf(':');
+
+            boolean lineProcessed = false;
+
+            if (scolon > 0) {
+                // is this a directive line
+                final String word = trimmed.substring(0, scolon);
+                final String remainder = trimmed.substring(scolon + 1);
+                final Directive d = isDirective(word);
+                if (d != null) {
+                    final String trimmedRemainder = remainder.trim();
+                    if (!Strings.isNullOrEmpty(trimmedRemainder)) {
+                        processDirective(d, remainder, lineNumberIdx);
+                        lineProcessed = true;
+                    }
+                }
+            }
+
+            if (!lineProcessed) {
+                if (this.currentParentStep != null) {
+
+                    final int sourceOffset = this.fileContents.getSourceStartOffsetForLineIndex(lineNumberIdx);
+                    // no context at the mo
+                    this.currentParentStep.addStep(new Step(trimmed, true, this.fileContents.getFile(),
+                            lineNumberIdx, sourceOffset));
+                }
+            }
         }
 
+        private void processDirective(final Directive d, final String remainder, final int lineNumberIdx) {
+
+            switch (d) {
+
+                case DEFINITION: {
+
+                    // build up a Step from the remainder
+
+                    final int sourceOffset = this.fileContents.getSourceStartOffsetForLineIndex(lineNumberIdx);
+
+                    final Step parent = new Step(remainder, true, this.fileContents.getFile(), lineNumberIdx,
+                            sourceOffset);
+
+                    if (this.currentParentStep != null) {
+                        this.parentSteps.add(this.currentParentStep);
+                    }
+
+                    this.currentParentStep = new ParentStep(parent);
+
+                    break;
+                }
+                default: // whatever
+            }
+        }
     }
 
     private static enum Directive {
@@ -267,9 +373,7 @@ public class SubStepDefinitionParser {
         private final String name;
     }
 
-    private Directive currentDirective = null;
-
-    private Directive isDirective(final String word) {
+    private static Directive isDirective(final String word) {
 
         Directive rtn = null;
 
@@ -0,0 +1,115 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner.syntax.validation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.technophobia.substeps.model.exception.StepImplementationException;
+import com.technophobia.substeps.model.exception.SubstepsParsingException;
+import com.technophobia.substeps.runner.syntax.SyntaxErrorReporter;
+
+/**
+ * Holds on to the errors reported while validating a file so that they can be
+ * passed on later, in the order they were reported.
+ * 
+ * An error reported with an exception is rethrown once it has been recorded
+ * so that validation of the file stops where it would have done; the reporter
+ * the errors are replayed to decides whether the exception is really thrown.
+ * 
+ * @author imoore
+ * 
+ */
+class DeferredSyntaxErrorReporter implements SyntaxErrorReporter {
+
+    private final List<Report> reports = new ArrayList<Report>();
+
+    private RuntimeException deferredException = null;
+
+
+    public void reportFeatureError(final File file, final String line, final int lineNumber, final int offset,
+            final String description) throws RuntimeException {
+
+        this.reports.add(new Report() {
+            @Override
+            void replayTo(final SyntaxErrorReporter reporter) {
+                reporter.reportFeatureError(file, line, lineNumber, offset, description);
+            }
+        });
+    }
+
+
+    public void reportFeatureError(final File file, final String line, final int lineNumber, final int offset,
+            final String description, final RuntimeException ex) throws RuntimeException {
+
+        this.reports.add(new Report() {
+            @Override
+            void replayTo(final SyntaxErrorReporter reporter) {
+                reporter.reportFeatureError(file, line, lineNumber, offset, description, ex);
+            }
+        });
+        this.deferredException = ex;
+        throw ex;
+    }
+
+
+    public void reportSubstepsError(final SubstepsParsingException ex) {
+
+        this.reports.add(new Report() {
+            @Override
+            void replayTo(final SyntaxErrorReporter reporter) {
+                reporter.reportSubstepsError(ex);
+            }
+        });
+    }
+
+
+    public void reportStepImplError(final StepImplementationException ex) {
+
+        this.reports.add(new Report() {
+            @Override
+            void replayTo(final SyntaxErrorReporter reporter) {
+                reporter.reportStepImplError(ex);
+            }
+        });
+    }
+
+
+    /**
+     * @param ex
+     * @return true if ex was thrown after being recorded here, rather than by
+     *         the validation itself
+     */
+    boolean isDeferred(final RuntimeException ex) {
+        return ex == this.deferredException;
+    }
+
+
+    void replayTo(final SyntaxErrorReporter reporter) {
+        for (final Report report : this.reports) {
+            report.replayTo(reporter);
+        }
+    }
+
+    private abstract static class Report {
+
+        abstract void replayTo(SyntaxErrorReporter reporter);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner.syntax.validation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import com.technophobia.substeps.model.FeatureFile;
+import com.technophobia.substeps.model.ParentStep;
+import com.technophobia.substeps.model.Syntax;
+import com.technophobia.substeps.runner.FeatureFileParser;
+import com.technophobia.substeps.runner.ParallelTasks;
+import com.technophobia.substeps.runner.syntax.SubStepDefinitionParser;
+import com.technophobia.substeps.runner.syntax.SyntaxErrorReporter;
+import com.technophobia.substeps.scanner.FileDiscovery;
+
+/**
+ * Validates the steps in many feature and substeps files at once, eg. as a
+ * lint over a whole project. The files are parsed and validated concurrently
+ * against the same compiled syntax; the errors are passed on to the
+ * {@link SyntaxErrorReporter} a file at a time, ordered by path, so the
+ * output is the same however many threads are used.
+ * 
+ * @author imoore
+ * 
+ */
+public class ParallelSyntaxValidator {
+
+    private static final String FEATURE_EXTENSION = ".feature";
+    private static final String SUBSTEPS_EXTENSION = ".substeps";
+
+    private final StepValidator stepValidator;
+
+    private int threads = ParallelTasks.defaultThreadCount();
+
+
+    public ParallelSyntaxValidator(final Syntax syntax) {
+        this(new SyntaxAwareStepValidator(syntax));
+    }
+
+
+    /**
+     * @param stepValidator
+     *            used from several threads at once, so must be thread safe
+     */
+    public ParallelSyntaxValidator(final StepValidator stepValidator) {
+        this.stepValidator = stepValidator;
+    }
+
+
+    /**
+     * @param threads
+     *            the maximum number of files to validate at once, one or less
+     *            to validate on the calling thread
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+
+    /**
+     * @param roots
+     *            feature and substeps files, or directories to search for
+     *            them
+     * @param syntaxErrorReporter
+     *            receives the errors for each file in turn
+     */
+    public void validate(final Collection<File> roots, final SyntaxErrorReporter syntaxErrorReporter) {
+
+        final List<File> files = filesIn(roots);
+
+        final List<Callable<FileResult>> tasks = new ArrayList<Callable<FileResult>>(files.size());
+
+        for (final File file : files) {
+            tasks.add(new Callable<FileResult>() {
+                public FileResult call() {
+                    return validate(file);
+                }
+            });
+        }
+
+        // every file's errors are reported before any failure is rethrown
+        RuntimeException failure = null;
+
+        for (final FileResult result : ParallelTasks.invokeAll(tasks, this.threads)) {
+            result.errors.replayTo(syntaxErrorReporter);
+
+            if (failure == null) {
+                failure = result.failure;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+
+    private FileResult validate(final File file) {
+
+        final FileResult result = new FileResult();
+        final DeferredSyntaxErrorReporter errors = result.errors;
+        try {
+            if (file.getName().endsWith(SUBSTEPS_EXTENSION)) {
+
+                final SubStepDefinitionParser parser = new SubStepDefinitionParser(false, errors);
+                parser.setParallelLoading(false);
+
+                for (final ParentStep substep : parser.loadSubSteps(file).values()) {
+                    this.stepValidator.validateSubstep(substep, errors);
+                }
+            } else {
+                final FeatureFile featureFile = new FeatureFileParser().loadFeatureFile(file);
+                if (featureFile != null) {
+                    this.stepValidator.validateFeatureFile(featureFile, errors);
+                }
+            }
+        } catch (final RuntimeException ex) {
+            if (!errors.isDeferred(ex)) {
+                result.failure = ex;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the feature and substeps files, without duplicates, ordered by
+     *         path
+     */
+    private List<File> filesIn(final Collection<File> roots) {
+
+        final Map<String, File> files = new TreeMap<String, File>();
+
+        for (final File root : roots) {
+            if (root.isDirectory()) {
+                addAll(files, FileDiscovery.withExtension(FEATURE_EXTENSION).find(root));
+                addAll(files, FileDiscovery.withExtension(SUBSTEPS_EXTENSION).find(root));
+            } else if (root.getName().endsWith(FEATURE_EXTENSION) || root.getName().endsWith(SUBSTEPS_EXTENSION)) {
+                files.put(root.getAbsolutePath(), root);
+            }
+        }
+        return new ArrayList<File>(files.values());
+    }
+
+
+    private static void addAll(final Map<String, File> files, final List<File> found) {
+        for (final File f : found) {
+            files.put(f.getAbsolutePath(), f);
+        }
+    }
+
+
+    /**
+     * The errors found in a file, and what stopped it being validated, if
+     * anything did.
+     */
+    private static final class FileResult {
+
+        private final DeferredSyntaxErrorReporter errors = new DeferredSyntaxErrorReporter();
+        private RuntimeException failure;
+    }
+}
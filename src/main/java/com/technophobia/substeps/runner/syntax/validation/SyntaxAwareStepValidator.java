@@ -38,7 +38,7 @@ public class SyntaxAwareStepValidator implements StepValidator {
 
     public SyntaxAwareStepValidator(final Syntax syntax) {
         this.syntax = syntax;
-        this.stepImplMap = createStepImplMap();
+        this.stepImplMap = syntax.getStepImplementationPatternMap();
     }
 
 
@@ -94,16 +94,4 @@ public class SyntaxAwareStepValidator implements StepValidator {
         return false;
     }
 
-
-    private PatternMap<StepImplementation> createStepImplMap() {
-        final PatternMap<StepImplementation> results = new PatternMap<StepImplementation>();
-
-        final List<StepImplementation> stepImpls = syntax.getStepImplementations();
-        for (final StepImplementation stepImpl : stepImpls) {
-            results.put(stepImpl.getValue(), stepImpl);
-        }
-
-        return results;
-    }
-
 }
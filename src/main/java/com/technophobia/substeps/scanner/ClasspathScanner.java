@@ -19,7 +19,6 @@
 package com.technophobia.substeps.scanner;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
@@ -35,6 +34,8 @@ import java.util.jar.JarFile;
  */
 public class ClasspathScanner {
 
+	private static final FileDiscovery CLASS_FILES = FileDiscovery.withExtension(".class");
+
 	public List<Class<?>> getClassesWithAnnotation(final Class<? extends Annotation> desiredAnnotation,
 			final ClassLoader classLoader, final String[] cpElements) {
 
@@ -46,7 +47,7 @@ public class ClasspathScanner {
 			final File f = new File(cpElement);
 
 			if (f.exists() && f.isDirectory()) {
-				final List<File> files = getAllFiles(f, "class");
+				final List<File> files = CLASS_FILES.find(f);
 
 				for (final File classFile : files) {
 					classNameList.add(convertFileToClass(classFile, f));
@@ -130,30 +131,4 @@ public class ClasspathScanner {
 		return fqp.replace(File.separatorChar, '.');
 	}
 
-	private List<File> getAllFiles(final File root, final String extension) {
-		final FileFilter filter = new FileFilter() {
-			public boolean accept(final File f) {
-				return f.isDirectory() || (f.isFile() && f.getName().endsWith(extension));
-			}
-		};
-
-		final List<File> files = new ArrayList<File>();
-
-		if (root.exists()) {
-			final File[] children = root.listFiles(filter);
-			for (final File child : children) {
-				if (child != null && child.exists()) {
-					if (child.isDirectory()) {
-						// recurse
-						final List<File> childsFiles = getAllFiles(child, extension);
-						files.addAll(childsFiles);
-					} else {
-						files.add(child);
-					}
-				}
-			}
-		}
-		return files;
-	}
-
 }
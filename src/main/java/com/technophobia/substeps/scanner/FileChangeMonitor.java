@@ -0,0 +1,122 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.scanner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects files being added, modified or removed beneath a directory by
+ * comparing successive snapshots of their modification times and sizes.
+ * 
+ * @author imoore
+ * 
+ */
+public class FileChangeMonitor {
+
+    private final File root;
+
+    private final FileDiscovery discovery;
+
+    private Map<File, Stamp> snapshot;
+
+
+    /**
+     * Takes the initial snapshot, changes are reported relative to it.
+     * 
+     * @param root
+     *            the directory, or single file, to monitor
+     * @param discovery
+     *            which files beneath root to monitor
+     */
+    public FileChangeMonitor(final File root, final FileDiscovery discovery) {
+        this.root = root;
+        this.discovery = discovery;
+        this.snapshot = takeSnapshot();
+    }
+
+
+    /**
+     * @return the files added, modified or removed since the last call, or
+     *         since construction for the first call
+     */
+    public List<File> changedFiles() {
+
+        final Map<File, Stamp> current = takeSnapshot();
+
+        final List<File> changed = new ArrayList<File>();
+
+        for (final Map.Entry<File, Stamp> entry : current.entrySet()) {
+            if (!entry.getValue().equals(this.snapshot.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+
+        for (final File f : this.snapshot.keySet()) {
+            if (!current.containsKey(f)) {
+                changed.add(f);
+            }
+        }
+
+        this.snapshot = current;
+        return changed;
+    }
+
+
+    private Map<File, Stamp> takeSnapshot() {
+
+        final Map<File, Stamp> stamps = new HashMap<File, Stamp>();
+
+        for (final File f : this.discovery.find(this.root)) {
+            stamps.put(f, new Stamp(f.lastModified(), f.length()));
+        }
+        return stamps;
+    }
+
+    private static final class Stamp {
+
+        private final long lastModified;
+        private final long length;
+
+
+        Stamp(final long lastModified, final long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Stamp)) {
+                return false;
+            }
+            final Stamp other = (Stamp) obj;
+            return this.lastModified == other.lastModified && this.length == other.length;
+        }
+
+
+        @Override
+        public int hashCode() {
+            return (int) (this.lastModified ^ (this.lastModified >>> 32)) * 31 + (int) this.length;
+        }
+    }
+}
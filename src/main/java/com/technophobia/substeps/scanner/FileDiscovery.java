@@ -0,0 +1,240 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.scanner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import com.technophobia.substeps.runner.ParallelTasks;
+
+/**
+ * Finds the files beneath a directory whose paths, relative to that directory
+ * and separated by '/', match one of a set of include globs and none of a set
+ * of exclude globs. The globs support '*' (any characters within a path
+ * segment), '?' (a single character within a segment) and '**' (any number of
+ * segments), eg. <code>**&#47;*.feature</code> or <code>**&#47;target</code>.
+ * 
+ * A directory matching an exclude glob isn't descended into. The tree is
+ * listed a level at a time with the directories at each level listed
+ * concurrently, which matters on slow or network mounted file systems; the
+ * files are still returned in the same depth first order as a sequential
+ * walk.
+ * 
+ * @author imoore
+ * 
+ */
+public class FileDiscovery {
+
+    private final List<Pattern> includes;
+
+    private final List<Pattern> excludes;
+
+    private int threads = ParallelTasks.defaultThreadCount();
+
+
+    public FileDiscovery(final String[] includeGlobs, final String[] excludeGlobs) {
+        this.includes = compile(includeGlobs);
+        this.excludes = compile(excludeGlobs);
+    }
+
+
+    /**
+     * @param extension
+     *            eg. ".feature"
+     * @return a FileDiscovery that finds all the files with that extension
+     */
+    public static FileDiscovery withExtension(final String extension) {
+        return new FileDiscovery(new String[] { "**/*" + extension }, null);
+    }
+
+
+    /**
+     * @param threads
+     *            the maximum number of directories to list at once, one or
+     *            less to walk the tree on the calling thread
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+
+    /**
+     * @param root
+     *            the directory to search, or a single file which is returned
+     *            as is
+     * @return the matching files, an empty list if root doesn't exist
+     */
+    public List<File> find(final File root) {
+
+        final List<File> files = new ArrayList<File>();
+
+        if (!root.exists()) {
+            return files;
+        }
+
+        if (!root.isDirectory()) {
+            files.add(root);
+            return files;
+        }
+
+        final Directory rootDirectory = new Directory(root, "");
+
+        List<Directory> level = Collections.singletonList(rootDirectory);
+
+        while (!level.isEmpty()) {
+
+            final List<Callable<List<Directory>>> tasks = new ArrayList<Callable<List<Directory>>>(level.size());
+            for (final Directory directory : level) {
+                tasks.add(new Callable<List<Directory>>() {
+                    public List<Directory> call() {
+                        return list(directory);
+                    }
+                });
+            }
+
+            final List<Directory> nextLevel = new ArrayList<Directory>();
+            for (final List<Directory> subDirectories : ParallelTasks.invokeAll(tasks, this.threads)) {
+                nextLevel.addAll(subDirectories);
+            }
+            level = nextLevel;
+        }
+
+        collect(rootDirectory, files);
+        return files;
+    }
+
+
+    /**
+     * Lists a single directory, recording its matching files and the
+     * sub-directories to descend into in the order they were listed.
+     * 
+     * @return the sub-directories to list next
+     */
+    private List<Directory> list(final Directory directory) {
+
+        final List<Directory> subDirectories = new ArrayList<Directory>();
+
+        final File[] children = directory.dir.listFiles();
+        if (children == null) {
+            return subDirectories;
+        }
+
+        for (final File child : children) {
+
+            final String path = directory.path + child.getName();
+
+            if (child.isDirectory()) {
+                if (!matchesAny(this.excludes, path)) {
+                    final Directory subDirectory = new Directory(child, path + "/");
+                    directory.entries.add(subDirectory);
+                    subDirectories.add(subDirectory);
+                }
+            } else if (matchesAny(this.includes, path) && !matchesAny(this.excludes, path) && child.isFile()) {
+                directory.entries.add(child);
+            }
+        }
+        return subDirectories;
+    }
+
+
+    private static void collect(final Directory directory, final List<File> files) {
+        for (final Object entry : directory.entries) {
+            if (entry instanceof Directory) {
+                collect((Directory) entry, files);
+            } else {
+                files.add((File) entry);
+            }
+        }
+    }
+
+
+    private static boolean matchesAny(final List<Pattern> patterns, final String path) {
+        for (final Pattern p : patterns) {
+            if (p.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static List<Pattern> compile(final String[] globs) {
+        final List<Pattern> patterns = new ArrayList<Pattern>();
+        if (globs != null) {
+            for (final String glob : globs) {
+                patterns.add(globToPattern(glob));
+            }
+        }
+        return patterns;
+    }
+
+
+    static Pattern globToPattern(final String glob) {
+
+        final StringBuilder regex = new StringBuilder();
+
+        final String normalised = glob.replace('\\', '/');
+        int i = 0;
+        while (i < normalised.length()) {
+            final char c = normalised.charAt(i);
+
+            if (normalised.startsWith("**/", i)) {
+                // any number of leading directories, including none
+                regex.append("(?:.*/)?");
+                i += 3;
+            } else if (normalised.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+            } else {
+                if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                    regex.append('\\').append(c);
+                } else {
+                    regex.append(c);
+                }
+                i++;
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * A directory in the tree being searched, its entries are either matching
+     * Files or sub-Directories, in listing order.
+     */
+    private static final class Directory {
+
+        private final File dir;
+        private final String path;
+        private final List<Object> entries = new ArrayList<Object>();
+
+
+        Directory(final File dir, final String path) {
+            this.dir = dir;
+            this.path = path;
+        }
+    }
+}
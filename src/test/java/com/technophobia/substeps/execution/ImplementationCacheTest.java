@@ -0,0 +1,127 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.execution;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ImplementationCacheTest {
+
+    @Test
+    public void stepsAreInvokedOnOneInstanceOfTheirClass() throws Exception {
+
+        final ImplementationCache cache = new ImplementationCache();
+
+        cache.executeMethod(Steps.class, Steps.class.getMethod("noArgs"), null);
+        cache.executeMethod(Steps.class, Steps.class.getMethod("withArg", String.class), new Object[] { "one" });
+        cache.executeMethod(Steps.class, Steps.class.getMethod("withArg", String.class), new Object[] { "two" });
+
+        final Steps steps = cache.getImplementation(Steps.class);
+        assertThat(steps.calls.toString(), is("[noArgs, one, two]"));
+        assertThat(cache.getImplementation(Steps.class), sameInstance(steps));
+    }
+
+
+    @Test
+    public void stepsOfNonPublicClassesCanBeInvoked() throws Exception {
+
+        final ImplementationCache cache = new ImplementationCache();
+
+        cache.executeMethod(PackagePrivateSteps.class, PackagePrivateSteps.class.getMethod("step"), null);
+
+        assertThat(cache.getImplementation(PackagePrivateSteps.class).called, is(true));
+    }
+
+
+    @Test
+    public void exceptionsThrownByStepsAreWrapped() throws Exception {
+
+        final ImplementationCache cache = new ImplementationCache();
+
+        try {
+            cache.executeMethod(Steps.class, Steps.class.getMethod("fails"), null);
+            fail("expected the step to fail");
+        } catch (final InvocationTargetException e) {
+            assertThat(e.getTargetException().getMessage(), is("failed"));
+        }
+    }
+
+    @Test
+    public void setupMethodsRunOnInstancesAddedSinceTheyLastRan() throws Exception {
+
+        final ImplementationCache cache = new ImplementationCache();
+        cache.addImplementationClasses(Steps.class);
+
+        final List<Method> setupMethods = Collections.singletonList(Steps.class.getMethod("noArgs"));
+
+        cache.executeMethods(setupMethods);
+        cache.executeMethods(setupMethods);
+
+        // a subclass of the class declaring the method
+        cache.addImplementationClasses(MoreSteps.class);
+        cache.executeMethods(setupMethods);
+
+        assertThat(cache.getImplementation(Steps.class).calls.toString(), is("[noArgs, noArgs, noArgs]"));
+        assertThat(cache.getImplementation(MoreSteps.class).calls.toString(), is("[noArgs]"));
+    }
+
+    public static class Steps {
+
+        final List<String> calls = new ArrayList<String>();
+
+
+        public void noArgs() {
+            calls.add("noArgs");
+        }
+
+
+        public void withArg(final String arg) {
+            calls.add(arg);
+        }
+
+
+        public void fails() {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    public static class MoreSteps extends Steps {
+        // no additional steps
+    }
+
+    static class PackagePrivateSteps {
+
+        boolean called;
+
+
+        public void step() {
+            called = true;
+        }
+    }
+}
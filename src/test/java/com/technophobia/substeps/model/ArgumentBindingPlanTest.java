@@ -0,0 +1,87 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.technophobia.substeps.model.SubSteps.StepParameter;
+import com.technophobia.substeps.model.parameter.Converter;
+
+public class ArgumentBindingPlanTest {
+
+    public static class UpperCaseConverter implements Converter<String> {
+
+        public boolean canConvert(final Class<?> cls) {
+            return String.class.equals(cls);
+        }
+
+
+        public String convert(final String value) {
+            return value.toUpperCase();
+        }
+    }
+
+    public static class Steps {
+
+        public void typed(final String name, final int count, final Long total) {
+        }
+
+
+        public void converted(@StepParameter(converter = UpperCaseConverter.class) final String name,
+                final Object unconvertable) {
+        }
+    }
+
+
+    @Test
+    public void testArgumentsAreConvertedToTheParameterTypes() throws Exception {
+
+        final ArgumentBindingPlan plan = new ArgumentBindingPlan("Given (\\w+) has (\\d+) of (\\d+)",
+                Steps.class.getMethod("typed", String.class, int.class, Long.class));
+
+        Assert.assertThat(plan.getParameterCount(), is(3));
+        Assert.assertThat(plan.bind("Given fred has 2 of 10"), is(Arrays.<Object> asList("fred", 2, 10L)));
+        Assert.assertThat(plan.bind("When something else"), nullValue());
+    }
+
+
+    @Test
+    public void testConvertersAreOnlyNeededForTheArgumentsSupplied() throws Exception {
+
+        final ArgumentBindingPlan plan = new ArgumentBindingPlan("Given (\\w+)(?: and (\\w+))?",
+                Steps.class.getMethod("converted", String.class, Object.class));
+
+        final List<Object> args = plan.bind("Given fred");
+        Assert.assertThat(args, is(Arrays.<Object> asList("FRED")));
+
+        try {
+            plan.bind("Given fred and wilma");
+            Assert.fail("no converter for Object");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
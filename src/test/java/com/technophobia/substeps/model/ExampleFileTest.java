@@ -0,0 +1,101 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class ExampleFileTest {
+
+    private File write(final String name, final String contents) throws IOException {
+        final File f = new File("./target/example-file-test/" + name);
+        f.getParentFile().mkdirs();
+        Files.write(contents, f, Charset.forName("UTF-8"));
+        return f;
+    }
+
+
+    @Test
+    public void testCsvRowsAreReadWithQuotingAndMissingColumns() throws IOException {
+
+        final File f = write("rows.csv", "# a comment\nname, value\n\nfred, 1\n\"smith, john\",\"say \"\"hi\"\"\"\nlast\n");
+
+        final Iterator<ExampleParameter> rows = ExampleFile.forFile(f).iterator();
+
+        ExampleParameter row = rows.next();
+        Assert.assertThat(row.getParameters().get("name"), is("fred"));
+        Assert.assertThat(row.getParameters().get("value"), is("1"));
+        Assert.assertThat(row.getLineNumber(), is(4));
+
+        row = rows.next();
+        Assert.assertThat(row.getParameters().get("name"), is("smith, john"));
+        Assert.assertThat(row.getParameters().get("value"), is("say \"hi\""));
+
+        row = rows.next();
+        Assert.assertThat(row.getParameters().get("name"), is("last"));
+        Assert.assertThat(row.getParameters().get("value"), is(nullValue()));
+
+        Assert.assertThat(rows.hasNext(), is(false));
+    }
+
+
+    @Test
+    public void testTsvValuesAreSplitOnTabsOnly() throws IOException {
+
+        final File f = write("rows.tsv", "name\tvalue\na, b\tc\n");
+
+        final ExampleParameter row = ExampleFile.forFile(f).iterator().next();
+
+        Assert.assertThat(row.getParameters().get("name"), is("a, b"));
+        Assert.assertThat(row.getParameters().get("value"), is("c"));
+    }
+
+
+    @Test
+    public void testEachIterationStartsFromTheFirstRow() throws IOException {
+
+        final ExampleFile exampleFile = ExampleFile.forFile(write("again.csv", "n\n1\n2\n"));
+
+        for (int i = 0; i < 2; i++) {
+            final Iterator<ExampleParameter> rows = exampleFile.iterator();
+            Assert.assertThat(rows.next().getParameters().get("n"), is("1"));
+            Assert.assertThat(rows.next().getParameters().get("n"), is("2"));
+            Assert.assertThat(rows.hasNext(), is(false));
+        }
+    }
+
+
+    @Test
+    public void testOnlyCsvAndTsvFilesAreExampleFiles() {
+
+        Assert.assertThat(ExampleFile.forFile(new File("rows.txt")), is(nullValue()));
+        Assert.assertThat(new ExampleFile(new File("x"), ',').split("a,,b"), is(Arrays.asList("a", "", "b")));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeywordIndexTest {
+
+    @Test
+    public void testLineIsMatchedUnderEveryKeywordInOneProbe() {
+
+        final KeywordIndex<String> index = new KeywordIndex<String>();
+        index.add("Given", "Given a user called \"?([^\"]*)\"?", "given-user");
+        index.add("When", "When a user called (.*)", "when-user");
+        index.add("Then", "Then a user called fred", "then-fred");
+        index.add("Given", "Given something else", "given-other");
+        index.add("When", "When a user called fred|When nobody", "when-alternation");
+        index.add("Given", "Given a (.*) called fred", "given-thing");
+
+        final Map<String, List<String>> byKeyword = index.matchesByKeyword("And", "And a user called fred");
+
+        Assert.assertThat(byKeyword.keySet().toArray(), is(new Object[] { "Given", "When", "Then" }));
+        Assert.assertThat(byKeyword.get("Given"), is(Arrays.asList("given-user", "given-thing")));
+        Assert.assertThat(byKeyword.get("When"), is(Arrays.asList("when-user", "when-alternation")));
+        Assert.assertThat(byKeyword.get("Then"), is(Arrays.asList("then-fred")));
+
+        Assert.assertThat(index.matchesByKeyword("And", "And nobody").get("When"),
+                is(Arrays.asList("when-alternation")));
+        Assert.assertThat(index.matchesByKeyword("And", "And nothing at all").isEmpty(), is(true));
+    }
+
+
+    @Test
+    public void testKeywordsThatArentLiteralAreLeftToTheCaller() {
+
+        final KeywordIndex<String> index = new KeywordIndex<String>();
+        index.add("Given", "Given a user", "given-user");
+
+        Assert.assertThat(index.matchesByKeyword("And.1", "And.1 a user"), nullValue());
+        Assert.assertThat(index.matchesByKeyword("And", "When a user"), nullValue());
+    }
+}
@@ -80,4 +80,27 @@ public class PatternMapTest {
         Assert.assertEquals(2, values.size());
     }
 
+
+    @Test
+    public void testOnlyMatchingPatternsAreReturnedInTheOrderTheyWereAdded() {
+
+        final PatternMap<String> patternMap = new PatternMap<String>();
+
+        patternMap.put("Given a user called (.*)", "value1");
+        patternMap.put("Given a (.*) called fred", "value2");
+        patternMap.put("When a user called fred logs in", "value3");
+        patternMap.put("Given a user called fred|Given fred", "value4");
+        patternMap.put(".*fred", "value5");
+
+        final List<String> values = patternMap.get("Given a user called fred");
+
+        Assert.assertEquals(4, values.size());
+        Assert.assertEquals("value1", values.get(0));
+        Assert.assertEquals("value2", values.get(1));
+        Assert.assertEquals("value4", values.get(2));
+        Assert.assertEquals("value5", values.get(3));
+
+        Assert.assertEquals(2, patternMap.get("Given fred").size());
+        Assert.assertTrue(patternMap.get("Then nothing").isEmpty());
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PlaceholderTemplateTest {
+
+    @Test
+    public void testPlaceholdersAreReplacedInOnePass() {
+
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("name", "fred");
+        params.put("count", "$2");
+
+        final PlaceholderTemplate template = PlaceholderTemplate
+                .compile("Given <name> has <count> of <name>s <missing>!");
+
+        Assert.assertThat(template.hasPlaceholders(), is(true));
+        Assert.assertThat(template.substitute(params), is("Given fred has $2 of freds  !"));
+    }
+
+
+    @Test
+    public void testTextWithoutPlaceholdersIsReturnedAsIs() {
+
+        final String text = "Given a < b and b > c";
+        final PlaceholderTemplate template = PlaceholderTemplate.compile("Given a <b> c < d");
+
+        Assert.assertThat(template.substitute(new HashMap<String, String>()), is("Given a   c < d"));
+
+        final PlaceholderTemplate literal = PlaceholderTemplate.compile("Given no placeholders > here");
+        Assert.assertThat(literal.hasPlaceholders(), is(false));
+        Assert.assertThat(literal.substitute(new HashMap<String, String>()), sameInstance(literal.getText()));
+
+        Assert.assertThat(PlaceholderTemplate.compile(text).substitute(null), sameInstance(text));
+    }
+
+
+    @Test
+    public void testTheInnermostBracketsAreThePlaceholder() {
+
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("b", "B");
+
+        Assert.assertThat(PlaceholderTemplate.compile("a <<b>> c").substitute(params), is("a <B> c"));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StepUsageTrackerTest {
+
+    private StepUsageTracker tracker;
+    private StepImplementation called;
+    private StepImplementation uncalled;
+
+
+    @Before
+    public void initialise() throws Exception {
+        this.tracker = new StepUsageTracker();
+
+        this.called = new StepImplementation(StepUsageTrackerTest.class, "Given", "Given called",
+                StepUsageTrackerTest.class.getMethod("initialise"));
+        this.uncalled = new StepImplementation(StepUsageTrackerTest.class, "Given", "Given uncalled",
+                StepUsageTrackerTest.class.getMethod("countModeKeepsOnlyACount"));
+
+        this.tracker.register(this.called);
+        this.tracker.register(this.uncalled);
+    }
+
+
+    @Test
+    public void countModeKeepsOnlyACount() {
+
+        record(25);
+
+        assertThat(this.tracker.getCount(this.called), is(25));
+        assertThat(this.tracker.getUsages(this.called).isEmpty(), is(true));
+        assertThat(this.tracker.getUncalled(), is(Collections.singletonList(this.uncalled)));
+    }
+
+
+    @Test
+    public void sampleModeKeepsTheFirstFewCallSites() {
+
+        this.tracker.setMode(StepUsageTracker.Mode.SAMPLE);
+        this.tracker.setSampleSize(3);
+
+        record(25);
+
+        assertThat(this.tracker.getCount(this.called), is(25));
+        assertThat(this.tracker.getUsages(this.called).size(), is(3));
+        assertThat(this.tracker.getUsages(this.called).get(2).getLineNumber(), is(2));
+    }
+
+
+    @Test
+    public void fullModeKeepsEveryCallSite() {
+
+        this.tracker.setMode(StepUsageTracker.Mode.FULL);
+
+        record(25);
+
+        assertThat(this.tracker.getUsages(this.called).size(), is(25));
+        assertThat(this.tracker.getUsages(this.called).get(24).getParameterLine(), is("Given called"));
+    }
+
+
+    @Test
+    public void modesAreParsedCaseInsensitively() {
+
+        assertThat(StepUsageTracker.Mode.forName(null), is(StepUsageTracker.Mode.COUNT));
+        assertThat(StepUsageTracker.Mode.forName("sample"), is(StepUsageTracker.Mode.SAMPLE));
+        assertThat(StepUsageTracker.Mode.forName(" Full "), is(StepUsageTracker.Mode.FULL));
+    }
+
+
+    private void record(final int times) {
+        for (int i = 0; i < times; i++) {
+            this.tracker.record(this.called, "Given called", new File("test.feature"), i);
+        }
+    }
+}
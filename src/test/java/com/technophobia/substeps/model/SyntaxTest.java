@@ -132,6 +132,71 @@ public class SyntaxTest {
         assertThat(stepImplementation.getMethod(), is(StepDefinitionClass2.class.getMethod("method1")));
     }
 
+    @Test
+    public void repeatedLookupsAreResolvedFromTheCacheAndStillRecordUsage() throws Exception {
+
+        this.syntax.setStrict(false, new String[] { DEFINITION_1_1_KEYWORD, DEFINITION_1_2_KEYWORD,
+                DEFINITION_2_1_KEYWORD, DEFINITION_2_2_KEYWORD });
+
+        final String keyword = DEFINITION_2_2_KEYWORD;
+        final String parameterLine = DEFINITION_2_2_KEYWORD + DEFINITION_2_1_PARAMATER_LINE_SUFFIX;
+
+        final List<StepImplementation> first = this.syntax.getStepImplementations(keyword, parameterLine, null, 21);
+        first.clear();
+
+        final List<StepImplementation> second = this.syntax.getStepImplementations(keyword, parameterLine, null, 22);
+        assertThat(second.size(), is(1));
+        assertThat(second.get(0).getKeyword(), is(DEFINITION_2_2_KEYWORD));
+        assertThat(second.get(0).getMethod(), is(StepDefinitionClass2.class.getMethod("method1")));
+
+        assertThat(this.syntax.getUncalledStepImplementations().size(), is(3));
+    }
+
+    @Test
+    public void addingAStepImplementationInvalidatesCachedLookups() throws Exception {
+
+        this.syntax.setStrict(true, new String[0]);
+
+        final String parameterLine = DEFINITION_1_1_KEYWORD + " a new step";
+
+        assertThat(this.syntax.getStepImplementations(DEFINITION_1_1_KEYWORD, parameterLine, null, 21).size(),
+                is(0));
+
+        this.syntax.addStepImplementation(stepImplementation(DEFINITION_1_1_KEYWORD, parameterLine,
+                StepDefinitionClass2.class, "method2"));
+
+        assertThat(this.syntax.getStepImplementations(DEFINITION_1_1_KEYWORD, parameterLine, null, 22).size(),
+                is(1));
+    }
+
+    @Test
+    public void nonStrictLookupsUseTheKeywordPrecedence() throws Exception {
+
+        final Syntax nonStrict = new Syntax();
+        nonStrict.addStepImplementation(stepImplementation("Given", "Given a user called (.*)",
+                StepDefinitionClass1.class, "method1"));
+        nonStrict.addStepImplementation(stepImplementation("When", "When a user called (.*)",
+                StepDefinitionClass1.class, "method2"));
+        nonStrict.addStepImplementation(stepImplementation("Then", "Then a user called fred",
+                StepDefinitionClass2.class, "method1"));
+        nonStrict.setStrict(false, new String[] { "When", "Given", "Then" });
+
+        List<StepImplementation> stepImplementations = nonStrict.getStepImplementations("Then",
+                "Then a user called bob", null, 21);
+        assertThat(stepImplementations.size(), is(1));
+        assertThat(stepImplementations.get(0).getKeyword(), is("Then"));
+        assertThat(stepImplementations.get(0).getMethod(), is(StepDefinitionClass1.class.getMethod("method2")));
+
+        stepImplementations = nonStrict.getStepImplementations("When", "When a user called fred", null, 22);
+        assertThat(stepImplementations.size(), is(1));
+        assertThat(stepImplementations.get(0).getMethod(), is(StepDefinitionClass1.class.getMethod("method2")));
+
+        stepImplementations = nonStrict.getStepImplementations("Given", "Given a user called bob", null, 23);
+        assertThat(stepImplementations.get(0).getMethod(), is(StepDefinitionClass1.class.getMethod("method1")));
+
+        assertThat(nonStrict.getStepImplementations("Then", "Then nothing", null, 24).isEmpty(), is(true));
+    }
+
     @Test
     public void testInvalidPatternInStepImplDoesntStopSyntaxProcessing() throws Exception {
         // eg @Step("ExecuteQueryAndStashResults {([^}]*)}") <- this is an
@@ -0,0 +1,95 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class TagSetTest {
+
+    @Test
+    public void testTagSetsBehaveAsSetsAndAreShared() {
+
+        final Set<String> tags = Sets.newHashSet("@tagset-a", "@tagset-b", "@tagset-c");
+        final TagSet tagSet = TagSet.of(tags);
+
+        Assert.assertThat(tagSet.size(), is(3));
+        Assert.assertThat(tagSet.equals(tags), is(true));
+        Assert.assertThat(tags.equals(tagSet), is(true));
+        Assert.assertThat(tagSet.hashCode(), is(tags.hashCode()));
+        Assert.assertThat(tagSet.contains("@tagset-b"), is(true));
+        Assert.assertThat(tagSet.contains("@tagset-unknown"), is(false));
+        Assert.assertThat(Sets.newHashSet(tagSet), is(tags));
+
+        Assert.assertThat(TagSet.of(Sets.newHashSet("@tagset-c", "@tagset-a", "@tagset-b")), sameInstance(tagSet));
+        Assert.assertThat(TagSet.of(null), sameInstance(TagSet.EMPTY));
+    }
+
+
+    @Test
+    public void testUnionAndMatching() {
+
+        final TagSet feature = TagSet.of(Sets.newHashSet("@tagset-feature"));
+        final TagSet scenario = TagSet.of(Sets.newHashSet("@tagset-scenario", "@tagset-slow"));
+
+        final TagSet both = TagSet.union(scenario, feature);
+        Assert.assertThat(both, is(TagSet.of(Sets.newHashSet("@tagset-feature", "@tagset-scenario", "@tagset-slow"))));
+        Assert.assertThat(TagSet.union(both, feature), sameInstance(both));
+        Assert.assertThat(TagSet.union(null, feature), sameInstance(feature));
+
+        Assert.assertThat(both.containsAll(feature), is(true));
+        Assert.assertThat(feature.containsAll(both), is(false));
+        Assert.assertThat(both.intersects(TagSet.of(Sets.newHashSet("@tagset-slow", "@tagset-other"))), is(true));
+        Assert.assertThat(feature.intersects(scenario), is(false));
+    }
+
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTagSetsAreImmutable() {
+        TagSet.of(Sets.newHashSet("@tagset-a")).add("@tagset-b");
+    }
+
+
+    @Test
+    public void testSerializedTagSetsResolveToTheSharedInstance() throws IOException, ClassNotFoundException {
+
+        final TagSet tagSet = TagSet.of(Sets.newHashSet("@tagset-serialized", "@tagset-a"));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(tagSet);
+        out.close();
+
+        final Object read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Assert.assertThat(read, sameInstance((Object) tagSet));
+    }
+}
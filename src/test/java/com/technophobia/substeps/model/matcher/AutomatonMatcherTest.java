@@ -0,0 +1,110 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model.matcher;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
+
+public class AutomatonMatcherTest {
+
+    private static final String[] PATTERNS = { "Given a user called \"?([^\"]*)\"?", "Given a (.*) called fred",
+            "Given a user called fred|Given fred", "When I click on (?:the )?\"([^\"]+)\" (button|link)",
+            "Then there are (\\d+) rows?", "Then the value is (-?\\d{1,3}(?:,\\d{3})*(?:\\.\\d+)?)",
+            "^Given the (\\w+) page$", "Then wait for \\S+ seconds\\.", "(a+)+b", "(x|xx)*y",
+            "colou?r [a-fA-F0-9_-]{2,4}", ".*fred", "Given [^a-z\\s]+ and (.+?) too", "Given (\\w+) then \\1",
+            "(?i)given case", "Given a\\Q.*\\E", "Given [\\d.]+ \\[tab\\]\\t" };
+
+    private static final String[] INPUTS = { "Given a user called fred", "Given a user called \"bob\"", "Given fred",
+            "When I click on the \"OK\" button", "When I click on \"Cancel\" link", "When I click on \"\" link",
+            "Then there are 10 rows", "Then there are 1 row", "Then the value is -1,234.5",
+            "Then the value is 1234", "Given the home page", "Then wait for 1.5 seconds.", "aaaaaaaaaaaaaaaaaaaaaac",
+            "aaab", "xxxy", "color ab", "colour abcde", "colour a-_0", "Given AB1 and b too", "Given x then x",
+            "GIVEN CASE", "Given a.*", "Given 1.2 [tab]\t", "Given line\nbreak fred", "\uD83D\uDE00 fred", "" };
+
+
+    private void assertSameAsRegex(final PatternMatcher<String> matcher) {
+
+        for (final String pattern : PATTERNS) {
+            matcher.add(Pattern.compile(pattern), pattern);
+        }
+
+        for (final String input : INPUTS) {
+            final List<String> expected = new ArrayList<String>();
+            for (final String pattern : PATTERNS) {
+                if (Pattern.compile(pattern).matcher(input).matches()) {
+                    expected.add(pattern);
+                }
+            }
+            Assert.assertThat("matching " + input, matcher.matchesFor(input), is(expected));
+        }
+    }
+
+
+    @Test
+    public void testAutomatonMatchesTheSamePatternsAsRegex() {
+        assertSameAsRegex(new AutomatonMatcher<String>());
+    }
+
+
+    @Test
+    public void testPrefixIndexMatchesTheSamePatternsAsRegex() {
+        assertSameAsRegex(new PrefixIndexMatcher<String>());
+    }
+
+
+    @Test
+    public void testUnsupportedConstructsAreLeftToRegex() {
+
+        final RegexAutomaton automaton = new RegexAutomaton();
+
+        for (final String supported : Arrays.asList("a(b|c)*d", "[^\"]*", "x{2,}", "(?:a|b)+?", "\\$\\d+$")) {
+            Assert.assertThat(supported, automaton.add(supported, 0), is(true));
+        }
+        for (final String unsupported : Arrays.asList("(\\w)\\1", "(?=a)a", "(?i)a", "a*+", "\\Qa\\E", "\\bword",
+                "[a-z&&[^e]]", "a{100}", "\\p{Alpha}")) {
+            Assert.assertThat(unsupported, automaton.add(unsupported, 0), is(false));
+        }
+    }
+
+
+    @Test
+    public void testMatchersAreSelectedByName() {
+
+        Assert.assertThat(PatternMatchers.<String> newMatcher(null), instanceOf(PrefixIndexMatcher.class));
+        Assert.assertThat(PatternMatchers.<String> newMatcher("automaton"), instanceOf(AutomatonMatcher.class));
+        Assert.assertThat(PatternMatchers.<String> newMatcher(AutomatonMatcher.class.getName()),
+                instanceOf(AutomatonMatcher.class));
+    }
+
+
+    @Test(expected = SubstepsConfigurationException.class)
+    public void testAnUnknownMatcherIsAConfigurationError() {
+        PatternMatchers.newMatcher(String.class.getName());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.model.matcher;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class PrefixIndexMatcherTest {
+
+    @Test
+    public void testLiteralPrefixes() {
+
+        Assert.assertEquals("Given a user called ", PrefixIndexMatcher.literalPrefixOf("Given a user called \"?([^\"]*)\"?"));
+        Assert.assertEquals("patter", PrefixIndexMatcher.literalPrefixOf("^patter.*"));
+        Assert.assertEquals("a.b", PrefixIndexMatcher.literalPrefixOf("a\\.b\\d+"));
+        Assert.assertEquals("colo", PrefixIndexMatcher.literalPrefixOf("colou?r"));
+        Assert.assertEquals("ab", PrefixIndexMatcher.literalPrefixOf("ab+c"));
+        Assert.assertEquals("", PrefixIndexMatcher.literalPrefixOf("Given one|When two"));
+        Assert.assertEquals("Given ", PrefixIndexMatcher.literalPrefixOf("Given (one|two)"));
+        Assert.assertEquals("", PrefixIndexMatcher.literalPrefixOf("(?i)given"));
+    }
+}
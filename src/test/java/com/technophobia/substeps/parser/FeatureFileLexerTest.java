@@ -0,0 +1,65 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.parser;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.technophobia.substeps.parser.FeatureFileToken.Type;
+
+public class FeatureFileLexerTest {
+
+    @Test
+    public void testTokensHaveLineNumbersAndOffsets() {
+
+        final String contents = "# a comment\n" + "Tags: @tag1\r\n" + "Feature: a feature\n" + "\n"
+                + "  Background: bg\n" + "    Given whatever\n" + "Scenario Outline: an outline # comment\n"
+                + "\tGiven a <param>\n" + "  Examples:\n" + "  |param|\n" + "  |1|";
+
+        final List<FeatureFileToken> tokens = new FeatureFileLexer().tokenise(contents);
+
+        Assert.assertThat(tokens.size(), is(9));
+
+        assertToken(tokens.get(0), Type.TAGS, "Tags: @tag1", 2, 12);
+        assertToken(tokens.get(1), Type.FEATURE, "Feature: a feature", 3, 25);
+        assertToken(tokens.get(2), Type.BACKGROUND, "Background: bg", 5, 47);
+        assertToken(tokens.get(3), Type.STEP, "Given whatever", 6, 66);
+        assertToken(tokens.get(4), Type.SCENARIO_OUTLINE, "Scenario Outline: an outline", 7, 81);
+        assertToken(tokens.get(5), Type.STEP, "Given a <param>", 8, 121);
+        assertToken(tokens.get(6), Type.EXAMPLES, "Examples:", 9, 139);
+        assertToken(tokens.get(7), Type.TABLE_ROW, "|param|", 10, 151);
+        assertToken(tokens.get(8), Type.TABLE_ROW, "|1|", 11, 161);
+
+        Assert.assertThat(tokens.get(4).getDirectiveValue(), is("an outline"));
+        Assert.assertThat(contents.substring(tokens.get(5).getOffset()).startsWith("Given a <param>"), is(true));
+    }
+
+
+    private void assertToken(final FeatureFileToken token, final Type type, final String text, final int lineNumber,
+            final int offset) {
+        Assert.assertThat(token.getType(), is(type));
+        Assert.assertThat(token.getText(), is(text));
+        Assert.assertThat(token.getLineNumber(), is(lineNumber));
+        Assert.assertThat(token.getOffset(), is(offset));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.parser;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+import com.technophobia.substeps.model.FeatureFile;
+import com.technophobia.substeps.model.Scenario;
+import com.technophobia.substeps.runner.FeatureFileParser;
+
+public class ParseCacheTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File cacheDir;
+    private File featureFile;
+
+    @Before
+    public void setUp() throws IOException {
+        final File workDir = new File("./target/parse-cache-test");
+        cacheDir = new File(workDir, "cache");
+        if (cacheDir.isDirectory()) {
+            for (final File f : cacheDir.listFiles()) {
+                f.delete();
+            }
+        }
+        workDir.mkdirs();
+
+        featureFile = new File(workDir, "cached.feature");
+        Files.copy(new File("./target/test-classes/features/example2.feature"), featureFile);
+    }
+
+
+    @Test
+    public void testUnchangedFileIsLoadedFromTheCache() {
+
+        final ParseCache cache = new ParseCache(cacheDir);
+        final FeatureFile parsed = new FeatureFileParser().loadFeatureFile(featureFile);
+
+        final String hash = cache.contentHashOf(featureFile);
+        Assert.assertThat(cache.get(featureFile, hash, FeatureFile.class), is(nullValue()));
+
+        cache.put(featureFile, hash, parsed);
+
+        final FeatureFile cached = new ParseCache(cacheDir).get(featureFile, cache.contentHashOf(featureFile),
+                FeatureFile.class);
+
+        Assert.assertThat(cached, is(notNullValue()));
+        Assert.assertThat(cached, is(not(sameInstance(parsed))));
+        Assert.assertThat(cached.getName(), is(parsed.getName()));
+        Assert.assertThat(cached.getSourceFile(), is(parsed.getSourceFile()));
+        Assert.assertThat(cached.getScenarios().size(), is(parsed.getScenarios().size()));
+
+        for (int i = 0; i < parsed.getScenarios().size(); i++) {
+            final Scenario expected = parsed.getScenarios().get(i);
+            final Scenario actual = cached.getScenarios().get(i);
+
+            Assert.assertThat(actual.getDescription(), is(expected.getDescription()));
+            Assert.assertThat(actual.getTags(), is(expected.getTags()));
+            Assert.assertThat(actual.getSteps().size(), is(expected.getSteps().size()));
+            Assert.assertThat(actual.getSteps().get(0).getLine(), is(expected.getSteps().get(0).getLine()));
+        }
+    }
+
+
+    @Test
+    public void testChangedFileIsNotLoadedFromTheCache() throws IOException {
+
+        final ParseCache cache = new ParseCache(cacheDir);
+        final String hash = cache.contentHashOf(featureFile);
+        cache.put(featureFile, hash, new FeatureFileParser().loadFeatureFile(featureFile));
+
+        Files.append("\n# an edit\n", featureFile, UTF8);
+
+        final String newHash = cache.contentHashOf(featureFile);
+        Assert.assertThat(newHash, is(not(hash)));
+        Assert.assertThat(cache.get(featureFile, newHash, FeatureFile.class), is(nullValue()));
+    }
+
+
+    @Test
+    public void testEntryOfAnotherTypeIsNotReturned() {
+
+        final ParseCache cache = new ParseCache(cacheDir);
+        final String hash = cache.contentHashOf(featureFile);
+        cache.put(featureFile, hash, "not a feature");
+
+        Assert.assertThat(cache.get(featureFile, hash, FeatureFile.class), is(nullValue()));
+    }
+
+
+    @Test
+    public void testMissingFileHasNoHash() {
+
+        Assert.assertThat(new ParseCache(cacheDir).contentHashOf(new File(cacheDir, "missing.feature")),
+                is(nullValue()));
+    }
+}
@@ -28,11 +28,18 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 
 import org.junit.Assert;
@@ -40,24 +47,39 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 import com.technophobia.substeps.execution.ExecutionResult;
 import com.technophobia.substeps.execution.Feature;
 import com.technophobia.substeps.execution.ImplementationCache;
+import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.DeferredScenarioNode;
 import com.technophobia.substeps.execution.node.ExecutionNode;
 import com.technophobia.substeps.execution.node.FeatureNode;
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.NodeWithChildren;
 import com.technophobia.substeps.execution.node.OutlineScenarioNode;
 import com.technophobia.substeps.execution.node.OutlineScenarioRowNode;
 import com.technophobia.substeps.execution.node.RootNode;
 import com.technophobia.substeps.execution.node.RootNodeExecutionContext;
 import com.technophobia.substeps.execution.node.ScenarioNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.execution.node.StreamedOutlineScenarioNode;
+import com.technophobia.substeps.execution.node.TaggedNode;
 import com.technophobia.substeps.execution.node.TestBasicScenarioNodeBuilder;
 import com.technophobia.substeps.execution.node.TestFeatureNodeBuilder;
 import com.technophobia.substeps.execution.node.TestOutlineScenarioNodeBuilder;
 import com.technophobia.substeps.execution.node.TestOutlineScenarioRowNodeBuilder;
 import com.technophobia.substeps.execution.node.TestRootNodeBuilder;
+import com.technophobia.substeps.model.Scope;
+import com.technophobia.substeps.model.SubSteps;
 import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
 import com.technophobia.substeps.model.exception.UnimplementedStepException;
+import com.technophobia.substeps.runner.node.RootNodeRunner;
+import com.technophobia.substeps.runner.setupteardown.Annotations.AfterEveryFeature;
+import com.technophobia.substeps.runner.setupteardown.Annotations.AfterEveryScenario;
 import com.technophobia.substeps.runner.setupteardown.Annotations.BeforeAllFeatures;
+import com.technophobia.substeps.runner.setupteardown.Annotations.BeforeEveryFeature;
+import com.technophobia.substeps.runner.setupteardown.Annotations.BeforeEveryScenario;
 import com.technophobia.substeps.runner.setupteardown.SetupAndTearDown;
 import com.technophobia.substeps.steps.TestStepImplementations;
 
@@ -214,6 +236,595 @@ public class ExecutionNodeRunnerTest {
 
     }
 
+    @Test
+    public void testRunChangedOnlyRunsTheAffectedFeatures() throws IOException {
+
+        final File dir = new File("./target/run-changed-test");
+        final File features = new File(dir, "features");
+        final File substeps = new File(dir, "substeps");
+
+        final File one = write(new File(substeps, "one.substeps"),
+                "Define: Given the first substep\n\tGiven something\n");
+        final File two = write(new File(substeps, "two.substeps"),
+                "Define: Given the second substep\n\tWhen an event occurs\n");
+
+        final File a = write(new File(features, "a.feature"),
+                "Feature: A\n\nScenario: uses one\n\tGiven the first substep\n");
+        write(new File(features, "b.feature"), "Feature: B\n\nScenario: uses two\n\tGiven the second substep\n");
+        write(new File(features, "c.feature"), "Feature: C\n\nScenario: uses neither\n\tGiven something\n");
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(features.getPath());
+        executionConfig.setSubStepsFileName(substeps.getPath());
+        executionConfig.setDescription("run changed");
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+        runner.prepareExecutionConfig(executionConfig);
+        Assert.assertThat(runner.run().getChildren().size(), is(3));
+
+        write(two, "Define: Given the second substep\n\tThen bad things happen\n");
+
+        RootNode changed = runner.runChanged(Collections.singletonList(two));
+
+        Assert.assertThat(changed.getChildren().size(), is(1));
+        Assert.assertThat(changed.getChildren().get(0).getDescription(), is("B"));
+        Assert.assertThat(changed.getResult().getResult(), is(ExecutionResult.PASSED));
+        Assert.assertThat(runner.getFailures().isEmpty(), is(true));
+
+        write(a, "Feature: A\n\nScenario: uses one\n\tGiven the first substep\n\n"
+                + "Scenario: and again\n\tGiven the first substep\n");
+
+        changed = runner.runChanged(Collections.singletonList(a));
+
+        Assert.assertThat(changed.getChildren().size(), is(1));
+        Assert.assertThat(changed.getChildren().get(0).getDescription(), is("A"));
+        Assert.assertThat(changed.getChildren().get(0).getChildren().size(), is(2));
+
+        // the full tree has all three features, including the rebuilt ones
+        Assert.assertThat(runner.getRootNode().getChildren().size(), is(3));
+        Assert.assertThat(runner.getRootNode().getChildren().get(0).getChildren().size(), is(2));
+
+        Assert.assertThat(runner.runChanged(Collections.singletonList(one)).getChildren().size(), is(1));
+    }
+
+    @Test
+    public void testRunChangedRebuildsFeaturesWithStepsThatFailedToResolve() throws IOException {
+
+        final File dir = new File("./target/run-changed-unresolved-test");
+        final File features = new File(dir, "features");
+        final File substeps = new File(dir, "substeps");
+
+        final File three = new File(substeps, "three.substeps");
+        three.delete();
+
+        write(new File(substeps, "one.substeps"), "Define: Given the first substep\n\tGiven something\n");
+        write(new File(features, "a.feature"), "Feature: A\n\nScenario: uses one\n\tGiven the first substep\n");
+        write(new File(features, "d.feature"), "Feature: D\n\nScenario: uses three\n\tGiven the third substep\n");
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(features.getPath());
+        executionConfig.setSubStepsFileName(substeps.getPath());
+        executionConfig.setDescription("run changed unresolved");
+        executionConfig.setFastFailParseErrors(false);
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+        runner.prepareExecutionConfig(executionConfig);
+        runner.run();
+        Assert.assertThat(runner.getFailures().size(), is(1));
+
+        write(three, "Define: Given the third substep\n\tGiven something\n");
+
+        final RootNode changed = runner.runChanged(Collections.singletonList(three));
+
+        Assert.assertThat(changed.getChildren().size(), is(1));
+        Assert.assertThat(changed.getChildren().get(0).getDescription(), is("D"));
+        Assert.assertThat(changed.getResult().getResult(), is(ExecutionResult.PASSED));
+    }
+
+    @Test
+    public void testRunChangedResolvesDeferredScenariosAgainstTheFeature() throws IOException {
+
+        final File dir = new File("./target/run-changed-deferred-test");
+        final File features = new File(dir, "features");
+        final File substeps = new File(dir, "substeps");
+
+        final File one = write(new File(substeps, "one.substeps"),
+                "Define: Given the first substep\n\tGiven something\n");
+        write(new File(substeps, "two.substeps"), "Define: Given the second substep <n>\n\tWhen an event occurs\n");
+
+        write(new File(features, "a.feature"), "Feature: A\n\nScenario: uses one\n\tGiven the first substep\n");
+        write(new File(features, "b.feature"), "Feature: B\n\nScenario Outline: uses one in a row\n"
+                + "\tGiven the second substep <n>\n\tGiven the <which>\n\n"
+                + "Examples:\n\t|n|which|\n\t|1|second substep 2|\n\t|2|first substep|\n");
+        write(new File(features, "c.feature"), "Feature: C\n\nScenario: uses two\n\tGiven the second substep 3\n");
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(features.getPath());
+        executionConfig.setSubStepsFileName(substeps.getPath());
+        executionConfig.setDescription("run changed deferred");
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+
+        System.setProperty("deferScenarioBuilding", "true");
+        try {
+            runner.prepareExecutionConfig(executionConfig);
+        } finally {
+            System.clearProperty("deferScenarioBuilding");
+        }
+        runner.run();
+
+        write(one, "Define: Given the first substep\n\tWhen an event occurs\n");
+
+        final RootNode changed = runner.runChanged(Collections.singletonList(one));
+
+        final List<String> rerun = new ArrayList<String>();
+        for (final FeatureNode featureNode : changed.getChildren()) {
+            rerun.add(featureNode.getDescription());
+        }
+        Collections.sort(rerun);
+        Assert.assertThat(rerun, is(Arrays.asList("A", "B")));
+        Assert.assertThat(changed.getResult().getResult(), is(ExecutionResult.PASSED));
+    }
+
+    @Test
+    public void testOutlineWithExternalExamplesIsStreamed() throws IOException {
+
+        final File dir = new File("./target/streamed-outline-test");
+
+        write(new File(dir, "data/rows.csv"), "param\none\ntwo\nthree\n");
+        write(new File(dir, "streamed.feature"), "Feature: streamed\n\nScenario Outline: from a file\n"
+                + "\tThen method with param <param>\n\nExamples: data/rows.csv\n");
+        write(new File(dir, "streamed.substeps"), "Define: Given an unused substep\n\tGiven something\n");
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(new File(dir, "streamed.feature").getPath());
+        executionConfig.setSubStepsFileName(new File(dir, "streamed.substeps").getPath());
+        executionConfig.setDescription("streamed outline");
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final IExecutionListener notifier = mock(IExecutionListener.class);
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+        runner.addNotifier(notifier);
+        runner.prepareExecutionConfig(executionConfig);
+        final RootNode rootNode = runner.run();
+
+        final ScenarioNode<?> outline = rootNode.getChildren().get(0).getChildren().get(0);
+
+        Assert.assertThat(outline, instanceOf(StreamedOutlineScenarioNode.class));
+        Assert.assertThat(outline.getChildren().isEmpty(), is(true));
+        Assert.assertThat(outline.getResult().getResult(), is(ExecutionResult.PASSED));
+        Assert.assertThat(runner.getFailures().isEmpty(), is(true));
+
+        verify(notifier, times(3)).onNodeFinished(argThat(any(OutlineScenarioRowNode.class)));
+    }
+
+    @Test
+    public void testDeferredScenariosAreBuiltWhenRun() throws IOException {
+
+        final File dir = new File("./target/deferred-scenario-test");
+
+        write(new File(dir, "deferred.feature"), "Feature: deferred\n\nScenario: runs\n\tGiven something\n"
+                + "\tThen method with param value\n\nScenario: can't be built\n\tGiven something missing\n");
+        write(new File(dir, "deferred.substeps"), "Define: Given an unused substep\n\tGiven something\n");
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(new File(dir, "deferred.feature").getPath());
+        executionConfig.setSubStepsFileName(new File(dir, "deferred.substeps").getPath());
+        executionConfig.setDescription("deferred scenarios");
+        executionConfig.setFastFailParseErrors(false);
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final IExecutionListener notifier = mock(IExecutionListener.class);
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+        runner.addNotifier(notifier);
+
+        System.setProperty("deferScenarioBuilding", "true");
+        try {
+            runner.prepareExecutionConfig(executionConfig);
+        } finally {
+            System.clearProperty("deferScenarioBuilding");
+        }
+
+        final RootNode rootNode = runner.run();
+
+        final ScenarioNode<?> runs = rootNode.getChildren().get(0).getChildren().get(0);
+        final ScenarioNode<?> cantBeBuilt = rootNode.getChildren().get(0).getChildren().get(1);
+
+        Assert.assertThat(runs, instanceOf(DeferredScenarioNode.class));
+        Assert.assertThat(runs.getChildren().isEmpty(), is(true));
+        Assert.assertThat(runs.getResult().getResult(), is(ExecutionResult.PASSED));
+        Assert.assertThat(cantBeBuilt.getResult().getResult(), is(ExecutionResult.FAILED));
+        Assert.assertThat(runner.getFailures().size(), is(1));
+
+        verify(notifier, times(2)).onNodeFinished(argThat(any(StepImplementationNode.class)));
+    }
+
+    @Test(expected = SubstepsConfigurationException.class)
+    public void testDeferredScenariosThatCantBeBuiltFailFastWhenPrepared() throws IOException {
+
+        final File dir = new File("./target/deferred-fast-fail-test");
+
+        write(new File(dir, "deferred.feature"), "Feature: deferred\n\nScenario: runs\n\tGiven something\n\n"
+                + "Scenario: can't be built\n\tGiven something missing\n");
+        write(new File(dir, "deferred.substeps"), "Define: Given an unused substep\n\tGiven something\n");
+
+        // fast fail is left on
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(new File(dir, "deferred.feature").getPath());
+        executionConfig.setSubStepsFileName(new File(dir, "deferred.substeps").getPath());
+        executionConfig.setDescription("deferred fast fail");
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+
+        System.setProperty("deferScenarioBuilding", "true");
+        try {
+            runner.prepareExecutionConfig(executionConfig);
+        } finally {
+            System.clearProperty("deferScenarioBuilding");
+        }
+    }
+
+    @Test
+    public void testExecutionPlanRunsWithoutRebuildingTheTree() throws IOException {
+
+        final File dir = new File("./target/execution-plan-test");
+
+        write(new File(dir, "plan.feature"), "Tags: planned\nFeature: planned\n\nBackground:\n\tGiven something\n\n"
+                + "Scenario: substeps\n\tGiven a substep with param value\n\tGiven a step with a table argument\n"
+                + "\t| name | value |\n\t| one | 1 |\n\n"
+                + "Scenario Outline: outline\n\tThen method with param <param>\n\nExamples:\n\t| param |\n"
+                + "\t| first |\n\t| second |\n\n"
+                + "Scenario: can't be built\n\tGiven something missing\n");
+        write(new File(dir, "plan.substeps"), "Define: Given a substep with param <param>\n"
+                + "\tThen another method with param <param>\n");
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(new File(dir, "plan.feature").getPath());
+        executionConfig.setSubStepsFileName(new File(dir, "plan.substeps").getPath());
+        executionConfig.setDescription("execution plan");
+        executionConfig.setFastFailParseErrors(false);
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final File planFile = new File(dir, "plan.bin");
+        planFile.delete();
+
+        final ExecutionNodeRunner builtRunner = new ExecutionNodeRunner();
+        System.setProperty("writeExecutionPlan", planFile.getPath());
+        final RootNode built;
+        try {
+            built = builtRunner.prepareExecutionConfig(executionConfig);
+        } finally {
+            System.clearProperty("writeExecutionPlan");
+        }
+
+        Assert.assertTrue(planFile.exists());
+        for (final String name : dir.list()) {
+            Assert.assertFalse(name, name.endsWith(".tmp"));
+        }
+
+        final IExecutionListener notifier = mock(IExecutionListener.class);
+
+        final ExecutionNodeRunner plannedRunner = new ExecutionNodeRunner();
+        plannedRunner.addNotifier(notifier);
+        final RootNode planned = plannedRunner.prepareExecutionPlan(executionConfig, planFile);
+
+        Assert.assertThat(describe(planned), is(describe(built)));
+
+        // the tags are read back as the same interned sets
+        Assert.assertSame(built.getChildren().get(0).getTags(), planned.getChildren().get(0).getTags());
+        Assert.assertSame(built.getChildren().get(0).getChildren().get(0).getTags(), planned.getChildren().get(0)
+                .getChildren().get(0).getTags());
+
+        plannedRunner.run();
+
+        Assert.assertThat(planned.getChildren().get(0).getChildren().get(0).getResult().getResult(),
+                is(ExecutionResult.PASSED));
+        Assert.assertThat(planned.getChildren().get(0).getChildren().get(1).getResult().getResult(),
+                is(ExecutionResult.PASSED));
+        Assert.assertThat(plannedRunner.getFailures().size(), is(1));
+
+        // the background of each of the three scenarios, substep, table and two outline rows
+        verify(notifier, times(7)).onNodeFinished(argThat(any(StepImplementationNode.class)));
+    }
+
+    @Test
+    public void testFeaturesCanBeRunInParallel() throws IOException {
+
+        final File dir = new File("./target/parallel-feature-test");
+
+        for (int i = 1; i <= 4; i++) {
+            write(new File(dir, "feature" + i + ".feature"), "Feature: feature " + i + "\n\n"
+                    + "Scenario: first\n\tGiven something\n\tThen method with param " + i + "\n\n"
+                    + "Scenario: second\n\tGiven something\n"
+                    + (i == 3 ? "\tGiven something missing\n" : "\tWhatever yee hah\n"));
+        }
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(dir.getPath());
+        executionConfig.setDescription("parallel features");
+        executionConfig.setFastFailParseErrors(false);
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        // every node should be finished by the same thread that started it,
+        // after it was started
+        final Map<Long, Thread> startedBy = new HashMap<Long, Thread>();
+        final List<String> misordered = new ArrayList<String>();
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+        runner.addNotifier(new IExecutionListener() {
+
+            public void onNodeStarted(final IExecutionNode node) {
+                startedBy.put(Long.valueOf(node.getId()), Thread.currentThread());
+            }
+
+            public void onNodeFinished(final IExecutionNode node) {
+                checkStartedByThisThread(node);
+            }
+
+            public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+                checkStartedByThisThread(node);
+            }
+
+            public void onNodeIgnored(final IExecutionNode node) {
+                // no op
+            }
+
+            private void checkStartedByThisThread(final IExecutionNode node) {
+                if (startedBy.get(Long.valueOf(node.getId())) != Thread.currentThread()) {
+                    misordered.add(node.getDescription());
+                }
+            }
+        });
+
+        System.setProperty("parallelFeatureThreads", "3");
+        try {
+            runner.prepareExecutionConfig(executionConfig);
+        } finally {
+            System.clearProperty("parallelFeatureThreads");
+        }
+
+        final RootNode rootNode = runner.run();
+
+        Assert.assertThat(misordered, is(Collections.<String> emptyList()));
+        Assert.assertThat(rootNode.getChildren().size(), is(4));
+
+        for (final FeatureNode featureNode : rootNode.getChildren()) {
+            final ExecutionResult expected = featureNode.getDescription().equals("feature 3") ? ExecutionResult.FAILED
+                    : ExecutionResult.PASSED;
+            Assert.assertThat(featureNode.getDescription(), featureNode.getResult().getResult(), is(expected));
+        }
+
+        Assert.assertThat(rootNode.getResult().getResult(), is(ExecutionResult.FAILED));
+        Assert.assertThat(runner.getFailures().size(), is(1));
+        Assert.assertThat(runner.getFailures().get(0).getExeccutionNode().getDescription(), is("second"));
+    }
+
+    @Test
+    public void testSuiteSetupIsVisibleToTheStepsOfParallelFeatures() throws IOException {
+
+        final File dir = new File("./target/parallel-suite-setup-test");
+
+        for (int i = 1; i <= 3; i++) {
+            write(new File(dir, "feature" + i + ".feature"), "Feature: feature " + i + "\n\n"
+                    + "Scenario: uses the suite setup\n\tGiven the suite has been set up\n");
+        }
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(dir.getPath());
+        executionConfig.setDescription("parallel suite setup");
+        executionConfig.setStepImplementationClasses(Collections.<Class<?>> singletonList(SuiteSetupSteps.class));
+        executionConfig.setInitialisationClasses(new Class<?>[] { SuiteSetupSteps.class });
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+
+        System.setProperty("parallelFeatureThreads", "3");
+        try {
+            runner.prepareExecutionConfig(executionConfig);
+        } finally {
+            System.clearProperty("parallelFeatureThreads");
+        }
+
+        final RootNode rootNode = runner.run();
+
+        Assert.assertThat(runner.getFailures().size(), is(0));
+        Assert.assertThat(rootNode.getResult().getResult(), is(ExecutionResult.PASSED));
+    }
+
+    public static class SuiteSetupSteps {
+
+        private Object driver;
+
+        @BeforeAllFeatures
+        public void startDriver() {
+            driver = new Object();
+            ExecutionContext.put(Scope.SUITE, "driver", driver);
+        }
+
+        @SubSteps.Step("Given the suite has been set up")
+        public void suiteHasBeenSetUp() {
+            Assert.assertNotNull(driver);
+            Assert.assertSame(driver, ExecutionContext.get(Scope.SUITE, "driver"));
+        }
+    }
+
+    @Test
+    public void testScenariosOfAParallelTaggedFeatureRunConcurrently() throws IOException {
+
+        runParallelScenarios("./target/parallel-scenario-test", false);
+
+        Assert.assertThat(ParallelScenarioSetup.scenarioThreads.size(), is(8));
+        Assert.assertFalse(ParallelScenarioSetup.scenarioThreads.contains(Thread.currentThread()));
+        Assert.assertTrue(new HashSet<Thread>(ParallelScenarioSetup.scenarioThreads).size() > 1);
+
+        // exactly once around the batch
+        Assert.assertThat(ParallelScenarioSetup.featureThreads, is(Arrays.asList(Thread.currentThread(),
+                Thread.currentThread())));
+    }
+
+    @Test
+    public void testTheFeatureIsSetUpOnEachWorkerWhenAsked() throws IOException {
+
+        runParallelScenarios("./target/parallel-scenario-feature-setup-test", true);
+
+        final Set<Thread> workers = new HashSet<Thread>(ParallelScenarioSetup.scenarioThreads);
+        Assert.assertTrue(workers.size() > 1);
+
+        // around the feature, and around each worker's scenarios
+        final List<Thread> featureThreads = ParallelScenarioSetup.featureThreads;
+        Assert.assertThat(featureThreads.size(), is(2 + 2 * workers.size()));
+        Assert.assertSame(Thread.currentThread(), featureThreads.get(0));
+        Assert.assertSame(Thread.currentThread(), featureThreads.get(featureThreads.size() - 1));
+        Assert.assertTrue(featureThreads.containsAll(workers));
+    }
+
+    private void runParallelScenarios(final String dirName, final boolean featureSetupPerWorker)
+            throws IOException {
+
+        final File dir = new File(dirName);
+
+        final StringBuilder feature = new StringBuilder("Tags: parallel\nFeature: parallel scenarios\n");
+        for (int i = 1; i <= 4; i++) {
+            feature.append("\nScenario: scenario ").append(i).append("\n\tGiven something\n");
+        }
+        write(new File(dir, "parallel.feature"), feature.toString());
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(dir.getPath());
+        executionConfig.setDescription("parallel scenarios");
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+        final RootNode rootNode = runner.prepareExecutionConfig(executionConfig);
+
+        ParallelScenarioSetup.reset();
+
+        final SetupAndTearDown setupAndTearDown = new SetupAndTearDown(
+                new Class<?>[] { ParallelScenarioSetup.class }, new ImplementationCache());
+        final RootNodeExecutionContext context = new RootNodeExecutionContext(mock(INotificationDistributor.class),
+                Lists.<SubstepExecutionFailure> newArrayList(), setupAndTearDown, null, new ImplementationCache());
+
+        final RootNodeRunner rootNodeRunner = new RootNodeRunner();
+        rootNodeRunner.setParallelScenarios("parallel", 4, featureSetupPerWorker);
+        rootNodeRunner.run(rootNode, context);
+
+        Assert.assertThat(rootNode.getResult().getResult(), is(ExecutionResult.PASSED));
+        Assert.assertThat(context.getFailures().size(), is(0));
+    }
+
+    @Test
+    public void testScenariosOfAParallelTaggedFeatureRunInTurnUnlessTheTagIsGiven() throws IOException {
+
+        final File dir = new File("./target/parallel-scenario-opt-in-test");
+
+        write(new File(dir, "parallel.feature"), "Tags: parallel\nFeature: parallel scenarios\n"
+                + "\nScenario: scenario 1\n\tGiven something\n" + "\nScenario: scenario 2\n\tGiven something\n");
+
+        final SubstepsExecutionConfig executionConfig = new SubstepsExecutionConfig();
+        executionConfig.setFeatureFile(dir.getPath());
+        executionConfig.setDescription("parallel scenarios opt in");
+        executionConfig.setStepImplementationClasses(Collections
+                .<Class<?>> singletonList(TestStepImplementations.class));
+        executionConfig.setInitialisationClasses(new Class<?>[] { ParallelScenarioSetup.class });
+
+        ParallelScenarioSetup.reset();
+
+        final ExecutionNodeRunner runner = new ExecutionNodeRunner();
+        runner.prepareExecutionConfig(executionConfig);
+        final RootNode rootNode = runner.run();
+
+        Assert.assertThat(rootNode.getResult().getResult(), is(ExecutionResult.PASSED));
+        Assert.assertThat(new HashSet<Thread>(ParallelScenarioSetup.scenarioThreads),
+                is(Collections.singleton(Thread.currentThread())));
+    }
+
+    public static class ParallelScenarioSetup {
+
+        static List<Thread> featureThreads;
+        static List<Thread> scenarioThreads;
+
+        static void reset() {
+            featureThreads = Collections.synchronizedList(new ArrayList<Thread>());
+            scenarioThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        }
+
+        @BeforeEveryFeature
+        public void beforeFeature() {
+            featureThreads.add(Thread.currentThread());
+        }
+
+        @AfterEveryFeature
+        public void afterFeature() {
+            featureThreads.add(Thread.currentThread());
+        }
+
+        @BeforeEveryScenario
+        public void beforeScenario() throws InterruptedException {
+            scenarioThreads.add(Thread.currentThread());
+            // long enough for the other workers to pick up a scenario
+            Thread.sleep(100);
+        }
+
+        @AfterEveryScenario
+        public void afterScenario() {
+            scenarioThreads.add(Thread.currentThread());
+        }
+    }
+
+    private static String describe(final IExecutionNode node) {
+
+        final StringBuilder buf = new StringBuilder();
+        describe(node, buf);
+        return buf.toString();
+    }
+
+    private static void describe(final IExecutionNode node, final StringBuilder buf) {
+
+        buf.append(node.getClass().getSimpleName()).append(" [").append(node.getDescription()).append(", ")
+                .append(node.getDepth()).append(", ").append(node.getLine()).append(", ")
+                .append(node.getFileUri()).append(":").append(node.getLineNumber()).append(", ")
+                .append(node.hasError());
+
+        if (node instanceof TaggedNode) {
+            buf.append(", ").append(((TaggedNode) node).getTags());
+        }
+        if (node instanceof StepImplementationNode) {
+            final StepImplementationNode stepNode = (StepImplementationNode) node;
+            buf.append(", ").append(stepNode.getTargetMethod()).append(", ")
+                    .append(Arrays.deepToString(stepNode.getMethodArgs()));
+        }
+        buf.append("]\n");
+
+        if (node instanceof BasicScenarioNode && ((BasicScenarioNode) node).getBackground() != null) {
+            describe(((BasicScenarioNode) node).getBackground(), buf);
+        }
+        if (node instanceof NodeWithChildren) {
+            for (final Object child : ((NodeWithChildren<?>) node).getChildren()) {
+                describe((IExecutionNode) child, buf);
+            }
+        }
+    }
+
+    private File write(final File f, final String contents) throws IOException {
+        f.getParentFile().mkdirs();
+        Files.write(contents, f, Charset.forName("UTF-8"));
+        return f;
+    }
+
     /**
      * @param feature
      * @param tags
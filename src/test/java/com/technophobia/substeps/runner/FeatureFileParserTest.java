@@ -32,6 +32,7 @@ import org.junit.Test;
 import com.technophobia.substeps.model.FeatureFile;
 import com.technophobia.substeps.model.Scenario;
 import com.technophobia.substeps.model.Step;
+import com.technophobia.substeps.model.exception.SubstepsConfigurationException;
 
 /**
  * 
@@ -80,6 +81,9 @@ public class FeatureFileParserTest {
 
         Assert.assertThat(sc1.getSourceStartLineNumber(), is(13));
 
+        Assert.assertThat(sc1.getBackground().getLineNumber(), is(9));
+        Assert.assertThat(sc1.getBackground().getSteps().get(0).getSourceLineNumber(), is(10));
+
         final List<Step> steps = sc1.getSteps();
         Assert.assertThat(steps.size(), is(7));
 
@@ -169,6 +173,9 @@ public class FeatureFileParserTest {
         Assert.assertThat(sc1.getBackground().getSteps().size(), is(1));
         Assert.assertThat(sc1.getSteps().size(), is(4));
 
+        // the scenarios share the one background
+        Assert.assertSame(sc1.getBackground(), ff.getScenarios().get(3).getBackground());
+
         final Step withEmailAddress = ff.getScenarios().get(0).getSteps().get(0);
         Assert.assertThat(withEmailAddress.getLine(), is("Given something with an@emailaddress.com"));
 
@@ -200,7 +207,16 @@ public class FeatureFileParserTest {
     }
 
 
-    @Test
+    @Test(expected = SubstepsConfigurationException.class)
+    public void testAnExamplesRowWithMoreValuesThanHeadingsFailsToParse() {
+
+        final FeatureFileParser parser = new FeatureFileParser();
+
+        parser.loadFeatureFile(new File("./target/test-classes/features/extra_example_values.feature"));
+    }
+
+
+        @Test
     public void testCommentEscaping() {
 
         final String line1 = "hello this is a test with no comments";
@@ -0,0 +1,55 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.technophobia.substeps.model.FeatureFile;
+import com.technophobia.substeps.model.Syntax;
+
+public class TestParametersTest {
+
+    @Test
+    public void testParallelLoadingGivesTheSameFeaturesInTheSameOrder() {
+
+        final TestParameters sequential = new TestParameters(new TagManager(null), new Syntax(),
+                "./target/test-classes/features");
+        sequential.init();
+
+        final TestParameters parallel = new TestParameters(new TagManager(null), new Syntax(),
+                "./target/test-classes/features");
+        parallel.setParallelLoading(true);
+        parallel.init();
+
+        final List<FeatureFile> expected = sequential.getFeatureFileList();
+        final List<FeatureFile> actual = parallel.getFeatureFileList();
+
+        Assert.assertThat(actual.size(), is(expected.size()));
+
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertThat(actual.get(i).getSourceFile(), is(expected.get(i).getSourceFile()));
+            Assert.assertThat(actual.get(i).getScenarios().size(), is(expected.get(i).getScenarios().size()));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner.builder;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.NodeWithChildren;
+import com.technophobia.substeps.execution.node.RootNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.model.FeatureFile;
+import com.technophobia.substeps.model.Scenario;
+import com.technophobia.substeps.model.Step;
+import com.technophobia.substeps.model.StepImplementation;
+import com.technophobia.substeps.model.StepUsageTracker;
+import com.technophobia.substeps.model.Syntax;
+import com.technophobia.substeps.runner.TagManager;
+import com.technophobia.substeps.runner.TestParameters;
+import com.technophobia.substeps.runner.syntax.SyntaxBuilder;
+import com.technophobia.substeps.stepimplementations.MockStepImplementations;
+
+public class ExecutionNodeTreeBuilderTest {
+
+    @Test
+    public void parallelBuildingGivesTheSameTreeWithTheSameNodeNumbering() {
+
+        final List<String> sequential = describe(build(false).getRootNode());
+        final List<String> parallel = describe(build(true).getRootNode());
+
+        Assert.assertThat(parallel, is(sequential));
+    }
+
+
+    @Test
+    public void buildingLeavesTheStepsUntouched() {
+
+        final Built built = build(true);
+
+        for (final FeatureFile featureFile : built.parameters.getFeatureFileList()) {
+            for (final Scenario scenario : featureFile.getScenarios()) {
+                if (scenario.hasSteps()) {
+                    for (final Step step : scenario.getSteps()) {
+                        Assert.assertThat(step.getParameterLine(), is(step.getLine()));
+                        Assert.assertThat(step.getSubstitutedInlineTable(), is(step.getInlineTable()));
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void backgroundsAreResolvedOnceAndSharedBetweenScenarios() {
+
+        final TestParameters parameters = build(false).parameters;
+
+        FeatureFile allFeatures = null;
+        for (final FeatureFile featureFile : parameters.getFeatureFileList()) {
+            if (featureFile.getSourceFile().getName().equals("allFeatures.feature")) {
+                allFeatures = featureFile;
+            }
+        }
+
+        final Scenario first = allFeatures.getScenarios().get(0);
+        final Scenario second = allFeatures.getScenarios().get(2);
+
+        final SubstepNodeBuilder builder = new SubstepNodeBuilder(parameters);
+
+        final SubstepNodeBuilder.SubstepsPlan firstPlan = builder.planSubsteps(first.getDescription(), first
+                .getBackground().getSteps(), parameters.getSyntax().getSubStepsMap(), null, null, true);
+        final SubstepNodeBuilder.SubstepsPlan secondPlan = builder.planSubsteps(second.getDescription(), second
+                .getBackground().getSteps(), parameters.getSyntax().getSubStepsMap(), null, null, true);
+
+        Assert.assertSame(firstPlan, secondPlan);
+
+        // but each gets its own nodes
+        Assert.assertNotSame(builder.createSubstepNode(firstPlan, first.getTags(), 3),
+                builder.createSubstepNode(secondPlan, second.getTags(), 3));
+    }
+
+
+    @Test
+    public void nodesMadeFromASharedPlanGetTheirOwnArguments() {
+
+        final List<IExecutionNode> nodes = new ArrayList<IExecutionNode>();
+        collect(build(false).getRootNode(), nodes);
+
+        final Set<Object> seen = Sets.newIdentityHashSet();
+        int withArgs = 0;
+
+        for (final IExecutionNode node : nodes) {
+            if (node instanceof StepImplementationNode) {
+                final Object[] args = ((StepImplementationNode) node).getMethodArgs();
+                if (args != null) {
+                    withArgs++;
+                    Assert.assertTrue(seen.add(args));
+                    for (final Object arg : args) {
+                        if (arg instanceof List<?>) {
+                            Assert.assertTrue(seen.add(arg));
+                        }
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(withArgs > 1);
+    }
+
+
+    @Test
+    public void usagesAreRecordedForStepsMadeFromASharedPlan() {
+
+        final Built built = build(false, StepUsageTracker.Mode.FULL);
+        final StepUsageTracker tracker = built.parameters.getSyntax().getStepUsageTracker();
+
+        final List<IExecutionNode> nodes = new ArrayList<IExecutionNode>();
+        collect(built.getRootNode(), nodes);
+
+        final Map<Method, Integer> nodesByMethod = new HashMap<Method, Integer>();
+        for (final IExecutionNode node : nodes) {
+            if (node instanceof StepImplementationNode) {
+                final Method method = ((StepImplementationNode) node).getTargetMethod();
+                final Integer count = nodesByMethod.get(method);
+                nodesByMethod.put(method, Integer.valueOf(count != null ? count.intValue() + 1 : 1));
+            }
+        }
+
+        final Map<Method, Integer> usagesByMethod = new HashMap<Method, Integer>();
+        for (final StepImplementation impl : built.parameters.getSyntax().getStepImplementations()) {
+            Assert.assertThat(tracker.getUsages(impl).size(), is(tracker.getCount(impl)));
+
+            // implementations are tracked by method
+            usagesByMethod.put(impl.getMethod(), Integer.valueOf(tracker.getCount(impl)));
+        }
+
+        // every node was looked up at least once, lookups for steps that
+        // failed to build aren't in the tree
+        for (final Map.Entry<Method, Integer> e : nodesByMethod.entrySet()) {
+            Assert.assertTrue(e.getKey().getName(), usagesByMethod.get(e.getKey()).intValue() >= e.getValue()
+                    .intValue());
+        }
+    }
+
+
+    private Built build(final boolean parallel) {
+
+        return build(parallel, StepUsageTracker.Mode.COUNT);
+    }
+
+
+    private Built build(final boolean parallel, final StepUsageTracker.Mode stepUsageTracking) {
+
+        final Syntax syntax = SyntaxBuilder.buildSyntax(
+                Collections.<Class<?>> singletonList(MockStepImplementations.class), new File(
+                        "./target/test-classes/substeps/allFeatures.substeps"));
+        syntax.getStepUsageTracker().setMode(stepUsageTracking);
+
+        final TestParameters parameters = new TestParameters(new TagManager(null), syntax,
+                "./target/test-classes/features");
+        parameters.setFailParseErrorsImmediately(false);
+        parameters.setParallelTreeBuilding(parallel);
+        parameters.init();
+
+        return new Built(parameters, new ExecutionNodeTreeBuilder(parameters).buildExecutionNodeTree("test"));
+    }
+
+
+    /**
+     * @return a line for each node in the tree, the node ids are given
+     *         relative to the first node created
+     */
+    private static List<String> describe(final RootNode rootNode) {
+
+        final List<IExecutionNode> nodes = new ArrayList<IExecutionNode>();
+        collect(rootNode, nodes);
+
+        long firstId = Long.MAX_VALUE;
+        for (final IExecutionNode node : nodes) {
+            firstId = Math.min(firstId, node.getId());
+        }
+
+        final List<String> description = new ArrayList<String>();
+        for (final IExecutionNode node : nodes) {
+
+            final StringBuilder buf = new StringBuilder();
+            buf.append(node.getId() - firstId).append(' ').append(node.getClass().getSimpleName()).append(' ')
+                    .append(node.getDepth()).append(' ').append(node.getLine()).append(' ')
+                    .append(node.getDescription()).append(' ').append(node.getResult().getResult());
+
+            if (node instanceof StepImplementationNode) {
+                buf.append(' ').append(Arrays.deepToString(((StepImplementationNode) node).getMethodArgs()));
+            }
+            description.add(buf.toString());
+        }
+        return description;
+    }
+
+
+    private static void collect(final IExecutionNode node, final List<IExecutionNode> nodes) {
+
+        nodes.add(node);
+
+        if (node instanceof BasicScenarioNode && ((BasicScenarioNode) node).getBackground() != null) {
+            collect(((BasicScenarioNode) node).getBackground(), nodes);
+        }
+
+        if (node instanceof NodeWithChildren<?>) {
+            for (final Object child : ((NodeWithChildren<?>) node).getChildren()) {
+                collect((IExecutionNode) child, nodes);
+            }
+        }
+    }
+
+    private static class Built {
+
+        private final TestParameters parameters;
+        private final RootNode rootNode;
+
+
+        Built(final TestParameters parameters, final RootNode rootNode) {
+            this.parameters = parameters;
+            this.rootNode = rootNode;
+        }
+
+
+        RootNode getRootNode() {
+            return this.rootNode;
+        }
+    }
+}
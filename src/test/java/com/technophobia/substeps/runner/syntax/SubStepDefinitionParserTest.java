@@ -24,20 +24,27 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import com.google.common.io.Files;
 import com.technophobia.substeps.model.ParentStep;
 import com.technophobia.substeps.model.PatternMap;
 import com.technophobia.substeps.model.exception.SubstepsParsingException;
+import com.technophobia.substeps.parser.ParseCache;
 
 public class SubStepDefinitionParserTest {
 
@@ -63,6 +70,81 @@ public class SubStepDefinitionParserTest {
         verify(this.errorReporter).reportSubstepsError(argThat(is(any(SubstepsParsingException.class))));
     }
 
+    @Test
+    public void shouldReportDuplicateDefinitionLoadedFromTheParseCache() {
+
+        final File substeps = new File(
+                "./target/test-classes/com/technophobia/substeps/runner/syntax/duplicate-definition.substeps");
+        final ParseCache parseCache = new ParseCache(new File("./target/substeps-parse-cache-test"));
+
+        // the first parse populates the cache, the second is served from it
+        final SubStepDefinitionParser first = new SubStepDefinitionParser(DO_NOT_FAIL_ON_DUPLICATE_SUBSTEPS,
+                mock(SyntaxErrorReporter.class));
+        first.setParseCache(parseCache);
+        first.parseSubStepFile(substeps);
+
+        this.parser = new SubStepDefinitionParser(DO_NOT_FAIL_ON_DUPLICATE_SUBSTEPS, this.errorReporter);
+        this.parser.setParseCache(parseCache);
+        final PatternMap<ParentStep> substepDefs = this.parser.loadSubSteps(substeps);
+
+        verify(this.errorReporter).reportSubstepsError(argThat(is(any(SubstepsParsingException.class))));
+        Assert.assertThat(substepDefs.get("something else"), hasSize(1));
+    }
+
+    @Test
+    public void parallelLoadingShouldMergeAndReportDuplicatesInFileOrder() {
+
+        final SyntaxErrorReporter sequentialReporter = mock(SyntaxErrorReporter.class);
+        final SubStepDefinitionParser sequential = new SubStepDefinitionParser(DO_NOT_FAIL_ON_DUPLICATE_SUBSTEPS,
+                sequentialReporter);
+        sequential.setParallelLoading(false);
+        final PatternMap<ParentStep> expected = sequential.loadSubSteps(new File("./target/test-classes/substeps"));
+
+        final SyntaxErrorReporter parallelReporter = mock(SyntaxErrorReporter.class);
+        final SubStepDefinitionParser parallel = new SubStepDefinitionParser(DO_NOT_FAIL_ON_DUPLICATE_SUBSTEPS,
+                parallelReporter);
+        parallel.setParallelLoading(true);
+        final PatternMap<ParentStep> actual = parallel.loadSubSteps(new File("./target/test-classes/substeps"));
+
+        Assert.assertThat(actual.size(), is(expected.size()));
+        for (final ParentStep parentStep : expected.values()) {
+            final String pattern = parentStep.getParent().getPattern();
+            Assert.assertThat(actual.getValueForPattern(pattern).getSubStepFile(), is(parentStep.getSubStepFile()));
+        }
+
+        final ArgumentCaptor<SubstepsParsingException> expectedErrors = ArgumentCaptor
+                .forClass(SubstepsParsingException.class);
+        verify(sequentialReporter, atLeastOnce()).reportSubstepsError(expectedErrors.capture());
+
+        final ArgumentCaptor<SubstepsParsingException> actualErrors = ArgumentCaptor
+                .forClass(SubstepsParsingException.class);
+        verify(parallelReporter, times(expectedErrors.getAllValues().size())).reportSubstepsError(
+                actualErrors.capture());
+
+        for (int i = 0; i < expectedErrors.getAllValues().size(); i++) {
+            Assert.assertThat(actualErrors.getAllValues().get(i).getMessage(), is(expectedErrors.getAllValues().get(i)
+                    .getMessage()));
+        }
+    }
+
+    @Test
+    public void loadingAgainShouldReadFilesThatHaveChanged() throws IOException {
+
+        final File substeps = new File("./target/substeps-reload-test/reload.substeps");
+        substeps.getParentFile().mkdirs();
+
+        this.parser = new SubStepDefinitionParser(FAIL_ON_DUPLICATE_SUBSTEPS, this.errorReporter);
+
+        Files.write("Define: Given the first definition\n\tGiven something\n", substeps, Charset.forName("UTF-8"));
+        Assert.assertTrue(this.parser.loadSubSteps(substeps).containsPattern("Given the first definition"));
+
+        Files.write("Define: Given the second definition\n\tGiven something\n", substeps, Charset.forName("UTF-8"));
+        final PatternMap<ParentStep> reloaded = this.parser.loadSubSteps(substeps);
+
+        Assert.assertTrue(reloaded.containsPattern("Given the second definition"));
+        Assert.assertFalse(reloaded.containsPattern("Given the first definition"));
+    }
+
     @Test
     public void shouldReportEmptyDefinition() {
         this.parser = new SubStepDefinitionParser(DO_NOT_FAIL_ON_DUPLICATE_SUBSTEPS, this.errorReporter);
@@ -0,0 +1,150 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.runner.syntax.validation;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.technophobia.substeps.model.FeatureFile;
+import com.technophobia.substeps.model.ParentStep;
+import com.technophobia.substeps.model.Syntax;
+import com.technophobia.substeps.model.exception.StepImplementationException;
+import com.technophobia.substeps.model.exception.SubstepsParsingException;
+import com.technophobia.substeps.runner.syntax.ClassAnalyser;
+import com.technophobia.substeps.runner.syntax.SyntaxBuilder;
+import com.technophobia.substeps.runner.syntax.SyntaxErrorReporter;
+import com.technophobia.substeps.runner.syntax.validation.fake.FakeSyntaxErrorReporter;
+
+public class ParallelSyntaxValidatorTest {
+
+    private static final String FEATURE_PATH = "./target/test-classes/features/";
+    private static final String SUBSTEPS_PATH = "./target/test-classes/substeps/";
+
+
+    @Test
+    public void errorsAreReportedInTheSameOrderHoweverManyThreadsAreUsed() {
+
+        final List<String> sequential = validate(1, new File(FEATURE_PATH), new File(SUBSTEPS_PATH, "error.substeps"));
+        final List<String> parallel = validate(4, new File(FEATURE_PATH), new File(SUBSTEPS_PATH, "error.substeps"));
+
+        assertThat(parallel, is(sequential));
+        assertThat(Boolean.valueOf(parallel.isEmpty()), is(Boolean.FALSE));
+    }
+
+
+    @Test
+    public void filesAreValidatedInPathOrder() {
+
+        final List<String> errors = validate(4, new File(SUBSTEPS_PATH, "error.substeps"), new File(FEATURE_PATH,
+                "error.feature"));
+
+        assertThat(errors, is(Arrays.asList("error.feature:6 Given step 1", "error.feature:7 Given step 2",
+                "error.substeps:5 SingleWord", "error.substeps:6 Test_Then something else has happened",
+                "error.substeps:9 Test_Then something has happened")));
+    }
+
+
+    @Test
+    public void theErrorsOfEveryFileAreReportedBeforeAFailureIsRethrown() {
+
+        final SyntaxAwareStepValidator delegate = new SyntaxAwareStepValidator(SyntaxBuilder.buildSyntax(
+                Collections.<Class<?>> emptyList(), new File(SUBSTEPS_PATH, "simple.substeps"), true, new String[0],
+                new ClassAnalyser(), true, new FakeSyntaxErrorReporter()));
+
+        final IllegalStateException failure = new IllegalStateException("validator failed");
+
+        final ParallelSyntaxValidator validator = new ParallelSyntaxValidator(new StepValidator() {
+
+            public void validateFeatureFile(final FeatureFile featureFile, final SyntaxErrorReporter reporter) {
+                throw failure;
+            }
+
+
+            public void validateSubstep(final ParentStep substep, final SyntaxErrorReporter reporter) {
+                delegate.validateSubstep(substep, reporter);
+            }
+        });
+        validator.setThreads(4);
+
+        final RecordingReporter reporter = new RecordingReporter();
+        try {
+            validator.validate(
+                    Arrays.asList(new File(FEATURE_PATH, "error.feature"), new File(SUBSTEPS_PATH, "error.substeps")),
+                    reporter);
+            Assert.fail("expected the validator's exception");
+        } catch (final IllegalStateException ex) {
+            assertThat(ex, is(sameInstance(failure)));
+        }
+
+        assertThat(reporter.errors, is(Arrays.asList("error.substeps:5 SingleWord",
+                "error.substeps:6 Test_Then something else has happened",
+                "error.substeps:9 Test_Then something has happened")));
+    }
+
+
+    private List<String> validate(final int threads, final File... roots) {
+
+        final Syntax syntax = SyntaxBuilder.buildSyntax(Collections.<Class<?>> emptyList(), new File(SUBSTEPS_PATH,
+                "simple.substeps"), true, new String[0], new ClassAnalyser(), true, new FakeSyntaxErrorReporter());
+
+        final ParallelSyntaxValidator validator = new ParallelSyntaxValidator(syntax);
+        validator.setThreads(threads);
+
+        final RecordingReporter reporter = new RecordingReporter();
+        validator.validate(Arrays.asList(roots), reporter);
+        return reporter.errors;
+    }
+
+    private static class RecordingReporter implements SyntaxErrorReporter {
+
+        private final List<String> errors = new ArrayList<String>();
+
+
+        public void reportFeatureError(final File file, final String line, final int lineNumber, final int offset,
+                final String description) {
+            this.errors.add(file.getName() + ":" + lineNumber + " " + line);
+        }
+
+
+        public void reportFeatureError(final File file, final String line, final int lineNumber, final int offset,
+                final String description, final RuntimeException ex) {
+            this.errors.add(file.getName() + ":" + lineNumber + " " + line);
+        }
+
+
+        public void reportSubstepsError(final SubstepsParsingException ex) {
+            this.errors.add(ex.getFile().getName() + ":" + ex.getLineNumber() + " " + ex.getLine());
+        }
+
+
+        public void reportStepImplError(final StepImplementationException ex) {
+            this.errors.add(ex.getMessage());
+        }
+    }
+}
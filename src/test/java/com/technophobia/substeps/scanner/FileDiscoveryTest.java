@@ -0,0 +1,134 @@
+/*
+ *	Copyright Technophobia Ltd 2012
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.substeps.scanner;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileDiscoveryTest {
+
+    private File root;
+
+    @Before
+    public void createTree() throws IOException {
+        root = new File("./target/file-discovery-test");
+
+        touch("top.feature");
+        touch("top.substeps");
+        touch("a/one.feature");
+        touch("a/b/two.feature");
+        touch("a/b/c/three.feature");
+        touch("target/built.feature");
+        touch("d/four.feature");
+        touch("d/notes.txt");
+    }
+
+
+    private void touch(final String path) throws IOException {
+        final File f = new File(root, path);
+        f.getParentFile().mkdirs();
+        f.createNewFile();
+    }
+
+
+    @Test
+    public void testFindsFilesMatchingTheIncludesButNotTheExcludes() {
+
+        final FileDiscovery discovery = new FileDiscovery(new String[] { "**/*.feature" }, new String[] {
+                "**/target", "d/*" });
+
+        final List<String> found = relativePaths(discovery.find(root));
+
+        Assert.assertThat(found.size(), is(4));
+        Assert.assertThat(found.contains("a/b/c/three.feature"), is(true));
+        Assert.assertThat(found.contains("target/built.feature"), is(false));
+        Assert.assertThat(found.contains("d/four.feature"), is(false));
+    }
+
+
+    @Test
+    public void testConcurrentWalkGivesTheSameOrderAsASequentialOne() {
+
+        final FileDiscovery sequential = FileDiscovery.withExtension(".feature");
+        sequential.setThreads(1);
+
+        final FileDiscovery concurrent = FileDiscovery.withExtension(".feature");
+        concurrent.setThreads(4);
+
+        final List<File> expected = sequential.find(root);
+
+        Assert.assertThat(expected.size(), is(6));
+        Assert.assertThat(concurrent.find(root), is(expected));
+        Assert.assertThat(expected, is(depthFirst(root, ".feature")));
+    }
+
+
+    @Test
+    public void testASingleFileIsReturnedAsIs() {
+
+        final File file = new File(root, "top.substeps");
+
+        final List<File> files = FileDiscovery.withExtension(".feature").find(file);
+
+        Assert.assertThat(files.size(), is(1));
+        Assert.assertThat(files.get(0), is(file));
+    }
+
+
+    @Test
+    public void testGlobs() {
+
+        Assert.assertThat(FileDiscovery.globToPattern("**/*.feature").matcher("x.feature").matches(), is(true));
+        Assert.assertThat(FileDiscovery.globToPattern("**/*.feature").matcher("a/b/x.feature").matches(), is(true));
+        Assert.assertThat(FileDiscovery.globToPattern("*.feature").matcher("a/x.feature").matches(), is(false));
+        Assert.assertThat(FileDiscovery.globToPattern("a/?.feature").matcher("a/x.feature").matches(), is(true));
+        Assert.assertThat(FileDiscovery.globToPattern("a/**").matcher("a/b/c").matches(), is(true));
+        Assert.assertThat(FileDiscovery.globToPattern("*.feature").matcher("xfeature").matches(), is(false));
+    }
+
+
+    private List<String> relativePaths(final List<File> files) {
+        final List<String> paths = new ArrayList<String>();
+        for (final File f : files) {
+            paths.add(f.getPath().substring(root.getPath().length() + 1).replace(File.separatorChar, '/'));
+        }
+        return paths;
+    }
+
+
+    private static List<File> depthFirst(final File dir, final String extension) {
+        final List<File> files = new ArrayList<File>();
+        for (final File child : dir.listFiles()) {
+            if (child.isDirectory()) {
+                files.addAll(depthFirst(child, extension));
+            } else if (child.getName().endsWith(extension)) {
+                files.add(child);
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,9 @@
+Feature: A feature with more example values than headings
+
+  Scenario Outline: An outline with an over long examples row
+    Given something with <name>
+
+  Examples:
+  |name|
+  |value1|
+  |value2|extra|